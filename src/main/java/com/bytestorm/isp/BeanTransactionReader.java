@@ -0,0 +1,52 @@
+package com.bytestorm.isp;
+
+import org.supercsv.cellprocessor.ift.CellProcessor;
+import org.supercsv.io.CsvBeanReader;
+import org.supercsv.io.ICsvBeanReader;
+import org.supercsv.prefs.CsvPreference;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Earnings report reader using SuperCSV bean reader with {@link Transaction#MAPPING} and {@link Transaction#CSV}
+ * (restricted to columns of given {@link ColumnProjection}).
+ */
+public class BeanTransactionReader implements TransactionReader {
+
+    public BeanTransactionReader(Reader reader) throws IOException {
+        this(reader, ColumnProjection.all(Transaction.MAPPING));
+    }
+
+    public BeanTransactionReader(Reader reader, ColumnProjection projection) throws IOException {
+        mapping = projection.getMapping();
+        processors = projection.getProcessors(Transaction.CSV);
+        beanReader = new CsvBeanReader(reader, CsvPreference.STANDARD_PREFERENCE);
+        /* final String[] header = */
+        beanReader.getHeader(true); // header will be ignored
+    }
+
+    @Override
+    public Transaction read() throws IOException {
+        return beanReader.read(Transaction.class, mapping, processors);
+    }
+
+    @Override
+    public int getRowNumber() {
+        return beanReader.getRowNumber();
+    }
+
+    @Override
+    public String getUntokenizedRow() {
+        return beanReader.getUntokenizedRow();
+    }
+
+    @Override
+    public void close() throws IOException {
+        beanReader.close();
+    }
+
+    private final ICsvBeanReader beanReader;
+    private final String[] mapping;
+    private final CellProcessor[] processors;
+}
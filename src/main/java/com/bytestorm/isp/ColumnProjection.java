@@ -0,0 +1,109 @@
+package com.bytestorm.isp;
+
+import org.supercsv.cellprocessor.ift.CellProcessor;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Set of report columns which are actually used by processing.
+ * <p/>
+ * Columns not included in projection are not decoded at all - {@link CsvTokenizer} only skips over their bytes and
+ * bean readers get <code>null</code> mapping and processor for them, so corresponding bean fields are left unset.
+ * Columns past the end of mapping are always included.
+ */
+public class ColumnProjection {
+
+    /**
+     * @param mapping report columns mapping
+     *
+     * @return projection including all mapped columns
+     */
+    public static ColumnProjection all(String[] mapping) {
+        final boolean[] included = new boolean[mapping.length];
+        for (int i = 0; i < mapping.length; i++) {
+            included[i] = null != mapping[i];
+        }
+        return new ColumnProjection(mapping, included);
+    }
+
+    /**
+     * @param mapping report columns mapping
+     * @param fields  names of used fields
+     *
+     * @return projection including given fields only
+     *
+     * @throws IllegalArgumentException if field is not present in mapping
+     */
+    public static ColumnProjection of(String[] mapping, Collection<String> fields) {
+        final boolean[] included = new boolean[mapping.length];
+        for (String field : fields) {
+            final int col = Arrays.asList(mapping).indexOf(field);
+            if (col < 0) {
+                throw new IllegalArgumentException("Unknown column " + field);
+            }
+            included[col] = true;
+        }
+        return new ColumnProjection(mapping, included);
+    }
+
+    private ColumnProjection(String[] mapping, boolean[] included) {
+        this.mapping = mapping;
+        this.included = included;
+    }
+
+    /**
+     * @param col column index
+     *
+     * @return true if column is used
+     */
+    public boolean includes(int col) {
+        return col >= included.length || included[col];
+    }
+
+    /**
+     * @param field field name
+     *
+     * @return true if column mapped to field is used
+     */
+    public boolean includes(String field) {
+        final int col = Arrays.asList(mapping).indexOf(field);
+        return col >= 0 && included[col];
+    }
+
+    /**
+     * @return bean mapping with excluded columns set to null
+     */
+    public String[] getMapping() {
+        final String[] out = mapping.clone();
+        for (int i = 0; i < out.length; i++) {
+            if (!included[i]) {
+                out[i] = null;
+            }
+        }
+        return out;
+    }
+
+    /**
+     * @param processors processors of all mapped columns
+     *
+     * @return processors with processors of excluded columns set to null
+     */
+    public CellProcessor[] getProcessors(CellProcessor[] processors) {
+        final CellProcessor[] out = processors.clone();
+        for (int i = 0; i < out.length && i < included.length; i++) {
+            if (!included[i]) {
+                out[i] = null;
+            }
+        }
+        return out;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(getMapping());
+    }
+
+    private final String[] mapping;
+    private final boolean[] included;
+}
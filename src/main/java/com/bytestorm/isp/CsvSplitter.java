@@ -0,0 +1,281 @@
+package com.bytestorm.isp;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Splits CSV file into row aligned byte ranges which can be tokenized independently.
+ * <p/>
+ * File is scanned once tracking quoted sections (the same way as {@link CsvTokenizer} does) so new lines inside
+ * quoted columns (eg. product names) are never used as split points. While scanning rows are counted as well, so
+ * each chunk knows number of rows preceding it and reported row numbers are the same as in sequential processing.
+ * <p/>
+ * Reports not available as plain files (eg. packed in zip archive or downloaded to memory) are split while read
+ * sequentially, data of such chunks is held in memory until chunk is parsed.
+ */
+public class CsvSplitter {
+
+    /**
+     * Byte range of CSV file starting at row boundary.
+     */
+    public static class Chunk {
+
+        Chunk(long start, long end, int rowsBefore) {
+            this(start, end, rowsBefore, null);
+        }
+
+        Chunk(long start, long end, int rowsBefore, byte[] data) {
+            this.start = start;
+            this.end = end;
+            this.rowsBefore = rowsBefore;
+            this.data = data;
+        }
+
+        /**
+         * @return offset of first byte of chunk
+         */
+        public long getStart() {
+            return start;
+        }
+
+        /**
+         * @return offset of first byte after chunk
+         */
+        public long getEnd() {
+            return end;
+        }
+
+        /**
+         * @return number of rows (header included) in file before this chunk
+         */
+        public int getRowsBefore() {
+            return rowsBefore;
+        }
+
+        /**
+         * @return true if chunk starts at the beginning of the file (ie. includes header row)
+         */
+        public boolean isFirst() {
+            return 0 == start;
+        }
+
+        /**
+         * @return chunk data (valid up to chunk length) if chunk was read from stream, null for chunks of plain file
+         */
+        public byte[] getData() {
+            return data;
+        }
+
+        private final long start, end;
+        private final int rowsBefore;
+        private final byte[] data;
+    }
+
+    /**
+     * Chunks of single report returned in report order.
+     */
+    public interface Chunks extends Closeable {
+
+        /**
+         * @return next chunk or null if whole report was returned
+         */
+        public Chunk next() throws IOException;
+    }
+
+    /**
+     * Splits file into chunks of approximately given size, rows are never split and header row always belongs to
+     * first chunk.
+     *
+     * @param file      CSV file
+     * @param chunkSize requested chunk size in bytes
+     *
+     * @return list of chunks covering whole file in file order
+     *
+     * @throws IOException on read error
+     */
+    public static List<Chunk> split(File file, long chunkSize) throws IOException {
+        final ArrayList<Chunk> chunks = new ArrayList<>();
+        final long length = file.length();
+        if (chunkSize <= 0 || length <= chunkSize) {
+            chunks.add(new Chunk(0, length, 0));
+            return chunks;
+        }
+        long chunkStart = 0;
+        int chunkRowsBefore = 0;
+        long nextSplit = chunkSize;
+        final RowScanner scanner = new RowScanner();
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream in = new FileInputStream(file)) {
+            long offset = 0;
+            for (int read; (read = in.read(buffer)) >= 0; offset += read) {
+                for (int i = 0; i < read; i++) {
+                    if (scanner.next(buffer[i])) {
+                        final long rowOffset = offset + i;
+                        if (rowOffset >= nextSplit && scanner.rows > 1) {
+                            chunks.add(new Chunk(chunkStart, rowOffset, chunkRowsBefore));
+                            chunkStart = rowOffset;
+                            chunkRowsBefore = scanner.rows - 1;
+                            nextSplit = rowOffset + chunkSize;
+                        }
+                    }
+                }
+            }
+        }
+        chunks.add(new Chunk(chunkStart, length, chunkRowsBefore));
+        return chunks;
+    }
+
+    /**
+     * Splits report into chunks of approximately given size, plain files are split by {@link #split(File, long)} and
+     * other reports are split while read (at most chunk size plus single row is read ahead).
+     *
+     * @param source    CSV report
+     * @param chunkSize requested chunk size in bytes, has to be positive for reports which are not plain files
+     *
+     * @return chunks of report, caller is responsible for closing it
+     *
+     * @throws IOException on read error
+     */
+    public static Chunks open(ReportSource source, long chunkSize) throws IOException {
+        if (null != source.getFile()) {
+            final Iterator<Chunk> chunks = split(source.getFile(), chunkSize).iterator();
+            return new Chunks() {
+                @Override
+                public Chunk next() {
+                    return chunks.hasNext() ? chunks.next() : null;
+                }
+
+                @Override
+                public void close() {
+                }
+            };
+        }
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Report " + source.getName() + " can't be read as single chunk");
+        }
+        return new StreamChunks(source.open(), (int) Math.min(chunkSize, MAX_STREAM_CHUNK_SIZE));
+    }
+
+    private CsvSplitter() {
+    }
+
+    /**
+     * Finds row starts tracking quoted sections, bytes of report have to be passed in order.
+     */
+    private static class RowScanner {
+
+        /**
+         * @return true if byte is first byte of row
+         */
+        boolean next(byte b) {
+            if (quoted) {
+                if ('"' == b) {
+                    quoted = false;
+                }
+                return false;
+            }
+            if ('\n' == b || '\r' == b) {
+                lineStart = true;
+                return false;
+            }
+            final boolean rowStart = lineStart;
+            if (lineStart) {
+                lineStart = false;
+                ++rows;
+            }
+            if ('"' == b) {
+                quoted = true;
+            }
+            return rowStart;
+        }
+
+        /**
+         * Number of rows started so far (including current one).
+         */
+        int rows;
+        private boolean quoted;
+        private boolean lineStart = true;
+    }
+
+    /**
+     * Reads stream into chunk buffer until row starting after requested chunk size is found, the rest of buffer is
+     * moved to buffer of next chunk.
+     */
+    private static class StreamChunks implements Chunks {
+
+        StreamChunks(InputStream in, int chunkSize) {
+            this.in = in;
+            this.chunkSize = chunkSize;
+            this.buffer = new byte[Math.min(chunkSize, BUFFER_SIZE)];
+        }
+
+        @Override
+        public Chunk next() throws IOException {
+            if (done) {
+                return null;
+            }
+            for (; ; ) {
+                if (scanned == length) {
+                    if (eof) {
+                        done = true;
+                        // report without data is returned as single empty chunk
+                        return 0 == length && offset > 0 ? null : new Chunk(offset, offset + length, chunkRowsBefore, buffer);
+                    }
+                    if (length == buffer.length) {
+                        // doubled up to chunk size, then grown only by rows crossing chunk end
+                        final long size = Math.max(Math.min(2L * buffer.length, chunkSize + (long) BUFFER_SIZE),
+                                buffer.length + (long) BUFFER_SIZE);
+                        buffer = Arrays.copyOf(buffer, (int) Math.min(size, MAX_ARRAY_SIZE));
+                    }
+                    final int read = in.read(buffer, length, buffer.length - length);
+                    if (read < 0) {
+                        eof = true;
+                    } else {
+                        length += read;
+                    }
+                    continue;
+                }
+                if (scanner.next(buffer[scanned]) && scanned >= chunkSize && scanner.rows > 1) {
+                    final Chunk chunk = new Chunk(offset, offset + scanned, chunkRowsBefore, buffer);
+                    chunkRowsBefore = scanner.rows - 1;
+                    offset += scanned;
+                    // chunk buffer is passed to parser, remaining data (already scanned row start) is moved to new one
+                    final byte[] next = new byte[buffer.length];
+                    System.arraycopy(buffer, scanned, next, 0, length - scanned);
+                    buffer = next;
+                    length -= scanned;
+                    scanned = 1;
+                    return chunk;
+                }
+                ++scanned;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+
+        private final InputStream in;
+        private final int chunkSize;
+        private final RowScanner scanner = new RowScanner();
+        private byte[] buffer;
+        private int length;
+        private int scanned;
+        private long offset;
+        private int chunkRowsBefore;
+        private boolean eof;
+        private boolean done;
+    }
+
+    private static final int BUFFER_SIZE = 1024 * 1024;
+    private static final int MAX_STREAM_CHUNK_SIZE = 1024 * 1024 * 1024;
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+}
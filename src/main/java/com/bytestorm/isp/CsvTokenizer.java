@@ -0,0 +1,382 @@
+package com.bytestorm.isp;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Byte level CSV tokenizer.
+ * <p/>
+ * Splits UTF-8 encoded CSV data into rows and columns without creating intermediate strings, column values are
+ * exposed as ranges of byte array and decoded only on demand. Quoting rules follow SuperCSV standard preference
+ * (quote character <code>"</code>, escaped quote <code>""</code>, comma delimiter, new lines inside quoted section
+ * are normalized to <code>\n</code>, empty lines are skipped and empty column is treated as <code>null</code>).
+ * <p/>
+ * Column data is valid only until next call to {@link #nextRow()}. Columns excluded by {@link ColumnProjection} are
+ * scanned for delimiters only and always look empty.
+ */
+public class CsvTokenizer implements Closeable {
+
+    public static final Charset CHARSET = StandardCharsets.UTF_8;
+
+    public CsvTokenizer(InputStream in) {
+        this(in, DEFAULT_BUFFER_SIZE);
+    }
+
+    public CsvTokenizer(InputStream in, int bufferSize) {
+        this.in = in;
+        this.buf = new byte[bufferSize];
+    }
+
+    /**
+     * Reads next row.
+     *
+     * @return false if end of stream was reached
+     *
+     * @throws IOException on read error or if stream ends inside quoted section
+     */
+    public boolean nextRow() throws IOException {
+        columnCount = 0;
+        scratchLength = 0;
+        rowStart = pos;
+        int p = pos;
+        boolean quoted = false;
+        boolean quotePending = false;
+        boolean crPending = false;
+        boolean any = false;
+        beginField(p);
+        for (; ; ) {
+            if (p >= limit) {
+                p -= compact();
+                if (!fill()) {
+                    if (quoted && !quotePending) {
+                        throw new IOException("Unexpected end of file inside quoted column at line " + lineNumber);
+                    }
+                    pos = p;
+                    if (!any) {
+                        return false;
+                    }
+                    endField();
+                    rowEnd = p;
+                    ++lineNumber;
+                    ++rowNumber;
+                    return true;
+                }
+                continue;
+            }
+            final byte b = buf[p];
+            if (skipLf) {
+                // second byte of CRLF terminating previous row or empty line
+                skipLf = false;
+                if (LF == b) {
+                    rowStart = ++p;
+                    beginField(p);
+                    continue;
+                }
+            }
+            if (quoted) {
+                if (quotePending) {
+                    quotePending = false;
+                    if (QUOTE == b) {
+                        // escaped quote
+                        keep(b, p++);
+                        continue;
+                    }
+                    // end of quoted section, process byte as unquoted one
+                    quoted = false;
+                } else {
+                    if (crPending) {
+                        crPending = false;
+                        if (LF == b) {
+                            ++p;
+                            continue;
+                        }
+                    }
+                    if (QUOTE == b) {
+                        quotePending = true;
+                    } else if (CR == b) {
+                        keep(LF, p);
+                        crPending = true;
+                        ++lineNumber;
+                    } else {
+                        if (LF == b) {
+                            ++lineNumber;
+                        }
+                        keep(b, p);
+                    }
+                    ++p;
+                    continue;
+                }
+            }
+            switch (b) {
+                case QUOTE:
+                    quoted = true;
+                    any = true;
+                    break;
+                case COMMA:
+                    endField();
+                    beginField(p + 1);
+                    any = true;
+                    break;
+                case CR:
+                case LF:
+                    ++lineNumber;
+                    skipLf = CR == b;
+                    if (!any) {
+                        // empty line
+                        rowStart = p + 1;
+                        beginField(p + 1);
+                        break;
+                    }
+                    endField();
+                    rowEnd = p;
+                    pos = p + 1;
+                    ++rowNumber;
+                    return true;
+                default:
+                    keep(b, p);
+                    any = true;
+                    break;
+            }
+            ++p;
+        }
+    }
+
+    /**
+     * Sets columns which should be decoded, bytes of other columns are skipped.
+     *
+     * @param projection used columns or null to decode all columns
+     */
+    public void setProjection(ColumnProjection projection) {
+        this.projection = projection;
+    }
+
+    /**
+     * @return number of columns in current row
+     */
+    public int getColumnCount() {
+        return columnCount;
+    }
+
+    /**
+     * @return number of rows read so far (including header)
+     */
+    public int getRowNumber() {
+        return rowNumber;
+    }
+
+    /**
+     * Sets number of rows preceding current position, used when tokenizing part of a file.
+     *
+     * @param rowNumber number of rows before current position
+     */
+    public void setRowNumber(int rowNumber) {
+        this.rowNumber = rowNumber;
+    }
+
+    /**
+     * @return number of lines read so far
+     */
+    public int getLineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * @return current row as it was read from input
+     */
+    public String getUntokenizedRow() {
+        return new String(buf, rowStart, rowEnd - rowStart, CHARSET);
+    }
+
+    /**
+     * @param col column index
+     *
+     * @return true if column is empty (ie. its value would be <code>null</code>)
+     */
+    public boolean isEmpty(int col) {
+        return starts[col] == ends[col];
+    }
+
+    /**
+     * @param col column index
+     *
+     * @return array holding column data, valid in range {@link #getStart(int)} - {@link #getEnd(int)}
+     */
+    public byte[] getBytes(int col) {
+        return inScratch[col] ? scratch : buf;
+    }
+
+    public int getStart(int col) {
+        return starts[col];
+    }
+
+    public int getEnd(int col) {
+        return ends[col];
+    }
+
+    /**
+     * @param col column index
+     *
+     * @return decoded column value or null if column is empty
+     */
+    public String getString(int col) {
+        final int start = starts[col];
+        final int end = ends[col];
+        if (start == end) {
+            return null;
+        }
+        return new String(getBytes(col), start, end - start, CHARSET);
+    }
+
+    /**
+     * @param col   column index
+     * @param value expected column value bytes
+     *
+     * @return true if column is equal to given bytes
+     */
+    public boolean matches(int col, byte[] value) {
+        final int start = starts[col];
+        if (ends[col] - start != value.length) {
+            return false;
+        }
+        final byte[] data = getBytes(col);
+        for (int i = 0; i < value.length; i++) {
+            if (data[start + i] != value[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private void beginField(int p) {
+        fieldStart = p;
+        fieldEnd = p;
+        fieldInScratch = false;
+        fieldSkipped = null != projection && !projection.includes(columnCount);
+    }
+
+    private void endField() {
+        if (columnCount == starts.length) {
+            final int size = columnCount * 2;
+            starts = Arrays.copyOf(starts, size);
+            ends = Arrays.copyOf(ends, size);
+            inScratch = Arrays.copyOf(inScratch, size);
+        }
+        starts[columnCount] = fieldStart;
+        ends[columnCount] = fieldEnd;
+        inScratch[columnCount] = fieldInScratch;
+        ++columnCount;
+    }
+
+    private void keep(byte b, int p) {
+        if (fieldSkipped) {
+            return;
+        }
+        if (!fieldInScratch) {
+            if (b == buf[p]) {
+                if (fieldEnd == p) {
+                    ++fieldEnd;
+                    return;
+                }
+                if (fieldStart == fieldEnd) {
+                    fieldStart = p;
+                    fieldEnd = p + 1;
+                    return;
+                }
+            }
+            // data is no longer contiguous in read buffer, continue in scratch buffer
+            final int length = fieldEnd - fieldStart;
+            ensureScratch(length);
+            System.arraycopy(buf, fieldStart, scratch, scratchLength, length);
+            fieldStart = scratchLength;
+            fieldEnd = scratchLength + length;
+            scratchLength = fieldEnd;
+            fieldInScratch = true;
+        }
+        ensureScratch(1);
+        scratch[scratchLength++] = b;
+        fieldEnd = scratchLength;
+    }
+
+    private void ensureScratch(int extra) {
+        if (scratchLength + extra > scratch.length) {
+            scratch = Arrays.copyOf(scratch, Math.max(scratch.length * 2, scratchLength + extra));
+        }
+    }
+
+    /**
+     * Moves current row to beginning of buffer (or grows buffer if row already starts there).
+     *
+     * @return number of bytes data was shifted by
+     */
+    private int compact() {
+        final int shift = rowStart;
+        if (shift > 0) {
+            System.arraycopy(buf, shift, buf, 0, limit - shift);
+            limit -= shift;
+            rowStart = 0;
+            for (int i = 0; i < columnCount; i++) {
+                if (!inScratch[i]) {
+                    starts[i] -= shift;
+                    ends[i] -= shift;
+                }
+            }
+            if (!fieldInScratch) {
+                fieldStart -= shift;
+                fieldEnd -= shift;
+            }
+        } else if (limit == buf.length) {
+            buf = Arrays.copyOf(buf, buf.length * 2);
+        }
+        return shift;
+    }
+
+    private boolean fill() throws IOException {
+        if (eof) {
+            return false;
+        }
+        final int read = in.read(buf, limit, buf.length - limit);
+        if (read < 0) {
+            eof = true;
+            return false;
+        }
+        limit += read;
+        return true;
+    }
+
+    private final InputStream in;
+    private byte[] buf;
+    private int pos, limit;
+    private boolean eof;
+    private boolean skipLf;
+    // current row
+    private int rowStart, rowEnd;
+    private int rowNumber, lineNumber;
+    private int columnCount;
+    private int[] starts = new int[32];
+    private int[] ends = new int[32];
+    private boolean[] inScratch = new boolean[32];
+    // current column
+    private int fieldStart, fieldEnd;
+    private boolean fieldInScratch;
+    private boolean fieldSkipped;
+    private ColumnProjection projection;
+    // unescaped data of columns which are not contiguous in read buffer
+    private byte[] scratch = new byte[1024];
+    private int scratchLength;
+
+    private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private static final byte QUOTE = '"';
+    private static final byte COMMA = ',';
+    private static final byte CR = '\r';
+    private static final byte LF = '\n';
+}
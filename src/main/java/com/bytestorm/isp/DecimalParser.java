@@ -0,0 +1,146 @@
+package com.bytestorm.isp;
+
+import java.math.BigDecimal;
+
+/**
+ * Parser of decimal numbers formatted with US symbols (eg. <code>-1,234.50</code>).
+ * <p/>
+ * Characters are scanned once into unscaled long value and scale, BigDecimal is created only when requested. Grouping
+ * separators are ignored wherever they appear (the same way SuperCSV <code>ParseBigDecimal</code> drops them), values
+ * with exponent or more than 18 significant digits are not accepted by scanning methods and have to be parsed using
+ * {@link #parseBigDecimal(String)}. Instance holds result of last parse, so it should be used by single thread.
+ */
+public class DecimalParser {
+
+    /**
+     * Parses value to BigDecimal, values which can't be scanned are parsed by BigDecimal itself.
+     *
+     * @param value text to parse
+     *
+     * @return parsed value
+     *
+     * @throws NumberFormatException if value is not a valid number
+     */
+    public static BigDecimal parseBigDecimal(String value) {
+        final DecimalParser parser = new DecimalParser();
+        if (parser.parse(value)) {
+            return parser.toBigDecimal();
+        }
+        return new BigDecimal(value.replace(",", ""));
+    }
+
+    /**
+     * Scans characters.
+     *
+     * @param value text to parse
+     *
+     * @return true if value was parsed, false if it is not valid or is not supported by scanner
+     */
+    public boolean parse(CharSequence value) {
+        reset();
+        final int length = value.length();
+        for (int i = 0; i < length; i++) {
+            if (!next(value.charAt(i))) {
+                return false;
+            }
+        }
+        return finish();
+    }
+
+    /**
+     * Scans ASCII bytes.
+     *
+     * @param data  array holding text to parse
+     * @param start index of first byte of value
+     * @param end   index of first byte after value
+     *
+     * @return true if value was parsed, false if it is not valid or is not supported by scanner
+     */
+    public boolean parse(byte[] data, int start, int end) {
+        reset();
+        for (int i = start; i < end; i++) {
+            if (!next((char) (data[i] & 0xff))) {
+                return false;
+            }
+        }
+        return finish();
+    }
+
+    /**
+     * @return unscaled value of last parsed number
+     */
+    public long getUnscaled() {
+        return unscaled;
+    }
+
+    /**
+     * @return scale of last parsed number
+     */
+    public int getScale() {
+        return scale;
+    }
+
+    /**
+     * @return last parsed number
+     */
+    public BigDecimal toBigDecimal() {
+        return BigDecimal.valueOf(unscaled, scale);
+    }
+
+    private void reset() {
+        unscaled = 0;
+        scale = 0;
+        digits = 0;
+        signAllowed = true;
+        negative = false;
+        fraction = false;
+        any = false;
+    }
+
+    private boolean next(char c) {
+        if (',' == c) {
+            return true;
+        }
+        if ('0' <= c && c <= '9') {
+            if (0 != unscaled || '0' != c) {
+                if (++digits > MAX_DIGITS) {
+                    return false;
+                }
+            }
+            unscaled = unscaled * 10 + (c - '0');
+            if (fraction && ++scale > MAX_SCALE) {
+                return false;
+            }
+            any = true;
+        } else if ('.' == c && !fraction) {
+            fraction = true;
+        } else if (('-' == c || '+' == c) && signAllowed) {
+            negative = '-' == c;
+        } else {
+            return false;
+        }
+        signAllowed = false;
+        return true;
+    }
+
+    private boolean finish() {
+        if (!any) {
+            return false;
+        }
+        if (negative) {
+            unscaled = -unscaled;
+        }
+        return true;
+    }
+
+    private long unscaled;
+    private int scale;
+    private int digits;
+    private boolean signAllowed;
+    private boolean negative;
+    private boolean fraction;
+    private boolean any;
+
+    private static final int MAX_DIGITS = 18;
+    private static final int MAX_SCALE = 18;
+}
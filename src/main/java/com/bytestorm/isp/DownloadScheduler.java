@@ -0,0 +1,112 @@
+package com.bytestorm.isp;
+
+import com.bytestorm.utils.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs downloads concurrently with bounded number of requests in flight. Failed downloads are retried with
+ * exponential backoff, failures of all downloads are collected and reported together.
+ */
+public class DownloadScheduler {
+
+    /**
+     * Single download task, may be called more than once when retried.
+     */
+    public interface Download<T> {
+
+        public String getName();
+
+        public T download() throws IOException;
+    }
+
+    /**
+     * @param threads    maximum number of concurrent downloads
+     * @param retries    number of retries of failed download
+     * @param retryDelay delay before first retry in milliseconds, doubled on every next retry
+     */
+    public DownloadScheduler(int threads, int retries, long retryDelay) {
+        this.threads = Math.max(1, threads);
+        this.retries = Math.max(0, retries);
+        this.retryDelay = Math.max(0, retryDelay);
+    }
+
+    /**
+     * Executes all downloads.
+     *
+     * @param downloads downloads to execute
+     *
+     * @return download results in the same order as downloads
+     *
+     * @throws IOException if any of downloads failed (after retries), exception message lists all failed downloads
+     */
+    public <T> List<T> downloadAll(List<? extends Download<T>> downloads) throws IOException {
+        final ArrayList<T> out = new ArrayList<>(downloads.size());
+        if (downloads.isEmpty()) {
+            return out;
+        }
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, downloads.size()));
+        try {
+            final ArrayList<Future<T>> results = new ArrayList<>(downloads.size());
+            for (final Download<T> download : downloads) {
+                results.add(executor.submit(new Callable<T>() {
+                    @Override
+                    public T call() throws Exception {
+                        return downloadWithRetry(download);
+                    }
+                }));
+            }
+            final ArrayList<Throwable> errors = new ArrayList<>();
+            final StringBuilder failed = new StringBuilder();
+            for (int i = 0; i < results.size(); i++) {
+                try {
+                    out.add(results.get(i).get());
+                } catch (ExecutionException e) {
+                    out.add(null);
+                    errors.add(e.getCause());
+                    failed.append("\n  ").append(downloads.get(i).getName()).append(": ").append(e.getCause());
+                }
+            }
+            if (!errors.isEmpty()) {
+                final IOException error = new IOException("Download failed for:" + failed, errors.get(0));
+                for (int i = 1; i < errors.size(); i++) {
+                    error.addSuppressed(errors.get(i));
+                }
+                throw error;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for downloads", e);
+        } finally {
+            executor.shutdownNow();
+        }
+        return out;
+    }
+
+    private <T> T downloadWithRetry(Download<T> download) throws IOException, InterruptedException {
+        long delay = retryDelay;
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return download.download();
+            } catch (IOException e) {
+                if (attempt >= retries) {
+                    throw e;
+                }
+                Log.v("Download of " + download.getName() + " failed (" + e + "), retrying in " + delay + "ms");
+                Thread.sleep(delay);
+                delay *= 2;
+            }
+        }
+    }
+
+    private final int threads;
+    private final int retries;
+    private final long retryDelay;
+}
@@ -0,0 +1,155 @@
+package com.bytestorm.isp;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Content of single earnings report file.
+ */
+public class EarningsReport {
+
+    /**
+     * Parses earnings report file.
+     *
+     * @param source     report CSV
+     * @param fastReader true to use {@link EarningsReportReader}, false to use SuperCSV based reader
+     * @param projection columns to decode
+     *
+     * @return parsed report
+     *
+     * @throws IOException on read error or invalid report content
+     */
+    public static EarningsReport parse(ReportSource source, boolean fastReader, ColumnProjection projection) throws IOException {
+        try (TransactionReader reader = open(source, fastReader, projection)) {
+            return parse(source, reader);
+        }
+    }
+
+    /**
+     * Parses part of earnings report file using {@link EarningsReportReader}.
+     *
+     * @param source     report CSV
+     * @param chunk      part of report to parse
+     * @param projection columns to decode
+     *
+     * @return partial report, see {@link #merge(ReportSource, List)}
+     *
+     * @throws IOException on read error or invalid report content
+     */
+    public static EarningsReport parse(ReportSource source, CsvSplitter.Chunk chunk, ColumnProjection projection)
+            throws IOException {
+        final InputStream in = source.open(chunk);
+        final TransactionReader reader;
+        try {
+            reader = new EarningsReportReader(in, chunk.isFirst(), chunk.getRowsBefore(), projection);
+        } catch (IOException | RuntimeException e) {
+            in.close();
+            throw e;
+        }
+        try {
+            return parse(source, reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Merges partial reports of single file.
+     *
+     * @param source report CSV
+     * @param parts  partial reports in file order
+     *
+     * @return report with content of all parts
+     */
+    public static EarningsReport merge(ReportSource source, List<EarningsReport> parts) {
+        final EarningsReport report = new EarningsReport(source);
+        int size = 0;
+        for (EarningsReport part : parts) {
+            size += part.transactions.size();
+        }
+        report.transactions.ensureCapacity(size);
+        for (EarningsReport part : parts) {
+            report.transactions.addAll(part.transactions);
+            report.income.add(part.income);
+            report.taxOnly &= part.taxOnly;
+        }
+        return report;
+    }
+
+    private static EarningsReport parse(ReportSource source, TransactionReader reader) throws IOException {
+        final EarningsReport report = new EarningsReport(source);
+        Transaction t;
+        while ((t = reader.read()) != null) {
+            if (null == t.getTransactionType()) {
+                // tax deduction reports in some cases contains invalid rows with 0 payout, so skip it
+                if (BigDecimal.ZERO.compareTo(t.getPayout()) == 0) {
+                    continue;
+                }
+                throw new IOException("Invalid row " + reader.getRowNumber()
+                        + " - transaction don't have associated type and have value\n" + reader.getUntokenizedRow());
+            }
+            if (null == t.getId()) {
+                if (Transaction.Type.TAX != t.getTransactionType()) {
+                    throw new IOException("Invalid row " + reader.getRowNumber()
+                            + " - non-tax deduction transaction without id\n" + reader.getUntokenizedRow());
+                }
+            }
+            report.add(t);
+        }
+        return report;
+    }
+
+    public ReportSource getSource() {
+        return source;
+    }
+
+    public List<Transaction> getTransactions() {
+        return transactions;
+    }
+
+    public BigDecimal getIncome() {
+        return income.toBigDecimal();
+    }
+
+    /**
+     * @return true if report contains only tax deduction entries
+     */
+    public boolean isTaxOnly() {
+        return taxOnly;
+    }
+
+    private EarningsReport(ReportSource source) {
+        this.source = source;
+    }
+
+    private void add(Transaction t) {
+        t.addPayoutTo(income);
+        if (Transaction.Type.TAX != t.getTransactionType()) {
+            taxOnly = false;
+        }
+        transactions.add(t);
+    }
+
+    private static TransactionReader open(ReportSource source, boolean fastReader, ColumnProjection projection)
+            throws IOException {
+        final InputStream in = source.open();
+        try {
+            if (fastReader) {
+                return new EarningsReportReader(in, true, 0, projection);
+            }
+            return new BeanTransactionReader(new InputStreamReader(in), projection);
+        } catch (IOException | RuntimeException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    private final ReportSource source;
+    private final ArrayList<Transaction> transactions = new ArrayList<>();
+    private final MoneySum income = new MoneySum();
+    private boolean taxOnly = true;
+}
@@ -0,0 +1,305 @@
+package com.bytestorm.isp;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Earnings report reader working directly on UTF-8 bytes.
+ * <p/>
+ * Populates {@link Transaction} fields straight from {@link CsvTokenizer} columns, without per row string arrays and
+ * reflection, results are identical to ones produced by {@link BeanTransactionReader}.
+ */
+public class EarningsReportReader implements TransactionReader {
+
+    public EarningsReportReader(InputStream in) throws IOException {
+        this(in, true, 0, ColumnProjection.all(Transaction.MAPPING));
+    }
+
+    /**
+     * Creates reader for part of earnings report.
+     *
+     * @param in         report data
+     * @param header     true if data starts with header row
+     * @param rowsBefore number of report rows preceding data (used for row numbering)
+     * @param projection columns to decode, fields of other columns are left unset
+     */
+    public EarningsReportReader(InputStream in, boolean header, int rowsBefore, ColumnProjection projection) throws IOException {
+        this.projection = projection;
+        tokenizer = new CsvTokenizer(in);
+        tokenizer.setRowNumber(rowsBefore);
+        if (header) {
+            // header will be ignored
+            tokenizer.nextRow();
+        }
+        tokenizer.setProjection(projection);
+    }
+
+    @Override
+    public Transaction read() throws IOException {
+        if (!tokenizer.nextRow()) {
+            return null;
+        }
+        if (tokenizer.getColumnCount() != Transaction.MAPPING.length) {
+            throw invalidRow("expected " + Transaction.MAPPING.length + " columns but found " + tokenizer.getColumnCount());
+        }
+        final Transaction t = new Transaction();
+        if (projection.includes(COL_ID)) {
+            t.setId(tokenizer.getString(COL_ID));
+        }
+        if (projection.includes(COL_DATE)) {
+            t.setDate(parseDate(COL_DATE));
+        }
+        if (projection.includes(COL_TIME)) {
+            t.setTime(parseTime(COL_TIME));
+        }
+        if (projection.includes(COL_TAX_TYPE)) {
+            t.setTaxType(tokenizer.getString(COL_TAX_TYPE));
+        }
+        if (projection.includes(COL_TRANSACTION_TYPE)) {
+            t.setTransactionType(parseType(COL_TRANSACTION_TYPE));
+        }
+        if (projection.includes(COL_REFUND_TYPE)) {
+            t.setRefundType(tokenizer.getString(COL_REFUND_TYPE));
+        }
+        if (projection.includes(COL_PRODUCT_NAME)) {
+            t.setProductNameCode(productNames.encode(COL_PRODUCT_NAME));
+        }
+        if (projection.includes(COL_APPLICATION_ID)) {
+            t.setApplicationIdCode(applications.encode(COL_APPLICATION_ID));
+        }
+        if (projection.includes(COL_PRODUCT_TYPE) && !tokenizer.isEmpty(COL_PRODUCT_TYPE)) {
+            t.setProductType(parseInt(COL_PRODUCT_TYPE));
+        }
+        if (projection.includes(COL_SKU_ID)) {
+            t.setSkuIdCode(skus.encode(COL_SKU_ID));
+        }
+        if (projection.includes(COL_HARDWARE)) {
+            t.setHardwareCode(hardware.encode(COL_HARDWARE));
+        }
+        if (projection.includes(COL_BUYER_COUNTRY)) {
+            t.setBuyerCountryCode(countries.encode(COL_BUYER_COUNTRY));
+        }
+        if (projection.includes(COL_BUYER_STATE)) {
+            t.setBuyerState(tokenizer.getString(COL_BUYER_STATE));
+        }
+        if (projection.includes(COL_BUYER_POSTAL_CODE)) {
+            t.setBuyerPostalCode(tokenizer.getString(COL_BUYER_POSTAL_CODE));
+        }
+        if (projection.includes(COL_BUYER_CURRENCY)) {
+            t.setBuyerCurrencyCode(getNotNullCode(COL_BUYER_CURRENCY));
+        }
+        if (projection.includes(COL_AMOUNT)) {
+            if (scanDecimal(COL_AMOUNT)) {
+                t.setAmount(decimal.getUnscaled(), decimal.getScale());
+            } else {
+                t.setAmount(parseDecimal(COL_AMOUNT));
+            }
+        }
+        if (projection.includes(COL_CONVERSION_RATE)) {
+            t.setConversionRate(parseDecimal(COL_CONVERSION_RATE));
+        }
+        if (projection.includes(COL_MERCHANT_CURRENCY)) {
+            t.setMerchantCurrencyCode(getNotNullCode(COL_MERCHANT_CURRENCY));
+        }
+        if (projection.includes(COL_PAYOUT)) {
+            if (scanDecimal(COL_PAYOUT)) {
+                t.setPayout(decimal.getUnscaled(), decimal.getScale());
+            } else {
+                t.setPayout(parseDecimal(COL_PAYOUT));
+            }
+        }
+        return t;
+    }
+
+    @Override
+    public int getRowNumber() {
+        return tokenizer.getRowNumber();
+    }
+
+    @Override
+    public String getUntokenizedRow() {
+        return tokenizer.getUntokenizedRow();
+    }
+
+    @Override
+    public void close() throws IOException {
+        tokenizer.close();
+    }
+
+    private String getNotNull(int col) throws IOException {
+        final String value = tokenizer.getString(col);
+        if (null == value) {
+            throw invalidRow("column " + (col + 1) + " (" + Transaction.MAPPING[col] + ") is empty");
+        }
+        return value;
+    }
+
+    private int getNotNullCode(int col) throws IOException {
+        if (tokenizer.isEmpty(col)) {
+            throw invalidRow("column " + (col + 1) + " (" + Transaction.MAPPING[col] + ") is empty");
+        }
+        return currencies.encode(col);
+    }
+
+    private Transaction.Type parseType(int col) {
+        if (tokenizer.isEmpty(col)) {
+            return null;
+        }
+        for (int i = 0; i < TYPE_NAMES.length; i++) {
+            if (tokenizer.matches(col, TYPE_NAMES[i])) {
+                return TYPES[i];
+            }
+        }
+        return null;
+    }
+
+    private Date parseDate(int col) throws IOException {
+        // reports are ordered by date so same value repeats in consecutive rows
+        if (null == lastDate || !tokenizer.matches(col, lastDateBytes)) {
+            final String value = getNotNull(col);
+            try {
+                lastDate = DATE_PARSER.parse(value);
+            } catch (ParseException e) {
+                throw invalidRow("'" + value + "' could not be parsed as a Date");
+            }
+            lastDateBytes = value.getBytes(CsvTokenizer.CHARSET);
+        }
+        return new Date(lastDate.getTime());
+    }
+
+    private Date parseTime(int col) throws IOException {
+        final String value = getNotNull(col);
+        try {
+            return TIME_PARSER.parse(value);
+        } catch (ParseException e) {
+            throw invalidRow("'" + value + "' could not be parsed as a Date");
+        }
+    }
+
+    private int parseInt(int col) throws IOException {
+        final String value = tokenizer.getString(col);
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw invalidRow("'" + value + "' could not be parsed as an Integer");
+        }
+    }
+
+    /**
+     * Scans column bytes into {@link #decimal}.
+     *
+     * @return true if value was scanned, false if it has to be parsed by {@link #parseDecimal(int)}
+     */
+    private boolean scanDecimal(int col) throws IOException {
+        if (tokenizer.isEmpty(col)) {
+            throw invalidRow("column " + (col + 1) + " (" + Transaction.MAPPING[col] + ") is empty");
+        }
+        return decimal.parse(tokenizer.getBytes(col), tokenizer.getStart(col), tokenizer.getEnd(col));
+    }
+
+    private BigDecimal parseDecimal(int col) throws IOException {
+        if (scanDecimal(col)) {
+            return decimal.toBigDecimal();
+        }
+        final String value = tokenizer.getString(col);
+        try {
+            // same as ParseDecimal - drop grouping separator and parse rest as is
+            return DecimalParser.parseBigDecimal(value);
+        } catch (NumberFormatException e) {
+            throw invalidRow("'" + value + "' could not be parsed as a BigDecimal");
+        }
+    }
+
+    /**
+     * Reader local cache mapping column bytes to dictionary codes, so shared dictionary is consulted (and string is
+     * decoded) only for values not seen recently by this reader.
+     */
+    private class CodeCache {
+
+        CodeCache(StringDictionary dictionary) {
+            this.dictionary = dictionary;
+        }
+
+        int encode(int col) {
+            if (tokenizer.isEmpty(col)) {
+                return StringDictionary.NULL;
+            }
+            final byte[] data = tokenizer.getBytes(col);
+            final int start = tokenizer.getStart(col);
+            final int end = tokenizer.getEnd(col);
+            int hash = 0;
+            for (int i = start; i < end; i++) {
+                hash = 31 * hash + data[i];
+            }
+            final int slot = (hash ^ (hash >>> 16)) & (CODE_CACHE_SIZE - 1);
+            if (null != keys[slot] && tokenizer.matches(col, keys[slot])) {
+                return codes[slot];
+            }
+            // direct mapped, colliding value replaces previous one
+            keys[slot] = Arrays.copyOfRange(data, start, end);
+            codes[slot] = dictionary.encode(tokenizer.getString(col));
+            return codes[slot];
+        }
+
+        private final StringDictionary dictionary;
+        private final byte[][] keys = new byte[CODE_CACHE_SIZE][];
+        private final int[] codes = new int[CODE_CACHE_SIZE];
+    }
+
+    private IOException invalidRow(String reason) {
+        return new IOException("Invalid row " + tokenizer.getRowNumber() + " - " + reason + "\n" + tokenizer.getUntokenizedRow());
+    }
+
+    private final CsvTokenizer tokenizer;
+    private final ColumnProjection projection;
+    private Date lastDate;
+    private byte[] lastDateBytes;
+    private final DecimalParser decimal = new DecimalParser();
+    private final CodeCache productNames = new CodeCache(Transaction.PRODUCT_NAMES);
+    private final CodeCache applications = new CodeCache(Transaction.APPLICATIONS);
+    private final CodeCache skus = new CodeCache(Transaction.SKUS);
+    private final CodeCache hardware = new CodeCache(Transaction.HARDWARE);
+    private final CodeCache countries = new CodeCache(Transaction.COUNTRIES);
+    private final CodeCache currencies = new CodeCache(Transaction.CURRENCIES);
+
+    // column indexes, see Transaction.MAPPING
+    static final int COL_ID = 0;
+    static final int COL_DATE = 1;
+    static final int COL_TIME = 2;
+    static final int COL_TAX_TYPE = 3;
+    static final int COL_TRANSACTION_TYPE = 4;
+    static final int COL_REFUND_TYPE = 5;
+    static final int COL_PRODUCT_NAME = 6;
+    static final int COL_APPLICATION_ID = 7;
+    static final int COL_PRODUCT_TYPE = 8;
+    static final int COL_SKU_ID = 9;
+    static final int COL_HARDWARE = 10;
+    static final int COL_BUYER_COUNTRY = 11;
+    static final int COL_BUYER_STATE = 12;
+    static final int COL_BUYER_POSTAL_CODE = 13;
+    static final int COL_BUYER_CURRENCY = 14;
+    static final int COL_AMOUNT = 15;
+    static final int COL_CONVERSION_RATE = 16;
+    static final int COL_MERCHANT_CURRENCY = 17;
+    static final int COL_PAYOUT = 18;
+
+    private static final int CODE_CACHE_SIZE = 256;
+    private static final FastDateParser DATE_PARSER = FastDateParser.forPattern(FastDateParser.DATE_PATTERN, true,
+            Locale.US, TimeZone.getTimeZone("UTC"));
+    private static final FastDateParser TIME_PARSER = FastDateParser.forPattern(FastDateParser.TIME_PATTERN, true,
+            Locale.US, null);
+    private static final Transaction.Type[] TYPES = Transaction.Type.values();
+    private static final byte[][] TYPE_NAMES = new byte[TYPES.length][];
+
+    static {
+        for (int i = 0; i < TYPES.length; i++) {
+            TYPE_NAMES[i] = TYPES[i].toString().getBytes(CsvTokenizer.CHARSET);
+        }
+    }
+}
@@ -23,16 +23,34 @@ import java.net.URL;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
 import java.text.ParseException;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
 
+/**
+ * NBP exchange rates of date range.
+ * <p/>
+ * Tables directory is downloaded first, then all relevant A and B tables are downloaded and parsed concurrently by
+ * bounded pool and finally applied in date order to build rates of every day. With {@link RateStore} only tables
+ * which are not stored yet are downloaded, when store covers whole date range no network access is needed at all.
+ */
 public class Exchange {
 
+    public static final String DEFAULT_BASE_URL = "http://www.nbp.pl/kursy/xml/";
+
     public static class Quote {
 
         public Quote() {
@@ -73,56 +91,94 @@ public class Exchange {
         private BigDecimal rate;
     }
 
-    @SuppressWarnings("unchecked")
     public Exchange(Date from, Date to) {
+        this(from, to, DEFAULT_BASE_URL, 1);
+    }
+
+    /**
+     * @param from    first day
+     * @param to      last day
+     * @param baseUrl URL of NBP XML tables directory (with trailing slash)
+     * @param threads maximal number of concurrently downloaded tables
+     */
+    @SuppressWarnings("unchecked")
+    public Exchange(Date from, Date to, String baseUrl, int threads) {
         this.from = new DateTime(from, DateTimeZone.UTC);
         this.to = new DateTime(to, DateTimeZone.UTC);
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl : baseUrl + "/";
+        this.threads = Math.max(1, threads);
         this.xchange = new HashMap[Days.daysBetween(this.from, this.to).getDays() + 1];
         Log.v("Creating exchange with date range " + this.from + " - " + this.to + " (days: " + this.xchange.length + ")");
-        try {
-            this.xmlParser = DocumentBuilderFactory.newInstance().newDocumentBuilder();
-        } catch (Exception ex) {
-            throw new RuntimeException("Cannot initialize XML parser", ex);
-        }
-        this.decimalParser = (DecimalFormat) NumberFormat.getInstance(new Locale("pl", "PL"));
-        this.decimalParser.setParseBigDecimal(true);
+    }
+
+    /**
+     * Sets store of exchange tables, stored tables are not downloaded again and downloaded ones are stored.
+     */
+    public void setRateStore(RateStore store) {
+        this.store = store;
     }
 
     public void download() throws IOException, SAXException, ParseException {
-        final URL url = new URL("http://www.nbp.pl/kursy/xml/dir.txt");
         final LinkedList<DirEntry> tableA = new LinkedList<>();
         final LinkedList<DirEntry> tableB = new LinkedList<>();
-        Log.v("Downloading and parsing exchange tables directory");
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(url.openStream()))) {
-            String line;
-            while (null != (line = reader.readLine())) {
-                if (line.isEmpty()) {
-                    continue;
-                }
-                char tableType = line.charAt(0);
-                if ('a' == tableType || 'b' == tableType) {
-                    final LinkedList<DirEntry> table = ('a' == tableType) ? tableA : tableB;
-                    final String dateStr = line.substring(line.indexOf('z') + 1);
-                    final DateTime date = dateParser.parseDateTime(dateStr);
-                    if (date.isBefore(from)) {
-                        if (!table.isEmpty()) {
-                            table.removeFirst();
-                        }
-                        table.add(new DirEntry(tableType, date, line));
-                    } else {
-                        if (date.isBefore(to)) {
-                            table.add(new DirEntry(tableType, date, line));
-                        }
+        final HashMap<DirEntry, Map<String, Quote>> tables = new HashMap<>();
+        if (null != store) {
+            store.load();
+        }
+        final List<RateStore.Table> storedTables = null == store ? null : store.getTables(from, to);
+        if (null != storedTables) {
+            Log.v("Using exchange tables from rate store " + store);
+            for (RateStore.Table table : storedTables) {
+                final DirEntry entry = new DirEntry(table.getType(), table.getDate(), null);
+                addDirEntry(entry, tableA, tableB);
+                tables.put(entry, table.getQuotes());
+            }
+            Log.v("Stored tables directory parsed, relevant A tables counts: " + tableA.size() + " B tables count: "
+                    + tableB.size());
+        } else {
+            final URL url = new URL(baseUrl + "dir.txt");
+            final ArrayList<RateStore.Table> dirTables = new ArrayList<>();
+            Log.v("Downloading and parsing exchange tables directory");
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(url.openStream()))) {
+                String line;
+                while (null != (line = reader.readLine())) {
+                    if (line.isEmpty()) {
+                        continue;
                     }
+                    char tableType = line.charAt(0);
+                    if ('a' == tableType || 'b' == tableType) {
+                        final String dateStr = line.substring(line.indexOf('z') + 1);
+                        final DateTime date = dateParser.parseDateTime(dateStr);
+                        addDirEntry(new DirEntry(tableType, date, line), tableA, tableB);
+                        dirTables.add(new RateStore.Table(tableType, date));
+                    }
+                }
+            }
+            Log.v("Directory parsed, relevant A tables counts: " + tableA.size() + " B tables count: " + tableB.size());
+            final ArrayList<DirEntry> missing = new ArrayList<>();
+            for (DirEntry entry : concat(tableA, tableB)) {
+                final RateStore.Table stored = null == store ? null : store.getTable(entry.tableType, entry.date);
+                if (null != stored) {
+                    tables.put(entry, stored.getQuotes());
+                } else {
+                    missing.add(entry);
                 }
             }
+            final HashMap<DirEntry, HashMap<String, Quote>> downloaded = downloadTables(missing);
+            tables.putAll(downloaded);
+            if (null != store) {
+                final ArrayList<RateStore.Table> newTables = new ArrayList<>();
+                for (DirEntry entry : missing) {
+                    newTables.add(new RateStore.Table(entry.tableType, entry.date, downloaded.get(entry)));
+                }
+                store.append(newTables, dirTables);
+            }
         }
-        Log.v("Directory parsed, relevant A tables counts: " + tableA.size() + " B tables count: " + tableB.size());
         HashMap<String, Quote> current = new HashMap<>();
         // initial table
-        parseTable(tableA.getFirst().id, current);
+        current.putAll(tables.get(tableA.getFirst()));
         tableA.removeFirst();
-        parseTable(tableB.getFirst().id, current);
+        current.putAll(tables.get(tableB.getFirst()));
         tableB.removeFirst();
         xchange[0] = current;
         for (DateTime date = from.plusDays(1); !date.isAfter(to); date = date.plusDays(1)) {
@@ -130,11 +186,11 @@ public class Exchange {
                     (!tableB.isEmpty() && date.isAfter(tableB.getFirst().date))) {
                 current = new HashMap<>(current);
                 if (!tableA.isEmpty() && date.isAfter(tableA.getFirst().date)) {
-                    parseTable(tableA.getFirst().id, current);
+                    current.putAll(tables.get(tableA.getFirst()));
                     tableA.removeFirst();
                 }
                 if (!tableB.isEmpty() && date.isAfter(tableB.getFirst().date)) {
-                    parseTable(tableB.getFirst().id, current);
+                    current.putAll(tables.get(tableB.getFirst()));
                     tableB.removeFirst();
                 }
             }
@@ -153,9 +209,106 @@ public class Exchange {
         return new Quote(entry.getCurrency(), entry.getAmount(), entry.getRate());
     }
 
-    private void parseTable(String id, HashMap<String, Quote> table) throws IOException, SAXException, ParseException {
+    /**
+     * Adds directory entry to list of tables of its type if table may be used for date range. Only last table before
+     * range start is kept.
+     */
+    private void addDirEntry(DirEntry entry, LinkedList<DirEntry> tableA, LinkedList<DirEntry> tableB) {
+        final LinkedList<DirEntry> table = ('a' == entry.tableType) ? tableA : tableB;
+        if (entry.date.isBefore(from)) {
+            if (!table.isEmpty()) {
+                table.removeFirst();
+            }
+            table.add(entry);
+        } else {
+            if (entry.date.isBefore(to)) {
+                table.add(entry);
+            }
+        }
+    }
+
+    private static List<DirEntry> concat(List<DirEntry> first, List<DirEntry> second) {
+        final ArrayList<DirEntry> out = new ArrayList<>(first);
+        out.addAll(second);
+        return out;
+    }
+
+    /**
+     * Downloads and parses tables concurrently.
+     *
+     * @return directory entry to table quotes
+     */
+    private HashMap<DirEntry, HashMap<String, Quote>> downloadTables(List<DirEntry> entries)
+            throws IOException, SAXException, ParseException {
+        final HashMap<DirEntry, HashMap<String, Quote>> tables = new HashMap<>();
+        if (threads <= 1 || entries.size() <= 1) {
+            for (DirEntry entry : entries) {
+                tables.put(entry, parseTable(entry.id));
+            }
+            return tables;
+        }
+        Log.v("Downloading " + entries.size() + " exchange tables using " + threads + " threads");
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, entries.size()));
+        try {
+            final ArrayList<Future<HashMap<String, Quote>>> results = new ArrayList<>(entries.size());
+            for (final DirEntry entry : entries) {
+                results.add(executor.submit(new Callable<HashMap<String, Quote>>() {
+                    @Override
+                    public HashMap<String, Quote> call() throws Exception {
+                        return parseTable(entry.id);
+                    }
+                }));
+            }
+            for (int i = 0; i < entries.size(); i++) {
+                tables.put(entries.get(i), getResult(results.get(i)));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return tables;
+    }
+
+    private static <T> T getResult(Future<T> future) throws IOException, SAXException, ParseException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while downloading exchange tables", e);
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof SAXException) {
+                throw (SAXException) cause;
+            }
+            if (cause instanceof ParseException) {
+                throw (ParseException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Downloads and parses table, may be called by multiple threads.
+     *
+     * @return table quotes
+     */
+    private HashMap<String, Quote> parseTable(String id) throws IOException, SAXException, ParseException {
         Log.v("Downloading and parsing exchange table " + id);
-        URL url = new URL("http://www.nbp.pl/kursy/xml/" + id + ".xml");
+        final DocumentBuilder xmlParser;
+        try {
+            xmlParser = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+        } catch (ParserConfigurationException ex) {
+            throw new RuntimeException("Cannot initialize XML parser", ex);
+        }
+        final DecimalFormat decimalParser = (DecimalFormat) NumberFormat.getInstance(new Locale("pl", "PL"));
+        decimalParser.setParseBigDecimal(true);
+        final HashMap<String, Quote> table = new HashMap<>();
+        URL url = new URL(baseUrl + id + ".xml");
         try (InputStream is = url.openStream()) {
             final Document doc = xmlParser.parse(new InputSource(is));
             final NodeList nodes = doc.getDocumentElement().getElementsByTagName("pozycja");
@@ -181,6 +334,7 @@ public class Exchange {
                 table.put(entry.getCurrency(), entry);
             }
         }
+        return table;
     }
 
     static class DirEntry {
@@ -224,8 +378,9 @@ public class Exchange {
     }
 
     private DateTime from, to;
+    private final String baseUrl;
+    private final int threads;
+    private RateStore store;
     private HashMap<String, Quote>[] xchange;
-    private DocumentBuilder xmlParser;
-    private DecimalFormat decimalParser;
     private DateTimeFormatter dateParser = DateTimeFormat.forPattern("yyMMdd").withZoneUTC();
 }
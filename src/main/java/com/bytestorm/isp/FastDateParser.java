@@ -0,0 +1,192 @@
+package com.bytestorm.isp;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Thread safe parser of date formats used in Play reports.
+ * <p/>
+ * Dates in <code>MMM d, yyyy</code> format (UTC) and times in <code>h:mm:ss a</code> format (US locale) are parsed
+ * by scanning characters, parsed dates are additionally memoized since report contains only few distinct dates.
+ * Values not matching exact format (eg. full month names or values SimpleDateFormat accepts only in lenient mode)
+ * are parsed by per thread {@link SimpleDateFormat}, so results are always the same as SimpleDateFormat ones.
+ */
+public class FastDateParser {
+
+    public static final String DATE_PATTERN = "MMM d, yyyy";
+    public static final String TIME_PATTERN = "h:mm:ss a";
+
+    /**
+     * Creates parser for given format.
+     *
+     * @param pattern SimpleDateFormat pattern
+     * @param lenient whether date interpretation is lenient
+     * @param locale  locale or null for default one
+     * @param tz      time zone or null for default one
+     *
+     * @return parser or null if format is not supported
+     */
+    public static FastDateParser forPattern(String pattern, boolean lenient, Locale locale, TimeZone tz) {
+        if (null == locale || !Locale.ENGLISH.getLanguage().equals(locale.getLanguage())) {
+            return null;
+        }
+        if (DATE_PATTERN.equals(pattern) && null != tz && 0 == tz.getRawOffset() && !tz.useDaylightTime()) {
+            return new FastDateParser(DATE, pattern, lenient, locale, tz);
+        }
+        if (TIME_PATTERN.equals(pattern)) {
+            return new FastDateParser(TIME, pattern, lenient, locale, tz);
+        }
+        return null;
+    }
+
+    private FastDateParser(int format, final String pattern, final boolean lenient, final Locale locale, final TimeZone tz) {
+        this.format = format;
+        this.fallback = new ThreadLocal<SimpleDateFormat>() {
+            @Override
+            protected SimpleDateFormat initialValue() {
+                final SimpleDateFormat formatter = new SimpleDateFormat(pattern, locale);
+                formatter.setLenient(lenient);
+                if (null != tz) {
+                    formatter.setTimeZone(tz);
+                }
+                return formatter;
+            }
+        };
+        if (TIME == format) {
+            // start of every hour of 01.01.1970 in parser time zone
+            hours = new long[24];
+            for (int h = 0; h < 24; h++) {
+                try {
+                    hours[h] = fallback.get().parse((0 == h % 12 ? 12 : h % 12) + ":00:00 " + (h < 12 ? "AM" : "PM")).getTime();
+                } catch (ParseException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        } else {
+            hours = null;
+        }
+    }
+
+    /**
+     * Parses date.
+     *
+     * @param value text to parse
+     *
+     * @return parsed date
+     *
+     * @throws ParseException if value can't be parsed
+     */
+    public Date parse(String value) throws ParseException {
+        if (DATE == format) {
+            final Long cached = dates.get(value);
+            if (null != cached) {
+                return new Date(cached);
+            }
+        }
+        final long millis = DATE == format ? scanDate(value) : scanTime(value);
+        if (INVALID == millis) {
+            return fallback.get().parse(value);
+        }
+        if (DATE == format && dates.size() < MAX_CACHED_DATES) {
+            dates.put(value, millis);
+        }
+        return new Date(millis);
+    }
+
+    private static long scanDate(String value) {
+        // MMM d, yyyy
+        final int length = value.length();
+        if (length < 11 || length > 12 || ' ' != value.charAt(3)) {
+            return INVALID;
+        }
+        int month = -1;
+        for (int i = 0; i < MONTHS.length; i++) {
+            if (value.startsWith(MONTHS[i])) {
+                month = i + 1;
+                break;
+            }
+        }
+        int p = 4;
+        int day = digit(value, p++);
+        if (p < length && ',' != value.charAt(p)) {
+            day = day * 10 + digit(value, p++);
+        }
+        if (month < 0 || day < 1 || p + 6 != length || ',' != value.charAt(p) || ' ' != value.charAt(p + 1)) {
+            return INVALID;
+        }
+        p += 2;
+        final int year = digit(value, p) * 1000 + digit(value, p + 1) * 100 + digit(value, p + 2) * 10 + digit(value, p + 3);
+        // older dates may be parsed using julian calendar
+        if (year < 1900 || day > daysInMonth(year, month)) {
+            return INVALID;
+        }
+        return epochDay(year, month, day) * MILLIS_PER_DAY;
+    }
+
+    private long scanTime(String value) {
+        // h:mm:ss a
+        final int length = value.length();
+        if (length < 10 || length > 11) {
+            return INVALID;
+        }
+        int p = 0;
+        int hour = digit(value, p++);
+        if (':' != value.charAt(p)) {
+            hour = hour * 10 + digit(value, p++);
+        }
+        if (p + 9 != length || ':' != value.charAt(p) || ':' != value.charAt(p + 3) || ' ' != value.charAt(p + 6)
+                || 'M' != value.charAt(p + 8)) {
+            return INVALID;
+        }
+        final int minute = digit(value, p + 1) * 10 + digit(value, p + 2);
+        final int second = digit(value, p + 4) * 10 + digit(value, p + 5);
+        final char marker = value.charAt(p + 7);
+        if (hour < 1 || hour > 12 || minute < 0 || minute > 59 || second < 0 || second > 59 || ('A' != marker && 'P' != marker)) {
+            return INVALID;
+        }
+        return hours[hour % 12 + ('P' == marker ? 12 : 0)] + minute * 60 * 1000L + second * 1000L;
+    }
+
+    /**
+     * @return digit value or large negative number if character is not a digit
+     */
+    private static int digit(String value, int p) {
+        final int d = p < value.length() ? value.charAt(p) - '0' : -1;
+        return d >= 0 && d <= 9 ? d : -10000;
+    }
+
+    private static int daysInMonth(int year, int month) {
+        if (2 == month) {
+            return (0 == year % 4 && 0 != year % 100) || 0 == year % 400 ? 29 : 28;
+        }
+        return 4 == month || 6 == month || 9 == month || 11 == month ? 30 : 31;
+    }
+
+    /**
+     * @return number of days since 01.01.1970 (proleptic gregorian calendar)
+     */
+    private static long epochDay(int year, int month, int day) {
+        final int y = month <= 2 ? year - 1 : year;
+        final int era = y / 400;
+        final int yoe = y - era * 400;
+        final int doy = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        final int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        return era * 146097L + doe - 719468;
+    }
+
+    private final int format;
+    private final ThreadLocal<SimpleDateFormat> fallback;
+    private final long[] hours;
+    private final ConcurrentHashMap<String, Long> dates = new ConcurrentHashMap<>();
+
+    private static final int DATE = 0;
+    private static final int TIME = 1;
+    private static final long INVALID = Long.MIN_VALUE;
+    private static final int MAX_CACHED_DATES = 1024;
+    private static final long MILLIS_PER_DAY = 24 * 60 * 60 * 1000L;
+    private static final String[] MONTHS = {"Jan", "Feb", "Mar", "Apr", "May", "Jun", "Jul", "Aug", "Sep", "Oct", "Nov", "Dec"};
+}
@@ -3,6 +3,7 @@ package com.bytestorm.isp;
 import com.bytestorm.utils.GoogleClientHelper;
 import com.bytestorm.utils.Log;
 import com.google.api.client.auth.oauth2.Credential;
+import com.google.api.client.util.Base64;
 import com.google.api.client.json.JsonFactory;
 import com.google.api.client.json.jackson2.JacksonFactory;
 import com.google.api.services.storage.Storage;
@@ -17,21 +18,40 @@ import org.joda.time.DateTime;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.math.BigInteger;
+import java.security.DigestInputStream;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 
 public class GCSReports extends GoogleClientHelper implements ReportsProvider {
 
     public static final String KEEP_REPORTS = "gcs.reports.keep";
     public static final String FORCE_AUTHORIZATION = "gcs.force.auth";
+    public static final String STREAM_REPORTS = "gcs.reports.streaming";
+    public static final String DOWNLOAD_THREADS = "gcs.download.threads";
+    public static final String DOWNLOAD_RETRIES = "gcs.download.retries";
+    public static final String DOWNLOAD_RETRY_DELAY = "gcs.download.retry.delay";
+    public static final String CACHE_REPORTS = "gcs.cache";
+    public static final String CACHE_DIR = "gcs.cache.dir";
+    public static final String CACHE_MAX_SIZE = "gcs.cache.max.size";
+    public static final String CACHE_MAX_AGE = "gcs.cache.max.age";
 
     public GCSReports(Configuration cfg, Date date) throws IOException, IllegalArgumentException {
         config = cfg;
@@ -50,54 +70,91 @@ public class GCSReports extends GoogleClientHelper implements ReportsProvider {
         // storage client
         this.bucket = cfg.getProperty("gcs.reports.bucket");
         this.date = new DateTime(date);
+        this.streaming = cfg.getBoolean(STREAM_REPORTS, false);
+        if (streaming && cfg.getBoolean(KEEP_REPORTS, false)) {
+            Log.v("Reports streaming disabled, downloaded reports have to be kept");
+            streaming = false;
+        }
+        if (cfg.getBoolean(CACHE_REPORTS, false)) {
+            final String dir = cfg.getProperty(CACHE_DIR);
+            try {
+                cache = new ReportCache(null != dir ? new File(dir) : new File(System.getProperty("user.home"), DEFAULT_CACHE_DIR),
+                        cfg.getLong(CACHE_MAX_SIZE, DEFAULT_CACHE_MAX_SIZE) * 1024 * 1024,
+                        cfg.getLong(CACHE_MAX_AGE, DEFAULT_CACHE_MAX_AGE) * 24 * 60 * 60 * 1000);
+            } catch (IOException e) {
+                // usually directory locked by concurrent run, reports are downloaded without cache
+                Log.v(e.getMessage() + ", reports cache disabled");
+            }
+        }
         Storage client = new Storage.Builder(getHttpTransport(), JSON_FACTORY, credential)
                 .setApplicationName(APP_NAME)
                 .build();
-        downloadAll(client, "earnings/earnings_" + DATE_FORMAT.format(this.date.toDate()), earningReports);
-        if (earningReports.isEmpty()) {
+        final ArrayList<StorageObject> earningsObjects = list(client, "earnings/earnings_" + DATE_FORMAT.format(this.date.toDate()));
+        if (earningsObjects.isEmpty()) {
             throw new IOException("Cannot find earnings report for specified date");
         }
-        downloadAll(client, "sales/salesreport_" + DATE_FORMAT.format(this.date.toDate()), salesReports);
-        downloadAll(client, "sales/salesreport_" + DATE_FORMAT.format(this.date.plusMonths(1).toDate()), salesReports);
+        final ArrayList<StorageObject> salesObjects = list(client, "sales/salesreport_" + DATE_FORMAT.format(this.date.toDate()));
+        salesObjects.addAll(list(client, "sales/salesreport_" + DATE_FORMAT.format(this.date.plusMonths(1).toDate())));
+        // all objects are downloaded by single scheduler, results are split back preserving listing order
+        final ArrayList<StorageObject> objects = new ArrayList<>(earningsObjects);
+        objects.addAll(salesObjects);
+        final List<ReportSource> sources = downloadAll(client, objects);
+        if (null != cache) {
+            // entries of this run are kept, so evicting after downloads never removes reports about to be parsed
+            cache.evict();
+        }
+        earningReports.addAll(sources.subList(0, earningsObjects.size()));
+        salesReports.addAll(sources.subList(earningsObjects.size(), sources.size()));
         if (cfg.getBoolean(KEEP_REPORTS, false)) {
             Log.v("Saving downloaded CSV files");
             // resolve collisions
-            HashMap<String, ArrayList<File>> collisions = new HashMap<>();
-            for (Map.Entry<File, String> entry : mapping.entrySet()) {
-                ArrayList<File> filesWithName = collisions.get(entry.getValue());
+            HashMap<String, ArrayList<ReportSource>> collisions = new HashMap<>();
+            for (Map.Entry<ReportSource, String> entry : mapping.entrySet()) {
+                ArrayList<ReportSource> filesWithName = collisions.get(entry.getValue());
                 if (null == filesWithName) {
                     filesWithName = new ArrayList<>();
                     collisions.put(entry.getValue(), filesWithName);
                 }
                 filesWithName.add(entry.getKey());
             }
-            for (Map.Entry<String, ArrayList<File>> entry : collisions.entrySet()) {
+            for (Map.Entry<String, ArrayList<ReportSource>> entry : collisions.entrySet()) {
                 if (entry.getValue().size() > 1) {
                     // colliding filename found
                     String name = FilenameUtils.getBaseName(entry.getKey());
                     String ext = FilenameUtils.getExtension(entry.getKey());
                     int n = 1;
-                    for (File f : entry.getValue()) {
+                    for (ReportSource f : entry.getValue()) {
                         mapping.put(f, name + " (" + (n++) + ")" + ext);
                     }
                 }
             }
-            for (Map.Entry<File, String> entry : mapping.entrySet()) {
-                final File src = entry.getKey();
+            for (Map.Entry<ReportSource, String> entry : mapping.entrySet()) {
                 final File dst = new File(entry.getValue());
-                Files.copy(src.toPath(), dst.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                try (InputStream in = entry.getKey().open()) {
+                    Files.copy(in, dst.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                }
             }
         }
     }
 
     @Override
     public File[] getEarningsReportsFiles() throws IOException, IllegalArgumentException {
-        return earningReports.toArray(new File[earningReports.size()]);
+        return ReportSource.toFiles(getEarningsReports());
     }
 
     @Override
     public File[] getSalesReportsFiles() throws IOException, IllegalArgumentException {
-        return salesReports.toArray(new File[salesReports.size()]);
+        return ReportSource.toFiles(getSalesReports());
+    }
+
+    @Override
+    public ReportSource[] getEarningsReports() throws IOException, IllegalArgumentException {
+        return earningReports.toArray(new ReportSource[earningReports.size()]);
+    }
+
+    @Override
+    public ReportSource[] getSalesReports() throws IOException, IllegalArgumentException {
+        return salesReports.toArray(new ReportSource[salesReports.size()]);
     }
 
     @Override
@@ -130,38 +187,314 @@ public class GCSReports extends GoogleClientHelper implements ReportsProvider {
         return null;
     }
 
-    private void downloadAll(Storage client, String prefix, ArrayList<File> out) throws IOException {
+    private ArrayList<StorageObject> list(Storage client, String prefix) throws IOException {
         Storage.Objects.List list = client.objects().list(bucket);
         list.setPrefix(prefix);
-        Objects earningsReportsObjects = list.execute();
-        for (StorageObject obj : earningsReportsObjects.getItems()) {
-            out.add(downloadAndUnpack(client, obj));
+        final ArrayList<StorageObject> out = new ArrayList<>();
+        for (; ; ) {
+            Objects objects = list.execute();
+            if (null != objects.getItems()) {
+                out.addAll(objects.getItems());
+            }
+            if (null == objects.getNextPageToken()) {
+                return out;
+            }
+            list.setPageToken(objects.getNextPageToken());
+        }
+    }
+
+    private List<ReportSource> downloadAll(final Storage client, List<StorageObject> objects) throws IOException {
+        final ArrayList<ReportSource> out = new ArrayList<>(objects.size());
+        if (streaming) {
+            // cached reports are used if available, streamed ones are not stored in cache
+            for (StorageObject obj : objects) {
+                final DownloadedReport cached = getCached(obj);
+                if (null != cached) {
+                    mapping.put(cached, cached.entryName);
+                    out.add(cached);
+                } else {
+                    out.add(stream(client, obj));
+                }
+            }
+            return out;
+        }
+        final ArrayList<DownloadScheduler.Download<DownloadedReport>> downloads = new ArrayList<>(objects.size());
+        for (final StorageObject obj : objects) {
+            downloads.add(new DownloadScheduler.Download<DownloadedReport>() {
+                @Override
+                public String getName() {
+                    return obj.getName();
+                }
+
+                @Override
+                public DownloadedReport download() throws IOException {
+                    return GCSReports.this.download(client, obj);
+                }
+            });
+        }
+        final DownloadScheduler scheduler = new DownloadScheduler(config.getInt(DOWNLOAD_THREADS, DEFAULT_DOWNLOAD_THREADS),
+                config.getInt(DOWNLOAD_RETRIES, DEFAULT_DOWNLOAD_RETRIES),
+                config.getLong(DOWNLOAD_RETRY_DELAY, DEFAULT_DOWNLOAD_RETRY_DELAY));
+        for (DownloadedReport report : scheduler.downloadAll(downloads)) {
+            mapping.put(report, report.entryName);
+            out.add(report);
         }
+        return out;
     }
 
-    private File downloadAndUnpack(Storage client, StorageObject file) throws IOException {
+    private DownloadedReport download(Storage client, StorageObject file) throws IOException {
+        final DownloadedReport cached = getCached(file);
+        if (null != cached) {
+            return cached;
+        }
         Log.v("Downloading storage file " + file.getName());
         String fileName = file.getName();
         Storage.Objects.Get getObject = client.objects().get(bucket, fileName);
-        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        DownloadBuffer data = new DownloadBuffer(file.getSize());
         getObject.getMediaHttpDownloader().setDirectDownloadEnabled(true);
         getObject.executeMediaAndDownloadTo(data);
-        File out = File.createTempFile("tmp", ".csv");
-        String origName = ZipUtils.unpack(new ByteArrayInputStream(data.toByteArray()), out);
-        mapping.put(out, origName);
-        return out;
+        final byte[] zip = data.toByteArray();
+        if (null != file.getMd5Hash()) {
+            final byte[] md5 = ReportCache.digest("MD5").digest(zip);
+            if (!Arrays.equals(md5, Base64.decodeBase64(file.getMd5Hash()))) {
+                throw new IOException("Storage file " + fileName + " MD5 mismatch");
+            }
+        }
+        final String entryName;
+        try (ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(zip))) {
+            ZipEntry entry = in.getNextEntry();
+            entryName = null != entry ? entry.getName() : FilenameUtils.getBaseName(fileName) + ".csv";
+        }
+        if (null != cache) {
+            try (InputStream in = ZipUtils.openSingleEntry(new ByteArrayInputStream(zip))) {
+                final ReportCache.Entry entry = cache.put(cacheKey(file), entryName, in);
+                return new DownloadedReport(fileName, entry.getFile(), entryName);
+            }
+        }
+        // kept compressed, inflated while read (large reports are split into chunks while inflated)
+        return new DownloadedReport(fileName, zip, entryName);
+    }
+
+    private DownloadedReport getCached(StorageObject file) {
+        if (null == cache) {
+            return null;
+        }
+        final ReportCache.Entry entry = cache.get(cacheKey(file));
+        if (null == entry) {
+            return null;
+        }
+        Log.v("Using cached storage file " + file.getName());
+        return new DownloadedReport(file.getName(), entry.getFile(), entry.getEntryName());
+    }
+
+    private String cacheKey(StorageObject file) {
+        return ReportCache.key(bucket, file.getName(), file.getGeneration(), file.getMd5Hash(), file.getCrc32c());
+    }
+
+    /**
+     * Creates report source which downloads object when it is opened. Data is transferred by separate thread through
+     * a pipe, so unpacking and parsing runs concurrently with download and only pipe buffer is held in memory. Source
+     * can be opened only once (report is not downloaded again), MD5 of object is verified when end of data is read.
+     */
+    private ReportSource stream(final Storage client, final StorageObject file) {
+        return new ReportSource(file.getName()) {
+            @Override
+            public synchronized InputStream open() throws IOException {
+                if (opened) {
+                    throw new IOException("Streamed storage file " + getName() + " can be read only once");
+                }
+                opened = true;
+                Log.v("Streaming storage file " + getName());
+                final Storage.Objects.Get getObject = client.objects().get(bucket, getName());
+                getObject.getMediaHttpDownloader().setDirectDownloadEnabled(true);
+                final PipedInputStream source = new PipedInputStream(PIPE_SIZE);
+                final PipedOutputStream sink = new PipedOutputStream(source);
+                final DownloadPipe pipe = new DownloadPipe(source);
+                final Thread downloader = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            getObject.executeMediaAndDownloadTo(sink);
+                        } catch (Throwable e) {
+                            // reported to reader, note that it has to be set before pipe is closed
+                            pipe.error = e;
+                        } finally {
+                            try {
+                                sink.close();
+                            } catch (IOException e) {
+                                // ignore
+                            }
+                        }
+                    }
+                }, "gcs-download-" + getName());
+                downloader.setDaemon(true);
+                downloader.start();
+                if (null == file.getMd5Hash()) {
+                    return ZipUtils.openSingleEntry(pipe);
+                }
+                final DigestInputStream zip = new DigestInputStream(pipe, ReportCache.digest("MD5"));
+                return new FilterInputStream(ZipUtils.openSingleEntry(zip)) {
+                    @Override
+                    public int read() throws IOException {
+                        final int b = super.read();
+                        if (b < 0) {
+                            verify();
+                        }
+                        return b;
+                    }
+
+                    @Override
+                    public int read(byte[] b, int off, int len) throws IOException {
+                        final int read = super.read(b, off, len);
+                        if (read < 0) {
+                            verify();
+                        }
+                        return read;
+                    }
+
+                    private void verify() throws IOException {
+                        if (!verified) {
+                            verified = true;
+                            // rest of archive (central directory) is not read by zip stream
+                            final byte[] buffer = new byte[8 * 1024];
+                            while (zip.read(buffer) >= 0) {
+                                // digested while read
+                            }
+                            if (!Arrays.equals(zip.getMessageDigest().digest(), Base64.decodeBase64(file.getMd5Hash()))) {
+                                throw new IOException("Storage file " + getName() + " MD5 mismatch");
+                            }
+                        }
+                    }
+
+                    private boolean verified;
+                };
+            }
+
+            private boolean opened;
+        };
+    }
+
+    /**
+     * Report downloaded to memory (zipped) or stored in cache (unpacked).
+     */
+    private static class DownloadedReport extends ReportSource {
+
+        DownloadedReport(String name, byte[] zip, String entryName) {
+            super(name);
+            this.zip = zip;
+            this.file = null;
+            this.entryName = entryName;
+        }
+
+        DownloadedReport(String name, File file, String entryName) {
+            super(name);
+            this.zip = null;
+            this.file = file;
+            this.entryName = entryName;
+        }
+
+        @Override
+        public InputStream open() throws IOException {
+            if (null != file) {
+                return new FileInputStream(file);
+            }
+            return ZipUtils.openSingleEntry(new ByteArrayInputStream(zip));
+        }
+
+        @Override
+        public File getFile() {
+            return file;
+        }
+
+        final byte[] zip;
+        final File file;
+        final String entryName;
+    }
+
+    /**
+     * Download target sized up front when object size is known, so downloaded data are not copied again.
+     */
+    private static class DownloadBuffer extends ByteArrayOutputStream {
+
+        DownloadBuffer(BigInteger size) {
+            super(null != size && size.compareTo(BigInteger.valueOf(Integer.MAX_VALUE - 8)) <= 0 ? size.intValue() : 32);
+        }
+
+        /**
+         * @return downloaded data, internal buffer is returned if it is filled completely
+         */
+        @Override
+        public synchronized byte[] toByteArray() {
+            return count == buf.length ? buf : super.toByteArray();
+        }
+    }
+
+    /**
+     * Reading end of download pipe, reports download thread failure as read error.
+     */
+    private static class DownloadPipe extends FilterInputStream {
+
+        DownloadPipe(PipedInputStream source) {
+            super(source);
+        }
+
+        @Override
+        public int read() throws IOException {
+            try {
+                final int b = super.read();
+                if (b < 0) {
+                    checkError();
+                }
+                return b;
+            } catch (IOException e) {
+                checkError();
+                throw e;
+            }
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            try {
+                final int read = super.read(b, off, len);
+                if (read < 0) {
+                    checkError();
+                }
+                return read;
+            } catch (IOException e) {
+                checkError();
+                throw e;
+            }
+        }
+
+        private void checkError() throws IOException {
+            final Throwable e = error;
+            if (null != e) {
+                throw new IOException("Report download failed", e);
+            }
+        }
+
+        volatile Throwable error;
     }
 
     private Configuration config;
+    private boolean streaming;
+    private ReportCache cache;
     private String bucket;
     private DateTime date;
-    private ArrayList<File> earningReports = new ArrayList<>();
-    private ArrayList<File> salesReports = new ArrayList<>();
-    private HashMap<File, String> mapping = new HashMap<>();
+    private ArrayList<ReportSource> earningReports = new ArrayList<>();
+    private ArrayList<ReportSource> salesReports = new ArrayList<>();
+    private HashMap<ReportSource, String> mapping = new HashMap<>();
 
     private static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("yyyyMM");
 
     private static final String DEFAULT_BUCKET = "<PLAY_BUCKET>";
+    private static final int PIPE_SIZE = 1024 * 1024;
+    private static final int DEFAULT_DOWNLOAD_THREADS = 4;
+    private static final int DEFAULT_DOWNLOAD_RETRIES = 3;
+    private static final long DEFAULT_DOWNLOAD_RETRY_DELAY = 1000;
+    private static final String DEFAULT_CACHE_DIR = ".isp-cache";
+    private static final long DEFAULT_CACHE_MAX_SIZE = 1024;
+    private static final long DEFAULT_CACHE_MAX_AGE = 90;
 
     private static final String APP_NAME = "Bytestorm-ISP/1.0";
     private static final Collection<String> SCOPES = Collections.singleton(StorageScopes.DEVSTORAGE_READ_ONLY);
@@ -30,16 +30,12 @@ public class LocalReports implements ReportsProvider {
             m = RE_EARNINGS_ZIP.matcher(filename);
             if (m.matches()) {
                 date = checkDates(date, m.group(1));
-                final File earningReportCsv = File.createTempFile("earnings", ".csv");
-                ZipUtils.unpack(f, earningReportCsv);
-                earningsReports.add(earningReportCsv);
+                earningsReports.add(ReportSource.forZip(f));
                 continue;
             }
             m = RE_SALES_ZIP.matcher(filename);
             if (m.matches()) {
-                final File salesReportCsv = File.createTempFile("sales", ".csv");
-                ZipUtils.unpack(f, salesReportCsv);
-                salesReports.add(salesReportCsv);
+                salesReports.add(ReportSource.forZip(f));
                 continue;
             }
             m = RE_CVS.matcher(filename);
@@ -49,11 +45,11 @@ public class LocalReports implements ReportsProvider {
                     case "playapps":
                     case "earnings":
                         date = checkDates(date, m.group(2));
-                        earningsReports.add(f);
+                        earningsReports.add(ReportSource.forFile(f));
                         break;
                     case "salesreport":
                     case "sales":
-                        salesReports.add(f);
+                        salesReports.add(ReportSource.forFile(f));
                         break;
                     default:
                         throw new IllegalArgumentException("Unrecognized CSV file " + filename);
@@ -74,12 +70,22 @@ public class LocalReports implements ReportsProvider {
 
     @Override
     public File[] getEarningsReportsFiles() throws IOException, IllegalArgumentException {
-        return earningsReports.toArray(new File[earningsReports.size()]);
+        return ReportSource.toFiles(getEarningsReports());
     }
 
     @Override
     public File[] getSalesReportsFiles() throws IOException, IllegalArgumentException {
-        return salesReports.toArray(new File[salesReports.size()]);
+        return ReportSource.toFiles(getSalesReports());
+    }
+
+    @Override
+    public ReportSource[] getEarningsReports() throws IOException, IllegalArgumentException {
+        return earningsReports.toArray(new ReportSource[earningsReports.size()]);
+    }
+
+    @Override
+    public ReportSource[] getSalesReports() throws IOException, IllegalArgumentException {
+        return salesReports.toArray(new ReportSource[salesReports.size()]);
     }
 
     @Override
@@ -102,8 +108,8 @@ public class LocalReports implements ReportsProvider {
 
     private String date;
     private Date reportsDate;
-    private ArrayList<File> earningsReports = new ArrayList<>();
-    private ArrayList<File> salesReports = new ArrayList<>();
+    private ArrayList<ReportSource> earningsReports = new ArrayList<>();
+    private ArrayList<ReportSource> salesReports = new ArrayList<>();
 
     // file names regexps
     private static final Pattern RE_SALES_ZIP = Pattern.compile("^salesreport_(\\d{6})\\.zip$");
@@ -17,28 +17,32 @@ import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.util.CellRangeAddress;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.joda.time.DateTime;
-import org.supercsv.io.CsvBeanReader;
-import org.supercsv.io.ICsvBeanReader;
-import org.supercsv.prefs.CsvPreference;
 
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.math.BigDecimal;
-import java.math.RoundingMode;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
-import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 public class Main {
 
@@ -173,11 +177,11 @@ public class Main {
                 outFile = new File(DATE_FORMAT.format(reports.getDate()) + ".xlsx");
             }
             Log.v("Report date: " + reports.getDate());
-            for (File file : reports.getEarningsReportsFiles()) {
-                Log.v("Earnings report file: " + file.getAbsolutePath());
+            for (ReportSource source : reports.getEarningsReports()) {
+                Log.v("Earnings report: " + source.getName());
             }
-            for (File file : reports.getSalesReportsFiles()) {
-                Log.v("Sales report file: " + file.getAbsolutePath());
+            for (ReportSource source : reports.getSalesReports()) {
+                Log.v("Sales report: " + source.getName());
             }
             if (cli.hasOption("no-overwrite")) {
                 if (outFile.exists()) {
@@ -186,15 +190,32 @@ public class Main {
                     System.exit(-4);
                 }
             }
+            MoneySum.setVerify(config.getBoolean("process.money.verify", false));
             // process transactions
+            final ColumnProjection earningsColumns = getEarningsColumns(config);
+            Log.v("Earnings report columns: " + earningsColumns);
             List<Transaction> transactions = parseInputCsvs(reports,
                     !config.getBoolean("process.transactions.vat", true),
-                    !config.getBoolean("process.tax.only.reports", false));
+                    !config.getBoolean("process.tax.only.reports", false),
+                    config.getBoolean("process.csv.fast.reader", false),
+                    config.getInt("process.parse.threads", 1),
+                    config.getLong("process.parse.chunk.size", DEFAULT_PARSE_CHUNK_SIZE),
+                    earningsColumns,
+                    config.getInt("process.sales.prefilter.window", DEFAULT_SALES_WINDOW_DAYS),
+                    config.getBoolean("process.sales.merge.join", false),
+                    config.getLong("process.sales.merge.join.memory", DEFAULT_MERGE_JOIN_MEMORY),
+                    config.getInt("process.sales.threads", 1));
             final Date from = transactions.get(0).getDate();
             final Date to = transactions.get(transactions.size() - 1).getDate();
             if (config.getBoolean("output.xchange.sheet", true)) {
                 try {
-                    final Exchange xchg = new Exchange(from, to);
+                    final Exchange xchg = new Exchange(from, to,
+                            config.getProperty("xchange.nbp.url", Exchange.DEFAULT_BASE_URL),
+                            config.getInt("xchange.download.threads", 1));
+                    final String rateStore = config.getProperty("xchange.store");
+                    if (null != rateStore) {
+                        xchg.setRateStore(new RateStore(new File(rateStore)));
+                    }
                     xchg.download();
                     for (Transaction t : transactions) {
                         final String buyerCurrency = t.getBuyerCurrency();
@@ -210,27 +231,51 @@ public class Main {
                     System.exit(2);
                 }
             }
-            for (Transaction t : transactions) {
-                final String buyerCurrency = t.getBuyerCurrency();
-                // currency format lookup init
-                if (null == perCurrecyAmountFormat.get(buyerCurrency)) {
-                    perCurrecyAmountFormat.put(buyerCurrency, CellStyleType.AMOUNT_SHORT);
+            // single pass computing all data needed by output sheets
+            final String granularity = config.getProperty("output.pivot.granularity");
+            final TransactionAggregator aggregator = new TransactionAggregator(EU_CURRENCIES,
+                    config.getBoolean("process.transactions.vat", true),
+                    null == granularity ? null : RevenueCube.Granularity.valueOf(granularity.trim().toUpperCase(Locale.US)),
+                    config.getInt("process.pivot.threads", 1));
+            final List<? extends TransactionRow> rows;
+            if (config.getBoolean("process.columnar.store", false)) {
+                for (Transaction t : transactions) {
+                    // exchange rates are final, compute converted values once for all output sheets
+                    t.computeConverted();
+                }
+                Log.v("Converting transactions to columnar store");
+                rows = new TransactionTable(transactions);
+                // release transaction beans, all output data are read from table
+                transactions = null;
+                for (TransactionRow t : rows) {
+                    aggregator.add(t);
                 }
-                // check if amount has fraction point
-                if (!t.getAmount().subtract(t.getAmount().setScale(0, RoundingMode.FLOOR)).equals(BigDecimal.ZERO)) {
-                    perCurrecyAmountFormat.put(buyerCurrency, CellStyleType.AMOUNT);
+            } else {
+                for (Transaction t : transactions) {
+                    // exchange rates are final, compute converted values once for all output sheets
+                    t.computeConverted();
+                    aggregator.add(t);
                 }
+                rows = transactions;
+            }
+            aggregator.finish(rows);
+            logStatistics(aggregator);
+            // currency format lookup init
+            final BitSet currencies = aggregator.getCurrencies();
+            for (int code = currencies.nextSetBit(0); code >= 0; code = currencies.nextSetBit(code + 1)) {
+                perCurrecyAmountFormat.put(Transaction.CURRENCIES.decode(code),
+                        aggregator.getFractionalCurrencies().get(code) ? CellStyleType.AMOUNT : CellStyleType.AMOUNT_SHORT);
             }
             try (FileOutputStream out = new FileOutputStream(outFile)) {
                 Log.v("Creating output XLSX");
                 final WorkbookStyle wb = new WorkbookStyle(new XSSFWorkbook(), config);
-                createTransactionsSheet(wb, transactions, !config.getBoolean("process.transactions.vat", true));
-                createPivotSheet(wb, transactions);
+                createTransactionsSheet(wb, rows, !config.getBoolean("process.transactions.vat", true));
+                createPivotSheet(wb, aggregator.getPivot());
                 if (config.getBoolean("process.transactions.vat", true) && config.getBoolean("output.vat.sheet", true)) {
-                    createVatSheet(wb, transactions);
+                    createVatSheet(wb, aggregator);
                 }
                 if (config.getBoolean("output.summary.sheet", true)) {
-                    createSummarySheet(wb, transactions, !config.getBoolean("process.transactions.vat", true));
+                    createSummarySheet(wb, aggregator, !config.getBoolean("process.transactions.vat", true));
                 }
                 Log.v("Saving output XLSX file " + outFile);
                 wb.getWorkbook().write(out);
@@ -250,148 +295,486 @@ public class Main {
         }
     }
 
-    private static List<Transaction> parseInputCsvs(ReportsProvider reports, boolean noVat, boolean noTaxOnlyReports) throws IOException {
-        ArrayList<Transaction> retval = new ArrayList<>();
-        File[] earningsReports = reports.getEarningsReportsFiles();
+    private static List<Transaction> parseInputCsvs(ReportsProvider reports, boolean noVat, boolean noTaxOnlyReports,
+                                                    boolean fastReader, int parseThreads, long chunkSize,
+                                                    ColumnProjection earningsColumns, int salesWindowDays,
+                                                    boolean mergeJoin, long mergeJoinMemory, int salesThreads)
+            throws IOException {
+        // transactions of every report in input order
+        ArrayList<List<Transaction>> runs = new ArrayList<>();
+        int entriesCount = 0;
+        ReportSource[] earningsReports = reports.getEarningsReports();
         int ignoredTaxReportsCount = 0;
-        for (File file : earningsReports) {
-            // report data
-            ArrayList<Transaction> reportTransactions = new ArrayList<>();
-            BigDecimal incomeInReport = BigDecimal.ZERO;
-            int transactionsInReport = 0;
-            boolean taxOnlyReport = true;
-            try (ICsvBeanReader beanReader = new CsvBeanReader(new FileReader(file), CsvPreference.STANDARD_PREFERENCE)) {
-                /* final String[] header = */
-                beanReader.getHeader(true); // header will be ignored
-                Transaction t;
-                while ((t = beanReader.read(Transaction.class, Transaction.MAPPING, Transaction.CSV)) != null) {
-                    if (null == t.getTransactionType()) {
-                        // tax deduction reports in some cases contains invalid rows with 0 payout, so skip it
-                        if (BigDecimal.ZERO.compareTo(t.getPayout()) == 0) {
-                            continue;
-                        }
-                        throw new IOException("Invalid row " + beanReader.getRowNumber()
-                                + " - transaction don't have associated type and have value\n" + beanReader.getUntokenizedRow());
-                    }
-                    if (null == t.getId()) {
-                        if (Transaction.Type.TAX != t.getTransactionType()) {
-                            throw new IOException("Invalid row " + beanReader.getRowNumber()
-                                    + " - non-tax deduction transaction without id\n" + beanReader.getUntokenizedRow());
-                        }
-                    }
-                    incomeInReport = incomeInReport.add(t.getPayout());
-                    ++transactionsInReport;
-                    if (Transaction.Type.TAX != t.getTransactionType()) {
-                        taxOnlyReport = false;
-                    }
-                    reportTransactions.add(t);
-                }
-            }
-            if (taxOnlyReport) {
+        for (EarningsReport report : parseEarningsReports(earningsReports, fastReader, parseThreads, chunkSize,
+                earningsColumns)) {
+            if (report.isTaxOnly()) {
                 if (noTaxOnlyReports) {
                     Log.v("Tax only report processed (ignored)");
                     ++ignoredTaxReportsCount;
                 } else {
                     Log.v("Tax only report processed");
-                    retval.addAll(reportTransactions);
+                    runs.add(report.getTransactions());
+                    entriesCount += report.getTransactions().size();
                 }
             } else {
                 Log.v("Transactions report processed");
-                retval.addAll(reportTransactions);
-            }
-            Log.v(String.format("  - total income : %.02f PLN", incomeInReport.floatValue()));
-            Log.v("  - total entries: " + transactionsInReport);
-        }
-        // collect global info
-        HashMap<String, Integer> sellsBySku = new HashMap<>();
-        HashMap<String, Integer> refundsBySku = new HashMap<>();
-        HashSet<String> skus = new HashSet<>();
-        BigDecimal income = BigDecimal.ZERO;
-        BigDecimal taxDeduction = BigDecimal.ZERO;
-        HashMap<String, Transaction> transactionsLookup = new HashMap<>();
-        for (Transaction t : retval) {
-            if (Transaction.Type.TAX == t.getTransactionType()) {
-                taxDeduction = taxDeduction.add(t.getPayout());
-            } else {
-                // initialize per SKU counters
-                String sku = t.getSkuId();
-                if (!sellsBySku.containsKey(sku)) {
-                    sellsBySku.put(sku, 0);
-                }
-                if (!refundsBySku.containsKey(sku)) {
-                    refundsBySku.put(sku, 0);
-                }
-                skus.add(sku);
-                if (Transaction.Type.CHARGE == t.getTransactionType()) {
-                    sellsBySku.put(sku, sellsBySku.get(sku) + 1);
-                    transactionsLookup.put(t.getId(), t);
-                } else if (Transaction.Type.REFUND == t.getTransactionType()) {
-                    refundsBySku.put(sku, refundsBySku.get(sku) + 1);
-                }
+                runs.add(report.getTransactions());
+                entriesCount += report.getTransactions().size();
             }
-            income = income.add(t.getPayout());
+            Log.v(String.format("  - total income : %.02f PLN", report.getIncome().floatValue()));
+            Log.v("  - total entries: " + report.getTransactions().size());
         }
         Log.v("Reports processed");
         Log.v("  - total reports: " + earningsReports.length);
         if (ignoredTaxReportsCount > 0) {
             Log.v("    - ignored tax only reports: " + ignoredTaxReportsCount);
         }
-        Log.v("  - total entries: " + retval.size());
-        Log.v("Transactions by SKU:");
-        for (String sku : skus) {
-            Log.v("  - SKU: " + sku);
-            Log.v("    - sells  : " + sellsBySku.get(sku));
-            Log.v("    - refunds: " + refundsBySku.get(sku));
+        Log.v("  - total entries: " + entriesCount);
+        final ArrayList<Transaction> retval = TransactionSorter.sortByDate(runs);
+        if (!noVat) {
+            final SalesPrefilter salesFilter = fastReader ? createSalesFilter(retval, salesWindowDays) : null;
+            if (mergeJoin) {
+                joinSalesSorted(retval, reports.getSalesReports(), fastReader, salesFilter, mergeJoinMemory);
+            } else if (salesThreads > 1) {
+                joinSalesParallel(retval, reports.getSalesReports(), fastReader, salesFilter, salesThreads, chunkSize);
+            } else {
+                joinSalesHashed(retval, reports.getSalesReports(), fastReader, salesFilter);
+            }
         }
-        Log.v(String.format("Tax deduction: %.02f PLN", taxDeduction.negate().floatValue()));
-        Log.v(String.format("Total income : %.02f PLN", income.floatValue()));
-        Collections.sort(retval, new Comparator<Transaction>() {
+        return retval;
+    }
+
+    /**
+     * Creates filter of sales rows which can't match any charge transaction (used by fast reader).
+     */
+    static SalesPrefilter createSalesFilter(List<Transaction> transactions, int windowDays) {
+        final SalesPrefilter filter = new SalesPrefilter(transactions.size());
+        long firstCharge = Long.MAX_VALUE;
+        long lastCharge = Long.MIN_VALUE;
+        for (Transaction t : transactions) {
+            if (Transaction.Type.CHARGE == t.getTransactionType() && null != t.getId()) {
+                filter.addId(t.getId());
+                firstCharge = Math.min(firstCharge, t.getDate().getTime());
+                lastCharge = Math.max(lastCharge, t.getDate().getTime());
+            }
+        }
+        if (windowDays >= 0 && firstCharge <= lastCharge) {
+            filter.setWindow(firstCharge, lastCharge, windowDays);
+        }
+        return filter;
+    }
+
+    /**
+     * Matches charge transactions with sales using order id index, sales are processed in report order.
+     */
+    static void joinSalesHashed(List<Transaction> transactions, ReportSource[] salesReports,
+                                boolean fastReader, SalesPrefilter salesFilter) throws IOException {
+        // order id to row of charge transaction
+        final OrderIndex transactionsLookup = new OrderIndex(transactions.size());
+        for (int i = 0; i < transactions.size(); i++) {
+            final Transaction t = transactions.get(i);
+            if (Transaction.Type.CHARGE == t.getTransactionType()) {
+                transactionsLookup.put(t.getId(), i);
+            }
+        }
+        for (ReportSource file : salesReports) {
+            Log.v("Loading sales report CSV " + file.getName());
+            try (SaleReader salesReader = openSalesReport(file, fastReader, salesFilter)) {
+                Sale sale;
+                while ((sale = salesReader.read()) != null) {
+                    final int row = transactionsLookup.remove(sale.getId());
+                    if (row < 0) {
+                        // this is valid case - sales are reported by charge date so some salles can be from previous month
+                        continue;
+                    }
+                    updateWithSale(transactions.get(row), sale);
+                }
+                logRejectedSales(salesReader);
+            }
+        }
+        if (!transactionsLookup.isEmpty()) {
+            throw new IOException("Some transaction were not matched with transaction from sales reports");
+        }
+    }
+
+    /**
+     * Sale claimed by charge transaction, sale with lower position (report index and row number) replaces sale with
+     * higher one.
+     */
+    private static class SaleClaim {
+
+        SaleClaim(long position, Sale sale) {
+            this.position = position;
+            this.sale = sale;
+        }
+
+        final long position;
+        final Sale sale;
+    }
+
+    /**
+     * Matches charge transactions with sales reading sales reports (and chunks of large plain files when fast reader is
+     * used) concurrently. Workers only probe order id index and claim charges atomically, charges are updated after all
+     * reports were read with sales sequential join would use (first sale with given id in reports order).
+     */
+    static void joinSalesParallel(List<Transaction> transactions, ReportSource[] salesReports,
+                                  final boolean fastReader, final SalesPrefilter salesFilter, int threads,
+                                  long chunkSize) throws IOException {
+        // order id to row of charge transaction, not modified while read by workers
+        final OrderIndex transactionsLookup = new OrderIndex(transactions.size());
+        for (int i = 0; i < transactions.size(); i++) {
+            final Transaction t = transactions.get(i);
+            if (Transaction.Type.CHARGE == t.getTransactionType()) {
+                transactionsLookup.put(t.getId(), i);
+            }
+        }
+        final AtomicReferenceArray<SaleClaim> claims = new AtomicReferenceArray<>(transactions.size());
+        Log.v("Matching " + salesReports.length + " sales reports using " + threads + " threads");
+        final Semaphore chunkMemory = new Semaphore(threads + 1);
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final ArrayList<Future<Void>> results = new ArrayList<>();
+            for (int i = 0; i < salesReports.length; i++) {
+                final ReportSource file = salesReports[i];
+                final long reportPosition = (long) i << 32;
+                Log.v("Loading sales report CSV " + file.getName());
+                if (fastReader && (null != file.getFile() || chunkSize > 0)) {
+                    // large reports are split and read in chunks
+                    int count = 0;
+                    try (CsvSplitter.Chunks chunks = CsvSplitter.open(file, chunkSize)) {
+                        for (CsvSplitter.Chunk next; null != (next = chunks.next()); ++count) {
+                            final CsvSplitter.Chunk chunk = next;
+                            final boolean inMemory = acquireChunkMemory(chunk, chunkMemory);
+                            results.add(executor.submit(new Callable<Void>() {
+                                @Override
+                                public Void call() throws Exception {
+                                    try (SaleReader salesReader = openSalesReport(file, chunk, salesFilter)) {
+                                        claimSales(salesReader, transactionsLookup, claims, reportPosition);
+                                    } finally {
+                                        if (inMemory) {
+                                            chunkMemory.release();
+                                        }
+                                    }
+                                    return null;
+                                }
+                            }));
+                        }
+                    }
+                    if (count > 1) {
+                        Log.v("Sales report " + file.getName() + " split into " + count + " chunks");
+                    }
+                } else {
+                    results.add(executor.submit(new Callable<Void>() {
+                        @Override
+                        public Void call() throws Exception {
+                            try (SaleReader salesReader = openSalesReport(file, fastReader, salesFilter)) {
+                                claimSales(salesReader, transactionsLookup, claims, reportPosition);
+                            }
+                            return null;
+                        }
+                    }));
+                }
+            }
+            for (Future<Void> result : results) {
+                getResult(result);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        int matched = 0;
+        for (int row = 0; row < claims.length(); row++) {
+            final SaleClaim claim = claims.get(row);
+            if (null != claim) {
+                updateWithSale(transactions.get(row), claim.sale);
+                ++matched;
+            }
+        }
+        if (matched != transactionsLookup.size()) {
+            throw new IOException("Some transaction were not matched with transaction from sales reports");
+        }
+    }
+
+    private static void claimSales(SaleReader salesReader, OrderIndex transactionsLookup,
+                                   AtomicReferenceArray<SaleClaim> claims, long reportPosition) throws IOException {
+        Sale sale;
+        while ((sale = salesReader.read()) != null) {
+            final int row = transactionsLookup.get(sale.getId());
+            if (row < 0) {
+                // this is valid case - sales are reported by charge date so some salles can be from previous month
+                continue;
+            }
+            final SaleClaim claim = new SaleClaim(reportPosition | salesReader.getRowNumber(), sale);
+            SaleClaim current;
+            do {
+                current = claims.get(row);
+            } while ((null == current || claim.position < current.position) && !claims.compareAndSet(row, current, claim));
+        }
+        logRejectedSales(salesReader);
+    }
+
+    /**
+     * Matches charge transactions with sales by merging both sorted by order id, sales are sorted externally (runs
+     * exceeding memory budget are stored in temporary files). Result is the same as result of hash join - when there
+     * are more charges with the same id only the last one is matched and only first sale with given id is used.
+     */
+    private static void joinSalesSorted(List<Transaction> transactions, ReportSource[] salesReports,
+                                        boolean fastReader, SalesPrefilter salesFilter, long memoryBudget)
+            throws IOException {
+        Log.v("Matching sales using sort-merge join (memory budget " + memoryBudget + " bytes)");
+        boolean unmatched = false;
+        final ArrayList<Transaction> charges = new ArrayList<>();
+        for (Transaction t : transactions) {
+            if (Transaction.Type.CHARGE == t.getTransactionType()) {
+                if (null == t.getId()) {
+                    // can't be matched with any sale
+                    unmatched = true;
+                } else {
+                    charges.add(t);
+                }
+            }
+        }
+        // stable sort, charges with equal ids stay in transactions order
+        Collections.sort(charges, new Comparator<Transaction>() {
             @Override
             public int compare(Transaction o1, Transaction o2) {
-                return Long.compare(o1.getDate().getTime(), o2.getDate().getTime());
+                return o1.getId().compareTo(o2.getId());
             }
         });
-        if (!noVat) {
-            File[] salesReports = reports.getSalesReportsFiles();
-            for (File file : salesReports) {
-                Log.v("Loading sales report CSV file " + file.getAbsolutePath());
-                try (ICsvBeanReader beanReader = new CsvBeanReader(new FileReader(file), CsvPreference.STANDARD_PREFERENCE)) {
-                    /* final String[] header = */
-                    beanReader.getHeader(true); // header will be ignored
+        try (SaleSorter sorter = new SaleSorter(memoryBudget)) {
+            for (ReportSource file : salesReports) {
+                Log.v("Loading sales report CSV " + file.getName());
+                try (SaleReader salesReader = openSalesReport(file, fastReader, salesFilter)) {
                     Sale sale;
-                    while ((sale = beanReader.read(Sale.class, Sale.MAPPING, Sale.CSV)) != null) {
-                        final Transaction t = transactionsLookup.remove(sale.getId());
-                        if (null == t) {
-                            // this is valid case - sales are reported by charge date so some salles can be from previous month
-                            continue;
-                        }
-                        // check if sales report and earnings report contains same data
-                        if (0 != t.getAmount().compareTo(sale.getPrice())) {
-                            throw new IOException("Prices differs in reports earnings: " + t.getAmount() + " sales: " + sale.getPrice());
-                        }
-                        if (!t.getBuyerCurrency().equals(sale.getBuyerCurrency())) {
-                            throw new IOException("Currency differs in reports earnings: " + t.getBuyerCurrency()
-                                    + " sales: " + sale.getBuyerCurrency());
-                        }
-                        if (null != t.getBuyerCountry() && !t.getBuyerCountry().equals(sale.getBuyerCountry())) {
-                            if (!t.getBuyerCurrency().equals(sale.getBuyerCurrency())) {
-                                throw new IOException("Countries differs in reports earnings: " + t.getBuyerCountry()
-                                        + " sales: " + sale.getBuyerCountry() + " and currency is different");
-                            }
+                    while ((sale = salesReader.read()) != null) {
+                        sorter.add(sale);
+                    }
+                    logRejectedSales(salesReader);
+                }
+            }
+            final SaleSorter.SortedSales sales = sorter.sort();
+            int next = 0;
+            Sale sale;
+            while ((sale = sales.next()) != null) {
+                while (next < charges.size()) {
+                    final Transaction t = charges.get(next);
+                    final int order = t.getId().compareTo(sale.getId());
+                    if (order > 0) {
+                        // no charge for this sale
+                        break;
+                    }
+                    ++next;
+                    // only last of charges with equal ids is matched
+                    final boolean last = next == charges.size() || !charges.get(next).getId().equals(t.getId());
+                    if (last) {
+                        if (order < 0) {
+                            unmatched = true;
+                        } else {
+                            updateWithSale(t, sale);
+                            break;
                         }
-                        // update transaction with extra data
-                        t.setTaxAmount(sale.getTaxCollected());
                     }
                 }
             }
-            if (!transactionsLookup.isEmpty()) {
+            if (unmatched || next < charges.size()) {
                 throw new IOException("Some transaction were not matched with transaction from sales reports");
             }
         }
-        return retval;
     }
 
-    private static void createTransactionsSheet(WorkbookStyle wb, List<Transaction> transactions, boolean ignoreVat) {
+    /**
+     * Verifies that sale data are consistent with charge transaction and updates transaction with sale data.
+     */
+    private static void updateWithSale(Transaction t, Sale sale) throws IOException {
+        // check if sales report and earnings report contains same data
+        if (0 != t.getAmount().compareTo(sale.getPrice())) {
+            throw new IOException("Prices differs in reports earnings: " + t.getAmount() + " sales: " + sale.getPrice());
+        }
+        if (!t.getBuyerCurrency().equals(sale.getBuyerCurrency())) {
+            throw new IOException("Currency differs in reports earnings: " + t.getBuyerCurrency()
+                    + " sales: " + sale.getBuyerCurrency());
+        }
+        if (null != t.getBuyerCountry() && !t.getBuyerCountry().equals(sale.getBuyerCountry())) {
+            if (!t.getBuyerCurrency().equals(sale.getBuyerCurrency())) {
+                throw new IOException("Countries differs in reports earnings: " + t.getBuyerCountry()
+                        + " sales: " + sale.getBuyerCountry() + " and currency is different");
+            }
+        }
+        // update transaction with extra data
+        t.setTaxAmount(sale.getTaxCollected());
+    }
+
+    private static void logRejectedSales(SaleReader salesReader) {
+        if (salesReader instanceof SalesReportReader) {
+            Log.v("  - rows skipped by prefilter: " + ((SalesReportReader) salesReader).getRejectedCount());
+        }
+    }
+
+    /**
+     * Parses earnings reports, when more than one thread is requested each report is parsed by separate worker, with
+     * fast reader enabled large reports are additionally split into chunks parsed concurrently.
+     *
+     * @return parsed reports in same order as input files
+     */
+    private static List<EarningsReport> parseEarningsReports(ReportSource[] files, final boolean fastReader, int threads,
+                                                             long chunkSize, final ColumnProjection columns)
+            throws IOException {
+        final ArrayList<EarningsReport> out = new ArrayList<>(files.length);
+        if (threads <= 1) {
+            for (ReportSource file : files) {
+                out.add(EarningsReport.parse(file, fastReader, columns));
+            }
+            return out;
+        }
+        Log.v("Parsing " + files.length + " earnings reports using " + threads + " threads");
+        final Semaphore chunkMemory = new Semaphore(threads + 1);
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final ArrayList<List<Future<EarningsReport>>> results = new ArrayList<>(files.length);
+            for (final ReportSource file : files) {
+                final ArrayList<Future<EarningsReport>> fileResults = new ArrayList<>();
+                if (fastReader && (null != file.getFile() || chunkSize > 0)) {
+                    // large reports are split and parsed in chunks
+                    int count = 0;
+                    try (CsvSplitter.Chunks chunks = CsvSplitter.open(file, chunkSize)) {
+                        for (CsvSplitter.Chunk next; null != (next = chunks.next()); ++count) {
+                            final CsvSplitter.Chunk chunk = next;
+                            final boolean inMemory = acquireChunkMemory(chunk, chunkMemory);
+                            fileResults.add(executor.submit(new Callable<EarningsReport>() {
+                                @Override
+                                public EarningsReport call() throws Exception {
+                                    try {
+                                        return EarningsReport.parse(file, chunk, columns);
+                                    } finally {
+                                        if (inMemory) {
+                                            chunkMemory.release();
+                                        }
+                                    }
+                                }
+                            }));
+                        }
+                    }
+                    if (count > 1) {
+                        Log.v("Earnings report " + file.getName() + " split into " + count + " chunks");
+                    }
+                } else {
+                    fileResults.add(executor.submit(new Callable<EarningsReport>() {
+                        @Override
+                        public EarningsReport call() throws Exception {
+                            return EarningsReport.parse(file, fastReader, columns);
+                        }
+                    }));
+                }
+                results.add(fileResults);
+            }
+            for (int i = 0; i < files.length; i++) {
+                final ArrayList<EarningsReport> parts = new ArrayList<>();
+                for (Future<EarningsReport> result : results.get(i)) {
+                    parts.add(getResult(result));
+                }
+                out.add(EarningsReport.merge(files[i], parts));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return out;
+    }
+
+    private static void logStatistics(TransactionAggregator aggregator) {
+        Log.v("Transactions by SKU:");
+        for (String sku : aggregator.getSkus()) {
+            Log.v("  - SKU: " + sku);
+            Log.v("    - sells  : " + aggregator.getSells(sku));
+            Log.v("    - refunds: " + aggregator.getRefunds(sku));
+        }
+        Log.v(String.format("Tax deduction: %.02f PLN", aggregator.getTaxDeduction().negate().floatValue()));
+        Log.v(String.format("Total income : %.02f PLN", aggregator.getIncome().floatValue()));
+    }
+
+    /**
+     * @return columns of earnings report used by processing and output sheets enabled in configuration
+     */
+    private static ColumnProjection getEarningsColumns(Configuration config) {
+        final ArrayList<String> columns = new ArrayList<>(Arrays.asList(
+                // report parsing, SKU statistics and sales reports matching
+                "id", "transactionType", "skuId", "buyerCountry", "buyerCurrency", "amount", "payout",
+                // transactions and pivot sheets
+                "date", "productName", "merchantCurrency"));
+        if (!config.getBoolean("output.xchange.sheet", true)) {
+            // without NBP data conversion rate from report is used
+            columns.add("conversionRate");
+        }
+        return ColumnProjection.of(Transaction.MAPPING, columns);
+    }
+
+    private static SaleReader openSalesReport(ReportSource source, boolean fastReader, SalesPrefilter filter)
+            throws IOException {
+        final InputStream in = source.open();
+        try {
+            if (fastReader) {
+                return new SalesReportReader(in, SALES_COLUMNS, filter);
+            }
+            return new BeanSaleReader(new InputStreamReader(in), SALES_COLUMNS);
+        } catch (IOException | RuntimeException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens reader of sales report chunk, used only with fast reader.
+     */
+    private static SaleReader openSalesReport(ReportSource source, CsvSplitter.Chunk chunk, SalesPrefilter filter)
+            throws IOException {
+        final InputStream in = source.open(chunk);
+        try {
+            return new SalesReportReader(in, chunk.isFirst(), chunk.getRowsBefore(), SALES_COLUMNS, filter);
+        } catch (IOException | RuntimeException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Waits until chunk read to memory may be queued for parsing, at most one such chunk more than workers count is
+     * held in memory, so reports read while split don't have to fit in memory.
+     *
+     * @return true if chunk data are held in memory and permit has to be released when chunk is processed
+     */
+    private static boolean acquireChunkMemory(CsvSplitter.Chunk chunk, Semaphore chunkMemory) throws IOException {
+        if (null == chunk.getData()) {
+            return false;
+        }
+        try {
+            chunkMemory.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for report chunk parsing", e);
+        }
+        return true;
+    }
+
+    private static <T> T getResult(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for result", e);
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    private static void createTransactionsSheet(WorkbookStyle wb, Iterable<? extends TransactionRow> transactions, boolean ignoreVat) {
         Log.v("Creating transactions sheet");
         final Sheet sheet = wb.getWorkbook().createSheet("Tranzakcje");
         final CellStyle centeredCellStyle = wb.cloneCellStyle(CellStyleType.BASE);
@@ -412,7 +795,7 @@ public class Main {
         wb.appendCellWithStyle(row, "PLN", CellStyleType.HEADER);
         wb.appendCellWithStyle(row, "PLN(NBP)", CellStyleType.HEADER);
         wb.appendCellWithStyle(row, "Różnica", CellStyleType.HEADER);
-        for (Transaction t : transactions) {
+        for (TransactionRow t : transactions) {
             // skip tax deduction            
             if (null == t.getId()) {
                 continue;
@@ -426,7 +809,7 @@ public class Main {
             wb.appendCellWithStyle(row, t.getBuyerCurrency(), centeredCellStyle);
             wb.appendCellWithStyle(row, t.getAmount(), perCurrecyAmountFormat.get(t.getBuyerCurrency()));
             if (!ignoreVat) {
-                if (Transaction.Type.CHARGE == t.getTransactionType() && EU_CURRENCIES.contains(t.getBuyerCurrency())) {
+                if (Transaction.Type.CHARGE == t.getTransactionType() && EU_CURRENCIES.get(t.getBuyerCurrencyCode())) {
                     wb.appendCellWithStyle(row, t.getTaxAmount(), perCurrecyAmountFormat.get(t.getBuyerCurrency()));
                 } else {
                     wb.appendCellWithStyle(row, "", CellStyleType.BASE);
@@ -442,11 +825,10 @@ public class Main {
         }
     }
 
-    private static void createPivotSheet(WorkbookStyle wb, List<Transaction> transactions) {
+    private static void createPivotSheet(WorkbookStyle wb, PivotReport pivot) {
         Log.v("Creating pivot sheet");
         final Sheet sheet = wb.getWorkbook().createSheet("Zestawienie");
-        final MonthlyPivotReport pivot = new MonthlyPivotReport(transactions);
-        final Date[] days = pivot.getDays();
+        final Date[] days = pivot.getPeriods();
         final String[] currencies = pivot.getCurrencies();
         int rowNbr = 0;
         // header
@@ -482,7 +864,7 @@ public class Main {
         // top cell in date column
         dateStyleTopStyle.setBorderBottom(CellStyle.BORDER_NONE);
         dateStyleTopStyle.setFont(wb.getFont(FontType.NORMAL));
-        dateStyleTopStyle.setDataFormat(wb.getFormat("dd.MM.yy"));
+        dateStyleTopStyle.setDataFormat(wb.getFormat(pivot.getPeriodFormat()));
         // middle cell in date column
         dateStyleMiddleStyle.setBorderTop(CellStyle.BORDER_NONE);
         dateStyleMiddleStyle.setBorderBottom(CellStyle.BORDER_NONE);
@@ -555,29 +937,29 @@ public class Main {
 
             // pivot data
             for (String currency : currencies) {
-                final Summary summary = pivot.getDayCurrencySummary(date, currency);
-                if (BigDecimal.ZERO.equals(summary.total)) {
+                final Summary summary = pivot.getPeriodCurrencySummary(date, currency);
+                if (BigDecimal.ZERO.equals(summary.getTotal())) {
                     wb.appendCellWithStyle(total, "", amountTotalNormalStyle);
                     wb.appendCellWithStyle(payout, "", amountMerchantCurrencyStyle);
                     wb.appendCellWithStyle(converted, "", amountMerchantCurrencyStyle);
                     wb.appendCellWithStyle(spread, "", amountSpreadStyle);
                 } else {
                     if (CellStyleType.AMOUNT_SHORT == perCurrecyAmountFormat.get(currency)) {
-                        wb.appendCellWithStyle(total, summary.total, amountTotalShortStyle);
+                        wb.appendCellWithStyle(total, summary.getTotal(), amountTotalShortStyle);
                     } else {
-                        wb.appendCellWithStyle(total, summary.total, amountTotalNormalStyle);
+                        wb.appendCellWithStyle(total, summary.getTotal(), amountTotalNormalStyle);
                     }
-                    wb.appendCellWithStyle(payout, summary.totalPayout, amountMerchantCurrencyStyle);
-                    wb.appendCellWithStyle(converted, summary.totalConverted, amountMerchantCurrencyStyle);
-                    wb.appendCellWithStyle(spread, summary.totalConverted.subtract(summary.totalPayout), amountSpreadStyle);
+                    wb.appendCellWithStyle(payout, summary.getTotalPayout(), amountMerchantCurrencyStyle);
+                    wb.appendCellWithStyle(converted, summary.getTotalConverted(), amountMerchantCurrencyStyle);
+                    wb.appendCellWithStyle(spread, summary.getTotalConverted().subtract(summary.getTotalPayout()), amountSpreadStyle);
                 }
             }
-            final Summary summary = pivot.getDaySummary(date);
+            final Summary summary = pivot.getPeriodSummary(date);
             // total column
             wb.appendCellWithStyle(total, "", resultTotalStyle);
-            wb.appendCellWithStyle(payout, summary.totalPayout, resultMerchantCurrencyStyle);
-            wb.appendCellWithStyle(converted, summary.totalConverted, resultMerchantCurrencyStyle);
-            wb.appendCellWithStyle(spread, summary.totalConverted.subtract(summary.totalPayout), resultSpreadStyle);
+            wb.appendCellWithStyle(payout, summary.getTotalPayout(), resultMerchantCurrencyStyle);
+            wb.appendCellWithStyle(converted, summary.getTotalConverted(), resultMerchantCurrencyStyle);
+            wb.appendCellWithStyle(spread, summary.getTotalConverted().subtract(summary.getTotalPayout()), resultSpreadStyle);
         }
         sheet.autoSizeColumn(0);
         sheet.autoSizeColumn(1);
@@ -604,13 +986,13 @@ public class Main {
         for (String currency : currencies) {
             final Summary summary = pivot.getCurrencySummary(currency);
             if (CellStyleType.AMOUNT_SHORT == perCurrecyAmountFormat.get(currency)) {
-                wb.appendCellWithStyle(total, summary.total, summaryTotalShortStyle);
+                wb.appendCellWithStyle(total, summary.getTotal(), summaryTotalShortStyle);
             } else {
-                wb.appendCellWithStyle(total, summary.total, summaryTotalNormalStyle);
+                wb.appendCellWithStyle(total, summary.getTotal(), summaryTotalNormalStyle);
             }
-            wb.appendCellWithStyle(payout, summary.totalPayout, summaryStyle);
-            wb.appendCellWithStyle(converted, summary.totalConverted, summaryStyle);
-            wb.appendCellWithStyle(spread, summary.totalConverted.subtract(summary.totalPayout), summaryStyle);
+            wb.appendCellWithStyle(payout, summary.getTotalPayout(), summaryStyle);
+            wb.appendCellWithStyle(converted, summary.getTotalConverted(), summaryStyle);
+            wb.appendCellWithStyle(spread, summary.getTotalConverted().subtract(summary.getTotalPayout()), summaryStyle);
         }
 
         // total montly summary 
@@ -622,9 +1004,9 @@ public class Main {
 
         final Summary summary = pivot.getSummary();
         wb.appendCellWithStyle(total, "", summaryResultTotalStyle);
-        wb.appendCellWithStyle(payout, summary.totalPayout, summaryResultStyle);
-        wb.appendCellWithStyle(converted, summary.totalConverted, summaryResultStyle);
-        wb.appendCellWithStyle(spread, summary.totalConverted.subtract(summary.totalPayout), summaryResultStyle);
+        wb.appendCellWithStyle(payout, summary.getTotalPayout(), summaryResultStyle);
+        wb.appendCellWithStyle(converted, summary.getTotalConverted(), summaryResultStyle);
+        wb.appendCellWithStyle(spread, summary.getTotalConverted().subtract(summary.getTotalPayout()), summaryResultStyle);
 
         for (int i = 2; i < 2 + currencies.length + 1; i++) {
             sheet.autoSizeColumn(i);
@@ -634,40 +1016,28 @@ public class Main {
         sheet.setRepeatingColumns(CellRangeAddress.valueOf("A:B"));
     }
 
-    private static void createVatSheet(WorkbookStyle wb, List<Transaction> transactions) {
+    private static void createVatSheet(WorkbookStyle wb, TransactionAggregator aggregator) {
         Log.v("Creating VAT sheet");
         final Sheet sheet = wb.getWorkbook().createSheet("VAT");
-        final TreeMap<String, BigDecimal[]> vatCollected = new TreeMap<>();
-
-        for (Transaction t : transactions) {
-            if (Transaction.Type.CHARGE == t.getTransactionType() && EU_CURRENCIES.contains(t.getBuyerCurrency())) {
-                BigDecimal[] vat = vatCollected.get(t.getBuyerCurrency());
-                if (null == vat) {
-                    vat = new BigDecimal[]{BigDecimal.ZERO, BigDecimal.ZERO};
-                    vatCollected.put(t.getBuyerCurrency(), vat);
-                }
-                vat[0] = vat[0].add(t.getTaxAmount());
-                vat[1] = vat[1].add(t.getTaxAmountConverted());
-            }
-        }
+        final Map<String, MoneySum[]> vatCollected = aggregator.getVatCollected();
 
         final CellStyle centeredCellStyle = wb.cloneCellStyle(CellStyleType.BASE);
         centeredCellStyle.setAlignment(CellStyle.ALIGN_CENTER);
 
         int rowNbr = 0;
         Row row;
-        BigDecimal vatTotal = BigDecimal.ZERO;
+        final MoneySum vatTotal = new MoneySum();
 
         row = sheet.createRow(rowNbr++);
         wb.appendCellWithStyle(row, "Waluta", CellStyleType.HEADER);
         wb.appendCellWithStyle(row, "VAT", CellStyleType.HEADER);
         wb.appendCellWithStyle(row, "VAT(PLN)", CellStyleType.HEADER);
-        for (Map.Entry<String, BigDecimal[]> e : vatCollected.entrySet()) {
+        for (Map.Entry<String, MoneySum[]> e : vatCollected.entrySet()) {
             row = sheet.createRow(rowNbr++);
             wb.appendCellWithStyle(row, e.getKey(), centeredCellStyle);
-            wb.appendCellWithStyle(row, e.getValue()[0], perCurrecyAmountFormat.get(e.getKey()));
-            wb.appendCellWithStyle(row, e.getValue()[1], CellStyleType.AMOUNT);
-            vatTotal = vatTotal.add(e.getValue()[1]);
+            wb.appendCellWithStyle(row, e.getValue()[0].toBigDecimal(), perCurrecyAmountFormat.get(e.getKey()));
+            wb.appendCellWithStyle(row, e.getValue()[1].toBigDecimal(), CellStyleType.AMOUNT);
+            vatTotal.add(e.getValue()[1]);
         }
         final CellStyle emptyWithBorder = wb.cloneCellStyle(CellStyleType.BASE);
         final CellStyle amountWithBorder = wb.cloneCellStyle(CellStyleType.AMOUNT);
@@ -678,39 +1048,17 @@ public class Main {
         wb.appendCellWithStyle(row, "Łączny VAT(PLN)", emptyWithBorder);
         wb.appendCellWithStyle(row, "", emptyWithBorder);
         sheet.addMergedRegion(new CellRangeAddress(rowNbr + 0, rowNbr + 0, 0, 1));
-        wb.appendCellWithStyle(row, vatTotal, amountWithBorder);
+        wb.appendCellWithStyle(row, vatTotal.toBigDecimal(), amountWithBorder);
 
         sheet.autoSizeColumn(0);
         sheet.autoSizeColumn(1);
         sheet.autoSizeColumn(3);
     }
 
-    private static void createSummarySheet(WorkbookStyle wb, List<Transaction> transactions, boolean noVat) {
+    private static void createSummarySheet(WorkbookStyle wb, TransactionAggregator aggregator, boolean noVat) {
         Log.v("Creating summary sheet");
         final Sheet sheet = wb.getWorkbook().createSheet("Podsumowanie");
-        BigDecimal totalPayout = BigDecimal.ZERO;
-        BigDecimal totalPayoutFromEU = BigDecimal.ZERO;
-        BigDecimal totalConverted = BigDecimal.ZERO;
-        BigDecimal totalTaxDeduction = BigDecimal.ZERO;
-        BigDecimal totalVat = BigDecimal.ZERO;
-
-        for (Transaction t : transactions) {
-            totalPayout = totalPayout.add(t.getPayout());
-            if (null == t.getId()) {
-                totalTaxDeduction = totalTaxDeduction.add(t.getPayout());
-                totalConverted = totalConverted.add(t.getPayout());
-            } else {
-                if (EU_CURRENCIES.contains(t.getBuyerCurrency())) {
-                    totalPayoutFromEU = totalPayoutFromEU.add(t.getPayout());
-                    if (!noVat) {
-                        if (Transaction.Type.CHARGE == t.getTransactionType()) {
-                            totalVat = totalVat.add(t.getTaxAmountConverted());
-                        }
-                    }
-                }
-                totalConverted = totalConverted.add(t.getAmountConverted());
-            }
-        }
+        final BigDecimal totalPayout = aggregator.getIncome();
 
         final CellStyle labelStyle = wb.cloneCellStyle(CellStyleType.HEADER);
         final CellStyle amountStyle = wb.cloneCellStyle(CellStyleType.AMOUNT);
@@ -726,18 +1074,18 @@ public class Main {
         wb.appendCellWithStyle(row, totalPayout, amountStyle);
         row = sheet.createRow(rowNbr++);
         wb.appendCellWithStyle(row, "  w tym z krajów EU", labelStyle);
-        wb.appendCellWithStyle(row, totalPayoutFromEU, amountStyle);
+        wb.appendCellWithStyle(row, aggregator.getEuPayout(), amountStyle);
         if (!noVat) {
             row = sheet.createRow(rowNbr++);
             wb.appendCellWithStyle(row, "  VAT", labelStyle);
-            wb.appendCellWithStyle(row, totalVat, amountStyle);
+            wb.appendCellWithStyle(row, aggregator.getTotalVat(), amountStyle);
         }
         row = sheet.createRow(rowNbr++);
         wb.appendCellWithStyle(row, "Łączna różnica kursowa", labelStyle);
-        wb.appendCellWithStyle(row, totalConverted.subtract(totalPayout), amountStyle);
+        wb.appendCellWithStyle(row, aggregator.getTotalConverted().subtract(totalPayout), amountStyle);
         row = sheet.createRow(rowNbr++);
         wb.appendCellWithStyle(row, "Miedzynarodowe podatki", labelStyle);
-        wb.appendCellWithStyle(row, totalTaxDeduction.negate(), amountStyle);
+        wb.appendCellWithStyle(row, aggregator.getNoIdPayout().negate(), amountStyle);
         sheet.autoSizeColumn(0);
         sheet.autoSizeColumn(1);
     }
@@ -746,8 +1094,22 @@ public class Main {
     private static HashMap<String, CellStyleType> perCurrecyAmountFormat = new HashMap<>();
 
     private static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("yyyyMM");
-    private static final HashSet<String> EU_CURRENCIES = new HashSet<>(Arrays.asList(
-            "EUR", "GBP", "HUF", "HRK", "DKK", "SEK", "BGN", "CZK", "RON", "PLN"));
+    private static final long DEFAULT_PARSE_CHUNK_SIZE = 32 * 1024 * 1024;
+    // sales charged more than this number of days before or after charges from earnings reports are skipped,
+    // negative value disables the check
+    private static final int DEFAULT_SALES_WINDOW_DAYS = -1;
+    private static final long DEFAULT_MERGE_JOIN_MEMORY = 64 * 1024 * 1024;
+    // columns of sales report used to match and update transactions
+    private static final ColumnProjection SALES_COLUMNS = ColumnProjection.of(Sale.MAPPING,
+            Arrays.asList("id", "timestamp", "buyerCurrency", "price", "taxCollected", "buyerCountry"));
+    // codes of EU currencies in Transaction.CURRENCIES dictionary
+    private static final BitSet EU_CURRENCIES = new BitSet();
+
+    static {
+        for (String currency : Arrays.asList("EUR", "GBP", "HUF", "HRK", "DKK", "SEK", "BGN", "CZK", "RON", "PLN")) {
+            EU_CURRENCIES.set(Transaction.CURRENCIES.encode(currency));
+        }
+    }
 
     private static final String CFG_TEMPLATE =
             "\n\n\n" +
@@ -778,6 +1140,33 @@ public class Main {
                     "# see direct report URI in format gs://<bucket>/sales/)\n" +
                     "gcs.bucket = <bucket id>\n" +
                     "\n" +
+                    "# Stream reports from GCS instead of downloading them before processing, data\n" +
+                    "# is unpacked and parsed while being downloaded (ignored when downloaded\n" +
+                    "# reports are kept). By default reports are downloaded to memory first and\n" +
+                    "# kept compressed until parsed. No temporary files are created in either mode.\n" +
+                    "# Streamed reports are downloaded once, so they can be read only once.\n" +
+                    "gcs.reports.streaming = <true|false>\n" +
+                    "\n" +
+                    "# Maximum number of concurrent report downloads (default 4)\n" +
+                    "gcs.download.threads = <count>\n" +
+                    "\n" +
+                    "# Number of retries of failed report download (default 3) and delay before\n" +
+                    "# first retry in milliseconds, doubled on every next retry (default 1000)\n" +
+                    "gcs.download.retries = <count>\n" +
+                    "gcs.download.retry.delay = <ms>\n" +
+                    "\n" +
+                    "# Keep unpacked reports in local cache and skip download of storage objects\n" +
+                    "# which has not changed since previous run (default false). Cache directory\n" +
+                    "# defaults to .isp-cache in user home, least recently used reports are\n" +
+                    "# removed when cache exceeds max size in MB (default 1024) or when report\n" +
+                    "# was not used for max age days (default 90). Reports of current run are\n" +
+                    "# never removed, even if they alone exceed max size. Cache directory is\n" +
+                    "# locked by running process, concurrent runs don't use the cache.\n" +
+                    "gcs.cache = <true|false>\n" +
+                    "gcs.cache.dir = <dir path>\n" +
+                    "gcs.cache.max.size = <MB>\n" +
+                    "gcs.cache.max.age = <days>\n" +
+                    "\n" +
                     "\n" +
                     "# Basic XLSX style properties\n" +
                     "\n" +
@@ -808,11 +1197,80 @@ public class Main {
                     "# well\n" +
                     "process.tax.only.reports = <true|false>\n" +
                     "\n" +
+                    "# Use byte level CSV reader for earnings and sales reports instead of generic\n" +
+                    "# SuperCSV bean reader (much faster for large reports, output is the same).\n" +
+                    "# With either reader only columns used by enabled output sheets are decoded.\n" +
+                    "process.csv.fast.reader = <true|false>\n" +
+                    "\n" +
+                    "# Number of threads used to parse earnings reports (each report file is\n" +
+                    "# parsed by separate worker, default 1 - sequential processing).\n" +
+                    "process.parse.threads = <count>\n" +
+                    "\n" +
+                    "# Size in bytes of chunks large earnings reports are split into when parsed\n" +
+                    "# with multiple threads and fast CSV reader (default 32MB, 0 disables\n" +
+                    "# splitting). Reports which are not plain CSV files (zipped or downloaded)\n" +
+                    "# are split while inflated, up to threads + 1 chunks are held in memory.\n" +
+                    "process.parse.chunk.size = <bytes>\n" +
+                    "\n" +
+                    "# Number of threads used to build monthly pivot report (default 1 - report\n" +
+                    "# is built together with other output data).\n" +
+                    "process.pivot.threads = <count>\n" +
+                    "\n" +
+                    "# With fast CSV reader sales report rows which can't match any charge are\n" +
+                    "# skipped before decoding, rows are checked by order id and optionally by\n" +
+                    "# charge time which has to be within given number of days (plus one day for\n" +
+                    "# time zones) from charge dates in earnings reports. Sales charged outside\n" +
+                    "# of the window are not matched, so processing fails if there are any\n" +
+                    "# (default -1, time check disabled).\n" +
+                    "process.sales.prefilter.window = <days>\n" +
+                    "\n" +
+                    "# Match sales with transactions by merging both sorted by order id instead\n" +
+                    "# of using order id lookup of all charges (lower memory usage for very\n" +
+                    "# large reports, output is the same).\n" +
+                    "process.sales.merge.join = <true|false>\n" +
+                    "\n" +
+                    "# Estimated size in bytes of sales kept in memory by merge join, sorted sales\n" +
+                    "# exceeding it are stored in temporary files (default 64MB).\n" +
+                    "process.sales.merge.join.memory = <bytes>\n" +
+                    "\n" +
+                    "# Number of threads used to match sales with transactions (each sales report\n" +
+                    "# is read by separate worker, with fast CSV reader large reports are split\n" +
+                    "# into chunks of process.parse.chunk.size, default 1 - sequential processing).\n" +
+                    "# Not used by merge join.\n" +
+                    "process.sales.threads = <count>\n" +
+                    "\n" +
+                    "# Keep transactions in column oriented store while aggregating output data\n" +
+                    "# and generating output sheets, transactions are converted after exchange\n" +
+                    "# rates are applied (lower memory usage for large reports, output is the same).\n" +
+                    "process.columnar.store = <true|false>\n" +
+                    "\n" +
+                    "# Verify that fixed point monetary sums are equal to ones computed with\n" +
+                    "# BigDecimal arithmetic, processing fails on any difference (slower, for\n" +
+                    "# diagnostic purposes only).\n" +
+                    "process.money.verify = <true|false>\n" +
+                    "\n" +
                     "# XLSX sheets generation control (not that xchange sheet need online NBP data\n" +
                     "# so when set to true internet connection is required in order to generate \n" +
                     "# output even io local mode).\n" +
                     "output.xchange.sheet = <true|false>\n" +
                     "output.vat.sheet = <true|false>\n" +
                     "output.summary.sheet = <true|false>\n" +
+                    "\n" +
+                    "# NBP exchange tables directory URL (default http://www.nbp.pl/kursy/xml/),\n" +
+                    "# may point to local mirror with the same layout (dir.txt and tables XMLs).\n" +
+                    "xchange.nbp.url = <url>\n" +
+                    "\n" +
+                    "# Number of NBP exchange tables downloaded concurrently (default 1).\n" +
+                    "xchange.download.threads = <count>\n" +
+                    "\n" +
+                    "# Local file storing downloaded NBP exchange tables (by default tables are not\n" +
+                    "# stored), may be shared by concurrent runs. Once store covers reports period\n" +
+                    "# no NBP data is downloaded, so xchange sheet may be generated offline.\n" +
+                    "xchange.store = <file>\n" +
+                    "\n" +
+                    "# Pivot sheet rows period (day, week, month, quarter or year). By default pivot\n" +
+                    "# sheet contains days of single month, when set transactions may span any\n" +
+                    "# number of months (eg. for quarterly or yearly statements).\n" +
+                    "output.pivot.granularity = <day|week|month|quarter|year>\n" +
                     "\n";
 }
@@ -0,0 +1,151 @@
+package com.bytestorm.isp;
+
+import java.math.BigDecimal;
+
+/**
+ * Sum of monetary values kept as scaled long.
+ * <p/>
+ * Scale of the sum is the largest scale of added values (the same as scale of {@link BigDecimal#add(BigDecimal)}
+ * result), so {@link #toBigDecimal()} returns exactly the value (scale included) summing with BigDecimal would give.
+ * When value can't be represented (too large unscaled value or scale) sum falls back to BigDecimal arithmetic.
+ * <p/>
+ * In verification mode (see {@link #setVerify(boolean)}) every sum is computed with BigDecimal as well and both
+ * results are compared when sum is read.
+ */
+public class MoneySum {
+
+    /**
+     * Enables or disables verification mode, affects sums created afterwards.
+     */
+    public static void setVerify(boolean verify) {
+        MoneySum.verify = verify;
+    }
+
+    /**
+     * @param value value to check
+     *
+     * @return true if value can be represented as fixed point long without loss
+     */
+    public static boolean isFixedPoint(BigDecimal value) {
+        return value.scale() >= 0 && value.scale() <= MAX_SCALE && value.precision() <= MAX_PRECISION;
+    }
+
+    public MoneySum() {
+        check = verify ? BigDecimal.ZERO : null;
+    }
+
+    /**
+     * Adds fixed point value.
+     *
+     * @param unscaled unscaled value
+     * @param scale    value scale
+     */
+    public void add(long unscaled, int scale) {
+        if (null != check) {
+            check = check.add(BigDecimal.valueOf(unscaled, scale));
+        }
+        addFixed(unscaled, scale);
+    }
+
+    /**
+     * Adds value.
+     *
+     * @param value value to add
+     */
+    public void add(BigDecimal value) {
+        if (null != check) {
+            check = check.add(value);
+        }
+        if (null == big && isFixedPoint(value)) {
+            addFixed(value.unscaledValue().longValue(), value.scale());
+        } else {
+            big = fallback().add(value);
+        }
+    }
+
+    /**
+     * Adds other sum.
+     *
+     * @param other sum to add
+     */
+    public void add(MoneySum other) {
+        if (null != other.big) {
+            add(other.big);
+        } else {
+            add(other.unscaled, other.scale);
+        }
+    }
+
+    /**
+     * @return true if sum is still computed using fixed point arithmetic
+     */
+    public boolean isFixedPoint() {
+        return null == big;
+    }
+
+    /**
+     * @return sum value
+     *
+     * @throws IllegalStateException in verification mode if fixed point result differs from BigDecimal one
+     */
+    public BigDecimal toBigDecimal() {
+        final BigDecimal out = null != big ? big : BigDecimal.valueOf(unscaled, scale);
+        if (null != check && !check.equals(out)) {
+            throw new IllegalStateException("Fixed point sum " + out + " differs from BigDecimal sum " + check);
+        }
+        return out;
+    }
+
+    @Override
+    public String toString() {
+        return toBigDecimal().toString();
+    }
+
+    private void addFixed(long value, int valueScale) {
+        if (null == big && valueScale >= 0 && valueScale <= MAX_SCALE) {
+            final int sumScale = Math.max(scale, valueScale);
+            if (canRescale(unscaled, sumScale - scale) && canRescale(value, sumScale - valueScale)) {
+                final long a = unscaled * POW10[sumScale - scale];
+                final long b = value * POW10[sumScale - valueScale];
+                final long result = a + b;
+                // overflow if both operands have the same sign and result sign differs
+                if (((a ^ result) & (b ^ result)) >= 0) {
+                    unscaled = result;
+                    scale = sumScale;
+                    return;
+                }
+            }
+        }
+        big = fallback().add(BigDecimal.valueOf(value, valueScale));
+    }
+
+    private BigDecimal fallback() {
+        if (null == big) {
+            big = BigDecimal.valueOf(unscaled, scale);
+        }
+        return big;
+    }
+
+    private static boolean canRescale(long value, int scaleDiff) {
+        final long factor = POW10[scaleDiff];
+        return value <= Long.MAX_VALUE / factor && value >= Long.MIN_VALUE / factor;
+    }
+
+    private long unscaled;
+    private int scale;
+    private BigDecimal big;
+    private BigDecimal check;
+
+    private static volatile boolean verify;
+
+    private static final int MAX_SCALE = 18;
+    private static final int MAX_PRECISION = 18;
+    private static final long[] POW10 = new long[MAX_SCALE + 1];
+
+    static {
+        POW10[0] = 1;
+        for (int i = 1; i < POW10.length; i++) {
+            POW10[i] = POW10[i - 1] * 10;
+        }
+    }
+}
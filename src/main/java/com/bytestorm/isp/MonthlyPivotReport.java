@@ -4,99 +4,243 @@ import com.bytestorm.utils.Log;
 
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
+import org.joda.time.LocalDate;
 
 import java.math.BigDecimal;
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
-import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * Date to currency pivot report.
+ * <p/>
+ * Only {@link Summary} accumulators are kept per day, currency and day-currency cell, so report size depends on
+ * number of days and currencies only and transactions are never retained.
+ * <p/>
+ * Day of transaction is found by binary search in precomputed day start times, date fields are computed only for
+ * transactions outside of report month. Large lists may be processed by {@link #build(List, int)} which sums
+ * partial reports of list ranges on fork/join pool.
  */
-public class MonthlyPivotReport {
+public class MonthlyPivotReport implements PivotReport {
 
     public static class Summary {
 
-        BigDecimal total = BigDecimal.ZERO;
-        BigDecimal totalPayout = BigDecimal.ZERO;
-        BigDecimal totalConverted = BigDecimal.ZERO;
+        final MoneySum total = new MoneySum();
+        final MoneySum totalPayout = new MoneySum();
+        final MoneySum totalConverted = new MoneySum();
 
-        private Summary() {
+        Summary() {
+        }
+
+        void add(TransactionRow transact) {
+            transact.addAmountTo(total);
+            transact.addPayoutTo(totalPayout);
+            totalConverted.add(transact.getAmountConverted());
         }
-    }
 
-    private static class PivotData {
+        void add(Summary other) {
+            total.add(other.total);
+            totalPayout.add(other.totalPayout);
+            totalConverted.add(other.totalConverted);
+        }
 
-        Summary summary = new Summary();
-        ArrayList<Transaction> transactions = new ArrayList<>();
+        public BigDecimal getTotal() {
+            return total.toBigDecimal();
+        }
 
-        void add(Transaction transact) {
-            transactions.add(transact);
-            summary.total = summary.total.add(transact.getAmount());
-            summary.totalPayout = summary.totalPayout.add(transact.getPayout());
-            summary.totalConverted = summary.totalConverted.add(transact.getAmountConverted());
+        public BigDecimal getTotalPayout() {
+            return totalPayout.toBigDecimal();
+        }
+
+        public BigDecimal getTotalConverted() {
+            return totalConverted.toBigDecimal();
         }
     }
 
-    private static class SummaryIterable implements Iterable<Summary> {
+    /**
+     * Builds partial report of transactions range, range is split in halves until it is small enough.
+     */
+    private static class PartialTask extends RecursiveTask<MonthlyPivotReport> {
 
-        SummaryIterable(PivotData[] data) {
-            this.data = data;
+        PartialTask(List<? extends TransactionRow> transactions, int from, int to, int threshold, Date month) {
+            this.transactions = transactions;
+            this.from = from;
+            this.to = to;
+            this.threshold = threshold;
+            this.month = month;
         }
 
         @Override
-        public Iterator<Summary> iterator() {
-            return new Iterator<Summary>() {
-                @Override
-                public boolean hasNext() {
-                    return ndx < data.length;
+        protected MonthlyPivotReport compute() {
+            if (to - from <= threshold) {
+                final MonthlyPivotReport partial = new MonthlyPivotReport();
+                partial.start(month);
+                for (int i = from; i < to; i++) {
+                    partial.add(transactions.get(i));
                 }
+                return partial;
+            }
+            final int mid = (from + to) >>> 1;
+            final PartialTask right = new PartialTask(transactions, mid, to, threshold, month);
+            right.fork();
+            final MonthlyPivotReport left = new PartialTask(transactions, from, mid, threshold, month).compute();
+            left.merge(right.join());
+            return left;
+        }
 
-                @Override
-                public Summary next() {
-                    return data[++ndx].summary;
-                }
+        private final List<? extends TransactionRow> transactions;
+        private final int from, to, threshold;
+        private final Date month;
 
-                @Override
-                public void remove() {
-                    throw new UnsupportedOperationException();
-                }
+        private static final long serialVersionUID = 1L;
+    }
 
-                private int ndx = -1;
-            };
+    /**
+     * Creates report of given transactions using fork/join pool, each worker sums range of transactions to partial
+     * report and partial reports are merged. Summaries are exactly the same as ones created by
+     * {@link #MonthlyPivotReport(Iterable)}.
+     *
+     * @param transactions transactions from single month, list has to provide fast random access
+     * @param threads      number of worker threads
+     */
+    public static MonthlyPivotReport build(List<? extends TransactionRow> transactions, int threads) {
+        if (transactions.isEmpty()) {
+            throw new IllegalArgumentException("Transaction list is empty");
         }
-
-        private PivotData[] data;
+        if (threads <= 1) {
+            final MonthlyPivotReport report = new MonthlyPivotReport();
+            for (TransactionRow t : transactions) {
+                report.add(t);
+            }
+            report.finish();
+            return report;
+        }
+        final Date month = transactions.get(0).getDate();
+        Log.v("Creating montly pivot report using " + threads + " threads");
+        final int threshold = Math.max(MIN_PARTIAL_ROWS, transactions.size() / (threads * 4));
+        final ForkJoinPool pool = new ForkJoinPool(threads);
+        final MonthlyPivotReport report;
+        try {
+            report = pool.invoke(new PartialTask(transactions, 0, transactions.size(), threshold, month));
+        } finally {
+            pool.shutdown();
+        }
+        report.finish();
+        return report;
     }
 
-    public MonthlyPivotReport(List<Transaction> transactions) {
-        if (transactions.isEmpty()) {
+    /**
+     * Creates report of given transactions.
+     *
+     * @param transactions transactions from single month
+     */
+    public MonthlyPivotReport(Iterable<? extends TransactionRow> transactions) {
+        if (!transactions.iterator().hasNext()) {
             throw new IllegalArgumentException("Transaction list is empty");
         }
-        // query date (report month/year) and currency (list of used currencies) info 
-        queryBaseInfo(transactions);
-        Log.v("Creating montly pivot report for " + month + "." + year);
-        // initialize data storage            
-        perDay = singleDimPivotDataArray(daysCount);
-        perCurrency = singleDimPivotDataArray(currencies.length);
-        perDayCurrency = new PivotData[daysCount][currencies.length];
+        for (TransactionRow t : transactions) {
+            add(t);
+        }
+        finish();
+    }
+
+    /**
+     * Creates empty report, filled by {@link #add(TransactionRow)} calls and completed with {@link #finish()}.
+     */
+    MonthlyPivotReport() {
+    }
+
+    /**
+     * Adds next transaction to report.
+     *
+     * @throws IllegalArgumentException if transaction is from different month than first added one
+     */
+    void add(TransactionRow t) {
+        if (null == firstDate) {
+            // report month/year is determined by first transaction
+            start(t.getDate());
+            Log.v("Creating montly pivot report for " + month + "." + year);
+        }
+        final long millis = t.getDate().getTime();
+        final int day;
+        if (millis >= fastFrom && millis < fastTo) {
+            day = getDayIndex(millis);
+        } else {
+            // verify that all transactions are from single month
+            final DateTime date = new DateTime(millis, DateTimeZone.UTC);
+            if (date.getYear() != firstDate.getYear() && date.getMonthOfYear() != firstDate.getMonthOfYear()) {
+                throw new IllegalArgumentException("Transactions from more than one month " + date + " " + firstDate);
+            }
+            day = getDayIndex(millis);
+        }
+        final int code = t.getBuyerCurrencyCode();
+        if (code >= perCurrency.length || null == perCurrency[code]) {
+            addCurrency(code);
+        }
+        summary.add(t);
+        perDay[day].add(t);
+        perCurrency[code].add(t);
+        perDayCurrency[day][code].add(t);
+        ++rowsCount;
+    }
+
+    /**
+     * Adds data of other unfinished report of the same month.
+     */
+    private void merge(MonthlyPivotReport other) {
+        for (int code = 0; code < other.perCurrency.length; code++) {
+            if (null == other.perCurrency[code]) {
+                continue;
+            }
+            if (code >= perCurrency.length || null == perCurrency[code]) {
+                addCurrency(code);
+            }
+            perCurrency[code].add(other.perCurrency[code]);
+            for (int i = 0; i < daysCount; i++) {
+                perDayCurrency[i][code].add(other.perDayCurrency[i][code]);
+            }
+        }
         for (int i = 0; i < daysCount; i++) {
-            for (int j = 0; j < currencies.length; j++) {
-                perDayCurrency[i][j] = new PivotData();
+            perDay[i].add(other.perDay[i]);
+        }
+        summary.add(other.summary);
+        rowsCount += other.rowsCount;
+    }
+
+    /**
+     * Completes report after last transaction was added.
+     *
+     * @throws IllegalArgumentException if no transaction was added
+     */
+    void finish() {
+        if (0 == rowsCount) {
+            throw new IllegalArgumentException("Transaction list is empty");
+        }
+        // initialize currencies
+        final TreeSet<String> currenciesSet = new TreeSet<>();
+        for (int code = 0; code < perCurrency.length; code++) {
+            if (null != perCurrency[code]) {
+                currenciesSet.add(Transaction.CURRENCIES.decode(code));
             }
         }
-        Log.v("  days in month: " + daysCount + " currencies count: " + currencies.length);
-        // construct pivot data
-        for (Transaction t : transactions) {
-            final int day = new DateTime(t.getDate()).getDayOfMonth() - 1;
-            final int currency = currencyIndexes.get(t.getBuyerCurrency());
-            perDay[day].add(t);
-            perCurrency[currency].add(t);
-            perDayCurrency[day][currency].add(t);
+        currencies = currenciesSet.toArray(new String[currenciesSet.size()]);
+        // currency code to index of currency in sorted currencies array, data arrays are reordered the same way
+        currencyIndexes = new int[perCurrency.length];
+        Arrays.fill(currencyIndexes, -1);
+        final int[] codes = new int[currencies.length];
+        for (int i = 0; i < currencies.length; i++) {
+            codes[i] = Transaction.CURRENCIES.find(currencies[i]);
+            currencyIndexes[codes[i]] = i;
         }
+        perCurrency = byCurrencyIndex(perCurrency, codes);
+        for (int i = 0; i < daysCount; i++) {
+            perDayCurrency[i] = byCurrencyIndex(perDayCurrency[i], codes);
+        }
+        Log.v("  days in month: " + daysCount + " currencies count: " + currencies.length);
     }
 
     public Date[] getDays() {
@@ -107,6 +251,17 @@ public class MonthlyPivotReport {
         return days;
     }
 
+    @Override
+    public Date[] getPeriods() {
+        return getDays();
+    }
+
+    @Override
+    public String getPeriodFormat() {
+        return "dd.MM.yy";
+    }
+
+    @Override
     public String[] getCurrencies() {
         return currencies;
     }
@@ -117,75 +272,125 @@ public class MonthlyPivotReport {
 
     public Summary getDaySummary(Date date) {
         final DateTime dt = new DateTime(date, DateTimeZone.UTC);
-        return perDay[dt.getDayOfMonth() - 1].summary;
+        return perDay[dt.getDayOfMonth() - 1];
     }
 
+    @Override
+    public Summary getPeriodSummary(Date period) {
+        return getDaySummary(period);
+    }
+
+    @Override
     public Summary getCurrencySummary(String currency) {
-        final Integer index = currencyIndexes.get(currency);
-        if (null == index) {
-            throw new IllegalArgumentException("Invalid currency code");
-        }
-        return perCurrency[index].summary;
+        return perCurrency[getCurrencyIndex(currency)];
     }
 
     public Summary getDayCurrencySummary(Date date, String currency) {
         final DateTime dt = new DateTime(date, DateTimeZone.UTC);
-        final Integer index = currencyIndexes.get(currency);
-        if (null == index) {
-            throw new IllegalArgumentException("Invalid currency code");
-        }
-        return perDayCurrency[dt.getDayOfMonth() - 1][index].summary;
+        return perDayCurrency[dt.getDayOfMonth() - 1][getCurrencyIndex(currency)];
+    }
+
+    @Override
+    public Summary getPeriodCurrencySummary(Date period, String currency) {
+        return getDayCurrencySummary(period, currency);
     }
 
     public Iterable<Summary> getDaySummaryRow(Date date) {
         final DateTime dt = new DateTime(date, DateTimeZone.UTC);
-        return new SummaryIterable(perDayCurrency[dt.getDayOfMonth() - 1]);
+        return Collections.unmodifiableList(Arrays.asList(perDayCurrency[dt.getDayOfMonth() - 1]));
     }
 
+    @Override
     public Summary getSummary() {
         return summary;
     }
 
-    private void queryBaseInfo(List<Transaction> transactions) {
-        final DateTime firstDate = new DateTime(transactions.get(0).getDate());
-        final TreeSet<String> currenciesSet = new TreeSet<>();
-        // verify that all transactions are from single month
-        for (Transaction t : transactions) {
-            final DateTime date = new DateTime(t.getDate(), DateTimeZone.UTC);
-            if (date.getYear() != firstDate.getYear() && date.getMonthOfYear() != firstDate.getMonthOfYear()) {
-                throw new IllegalArgumentException("Transactions from more than one month " + date + " " + firstDate);
-            }
-            currenciesSet.add(t.getBuyerCurrency());
-            // summary
-            summary.total = summary.total.add(t.getAmount());
-            summary.totalPayout = summary.totalPayout.add(t.getPayout());
-            summary.totalConverted = summary.totalConverted.add(t.getAmountConverted());
+    private int getCurrencyIndex(String currency) {
+        final int code = Transaction.CURRENCIES.find(currency);
+        if (StringDictionary.NULL == code || code >= currencyIndexes.length || currencyIndexes[code] < 0) {
+            throw new IllegalArgumentException("Invalid currency code");
         }
+        return currencyIndexes[code];
+    }
+
+    /**
+     * Initializes empty report of month containing given date.
+     */
+    private void start(Date date) {
+        firstDate = new DateTime(date);
         month = firstDate.getMonthOfYear();
         year = firstDate.getYear();
         daysCount = firstDate.dayOfMonth().getMaximumValue();
-        // initialize currencies
-        currencies = currenciesSet.toArray(new String[currenciesSet.size()]);
-        for (int i = 0; i < currencies.length; i++) {
-            currencyIndexes.put(currencies[i], i);
+        perDay = newSummaries(daysCount);
+        perCurrency = new Summary[0];
+        perDayCurrency = new Summary[daysCount][0];
+        // day boundaries in default time zone (used by day of month) limited to UTC month (used by verification)
+        dayStarts = new long[daysCount + 1];
+        final LocalDate first = new LocalDate(year, month, 1);
+        for (int i = 0; i <= daysCount; i++) {
+            dayStarts[i] = first.plusDays(i).toDateTimeAtStartOfDay().getMillis();
         }
+        final DateTime utcMonth = new DateTime(year, month, 1, 0, 0, DateTimeZone.UTC);
+        fastFrom = Math.max(dayStarts[0], utcMonth.getMillis());
+        fastTo = Math.min(dayStarts[daysCount], utcMonth.plusMonths(1).getMillis());
     }
 
-    private PivotData[] singleDimPivotDataArray(int size) {
-        PivotData out[] = new PivotData[size];
+    private int getDayIndex(long millis) {
+        if (millis >= dayStarts[0] && millis < dayStarts[daysCount]) {
+            final int index = Arrays.binarySearch(dayStarts, millis);
+            return index >= 0 ? index : -index - 2;
+        }
+        return new DateTime(millis).getDayOfMonth() - 1;
+    }
+
+    /**
+     * Creates data storage of currency with given code (data is indexed by currency code until report is finished).
+     */
+    private void addCurrency(int code) {
+        if (code >= perCurrency.length) {
+            perCurrency = Arrays.copyOf(perCurrency, code + 1);
+            for (int i = 0; i < daysCount; i++) {
+                perDayCurrency[i] = Arrays.copyOf(perDayCurrency[i], code + 1);
+            }
+        }
+        perCurrency[code] = new Summary();
+        for (int i = 0; i < daysCount; i++) {
+            perDayCurrency[i][code] = new Summary();
+        }
+    }
+
+    private static Summary[] byCurrencyIndex(Summary[] byCode, int[] codes) {
+        final Summary[] out = new Summary[codes.length];
+        for (int i = 0; i < codes.length; i++) {
+            out[i] = byCode[codes[i]];
+        }
+        return out;
+    }
+
+    private static Summary[] newSummaries(int size) {
+        final Summary[] out = new Summary[size];
         for (int i = 0; i < size; i++) {
-            out[i] = new PivotData();
+            out[i] = new Summary();
         }
         return out;
     }
 
+    private DateTime firstDate;
     private int month, year, daysCount;
+    private int rowsCount;
+    // start of every day of month and end of month
+    private long[] dayStarts;
+    // transactions from this range don't need month verification
+    private long fastFrom, fastTo;
 
     private String[] currencies;
-    private HashMap<String, Integer> currencyIndexes = new HashMap<>();
+    private int[] currencyIndexes;
     // data storage
-    private PivotData[] perDay;
-    private PivotData[] perCurrency;
-    private PivotData[][] perDayCurrency;
+    private Summary[] perDay;
+    private Summary[] perCurrency;
+    private Summary[][] perDayCurrency;
     private Summary summary = new Summary();
+
+    // minimal number of transactions summed by single fork/join task
+    private static final int MIN_PARTIAL_ROWS = 16 * 1024;
 }
@@ -0,0 +1,238 @@
+package com.bytestorm.isp;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Map of order ids to row indexes used to match sales with earnings report transactions.
+ * <p/>
+ * Play order ids (<code>GPA.dddd-dddd-dddd-ddddd</code> optionally followed by <code>..n</code> renewal number) are
+ * encoded to long keys stored with rows in open addressing table of primitive arrays, so no objects are created per
+ * entry. Ids of other formats are kept in regular hash map. Semantics are the same as of
+ * <code>HashMap&lt;String, Integer&gt;</code> - put replaces row of existing id. Index which is no longer modified
+ * may be queried by {@link #get(String)} from multiple threads.
+ */
+public class OrderIndex {
+
+    /**
+     * @param expectedSize expected number of entries
+     */
+    public OrderIndex(int expectedSize) {
+        int capacity = 16;
+        while (capacity < expectedSize * 2 && capacity < (1 << 30)) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+
+    /**
+     * Adds entry or replaces row of existing id.
+     *
+     * @param orderId order id, may be null
+     * @param row     row index (non negative)
+     */
+    public void put(String orderId, int row) {
+        final long key = encode(orderId);
+        if (key < 0) {
+            if (null == other.put(orderId, row)) {
+                ++size;
+            }
+            return;
+        }
+        if ((usedSlots + 1) * 2 > keys.length) {
+            rehash(size * 4 > keys.length ? keys.length * 2 : keys.length);
+        }
+        final int mask = keys.length - 1;
+        int removed = -1;
+        for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+            if (EMPTY == rows[slot]) {
+                if (removed >= 0) {
+                    slot = removed;
+                } else {
+                    ++usedSlots;
+                }
+                keys[slot] = key;
+                rows[slot] = row;
+                ++size;
+                return;
+            }
+            if (REMOVED == rows[slot]) {
+                if (removed < 0) {
+                    removed = slot;
+                }
+            } else if (keys[slot] == key) {
+                rows[slot] = row;
+                return;
+            }
+        }
+    }
+
+    /**
+     * @param orderId order id
+     *
+     * @return row of given id or -1 if id is not present
+     */
+    public int get(String orderId) {
+        final long key = encode(orderId);
+        if (key < 0) {
+            final Integer row = other.get(orderId);
+            return null == row ? -1 : row;
+        }
+        final int mask = keys.length - 1;
+        for (int slot = hash(key) & mask; EMPTY != rows[slot]; slot = (slot + 1) & mask) {
+            if (REMOVED != rows[slot] && keys[slot] == key) {
+                return rows[slot];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Removes entry.
+     *
+     * @param orderId order id
+     *
+     * @return row of removed entry or -1 if id is not present
+     */
+    public int remove(String orderId) {
+        final long key = encode(orderId);
+        if (key < 0) {
+            final Integer row = other.remove(orderId);
+            if (null == row) {
+                return -1;
+            }
+            --size;
+            return row;
+        }
+        final int mask = keys.length - 1;
+        for (int slot = hash(key) & mask; EMPTY != rows[slot]; slot = (slot + 1) & mask) {
+            if (REMOVED != rows[slot] && keys[slot] == key) {
+                final int row = rows[slot];
+                rows[slot] = REMOVED;
+                --size;
+                return row;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return number of entries
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return 0 == size;
+    }
+
+    /**
+     * @return order id encoded to non negative long or -1 if id has unknown format
+     */
+    static long encode(String orderId) {
+        if (null == orderId || orderId.length() < ID_LENGTH || !orderId.startsWith(ID_PREFIX)) {
+            return -1;
+        }
+        long digits = 0;
+        for (int i = ID_PREFIX.length(); i < ID_LENGTH; i++) {
+            final char c = orderId.charAt(i);
+            if ('-' == c && (8 == i || 13 == i || 18 == i)) {
+                continue;
+            }
+            if (c < '0' || c > '9' || 8 == i || 13 == i || 18 == i) {
+                return -1;
+            }
+            digits = digits * 10 + (c - '0');
+        }
+        if (orderId.length() == ID_LENGTH) {
+            return digits;
+        }
+        // renewal suffix, only canonical numbers (no leading zeros) to keep encoding unique
+        final int suffixLength = orderId.length() - ID_LENGTH - 2;
+        if (suffixLength < 1 || suffixLength > 2 || !orderId.startsWith("..", ID_LENGTH)
+                || (suffixLength > 1 && '0' == orderId.charAt(ID_LENGTH + 2))) {
+            return -1;
+        }
+        int renewal = 0;
+        for (int i = ID_LENGTH + 2; i < orderId.length(); i++) {
+            final char c = orderId.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            renewal = renewal * 10 + (c - '0');
+        }
+        if (renewal >= MAX_RENEWAL) {
+            return -1;
+        }
+        return (renewal + 1) * DIGITS_RANGE + digits;
+    }
+
+    /**
+     * @param key order id encoded by {@link #encode(String)}
+     *
+     * @return order id
+     */
+    static String decode(long key) {
+        final long renewal = key / DIGITS_RANGE;
+        final String digits = String.valueOf(DIGITS_RANGE + key % DIGITS_RANGE);
+        final StringBuilder id = new StringBuilder(ID_LENGTH + 4).append(ID_PREFIX)
+                .append(digits, 1, 5).append('-')
+                .append(digits, 5, 9).append('-')
+                .append(digits, 9, 13).append('-')
+                .append(digits, 13, 18);
+        if (renewal > 0) {
+            id.append("..").append(renewal - 1);
+        }
+        return id.toString();
+    }
+
+    private static int hash(long key) {
+        final long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        rows = new int[capacity];
+        Arrays.fill(rows, EMPTY);
+        usedSlots = 0;
+    }
+
+    private void rehash(int capacity) {
+        final long[] oldKeys = keys;
+        final int[] oldRows = rows;
+        allocate(capacity);
+        final int mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldRows[i] >= 0) {
+                int slot = hash(oldKeys[i]) & mask;
+                while (EMPTY != rows[slot]) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                rows[slot] = oldRows[i];
+                ++usedSlots;
+            }
+        }
+    }
+
+    private long[] keys;
+    // row of slot, EMPTY or REMOVED
+    private int[] rows;
+    // slots which are not EMPTY (including removed ones)
+    private int usedSlots;
+    private int size;
+    private final HashMap<String, Integer> other = new HashMap<>();
+
+    private static final int EMPTY = -1;
+    private static final int REMOVED = -2;
+
+    private static final String ID_PREFIX = "GPA.";
+    // length of id without renewal suffix
+    private static final int ID_LENGTH = 24;
+    // 17 digits of id
+    private static final long DIGITS_RANGE = 100000000000000000L;
+    // renewal number has to fit in the rest of long range
+    private static final int MAX_RENEWAL = 90;
+}
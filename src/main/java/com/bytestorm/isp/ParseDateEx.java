@@ -57,6 +57,9 @@ public class ParseDateEx extends CellProcessorAdaptor implements StringCellProce
 
     private final TimeZone tz;
 
+    // fast thread safe parser, null if format is not supported
+    private final FastDateParser fastParser;
+
     /**
      * Constructs a new <tt>ParseDate</tt> processor which converts a String to a Date using the supplied date format.
      * This constructor uses non-lenient Date interpretation.
@@ -84,6 +87,7 @@ public class ParseDateEx extends CellProcessorAdaptor implements StringCellProce
         this.lenient = lenient;
         this.locale = null;
         this.tz = null;
+        this.fastParser = null;
     }
 
     /**
@@ -103,6 +107,7 @@ public class ParseDateEx extends CellProcessorAdaptor implements StringCellProce
         this.lenient = lenient;
         this.locale = locale;
         this.tz = tz;
+        this.fastParser = FastDateParser.forPattern(dateFormat, lenient, locale, tz);
     }
 
     /**
@@ -135,6 +140,7 @@ public class ParseDateEx extends CellProcessorAdaptor implements StringCellProce
         this.lenient = lenient;
         this.locale = null;
         this.tz = null;
+        this.fastParser = null;
     }
 
     /**
@@ -155,6 +161,7 @@ public class ParseDateEx extends CellProcessorAdaptor implements StringCellProce
         this.lenient = lenient;
         this.locale = locale;
         this.tz = tz;
+        this.fastParser = FastDateParser.forPattern(dateFormat, lenient, locale, tz);
     }
 
     /**
@@ -199,6 +206,9 @@ public class ParseDateEx extends CellProcessorAdaptor implements StringCellProce
         }
 
         try {
+            if (null != fastParser) {
+                return next.execute(fastParser.parse((String) value), context);
+            }
             final SimpleDateFormat formatter;
             if (locale == null) {
                 formatter = new SimpleDateFormat(dateFormat);
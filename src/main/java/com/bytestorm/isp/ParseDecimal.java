@@ -0,0 +1,42 @@
+package com.bytestorm.isp;
+
+import org.supercsv.cellprocessor.CellProcessorAdaptor;
+import org.supercsv.cellprocessor.ift.CellProcessor;
+import org.supercsv.cellprocessor.ift.StringCellProcessor;
+import org.supercsv.exception.SuperCsvCellProcessorException;
+import org.supercsv.util.CsvContext;
+
+/**
+ * Converts a String formatted with US symbols to a BigDecimal using {@link DecimalParser}. Results are the same as
+ * results of <code>ParseBigDecimal</code> created with US <code>DecimalFormatSymbols</code>.
+ */
+public class ParseDecimal extends CellProcessorAdaptor implements StringCellProcessor {
+
+    public ParseDecimal() {
+        super();
+    }
+
+    public ParseDecimal(final CellProcessor next) {
+        super(next);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws SuperCsvCellProcessorException if value is null, isn't a String, or can't be parsed to a BigDecimal
+     */
+    public Object execute(final Object value, final CsvContext context) {
+        validateInputNotNull(value, context);
+
+        if (!(value instanceof String)) {
+            throw new SuperCsvCellProcessorException(String.class, value, context, this);
+        }
+
+        try {
+            return next.execute(DecimalParser.parseBigDecimal((String) value), context);
+        } catch (final NumberFormatException e) {
+            throw new SuperCsvCellProcessorException(String.format("'%s' could not be parsed as a BigDecimal", value),
+                    context, this, e);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.bytestorm.isp;
+
+import com.bytestorm.isp.MonthlyPivotReport.Summary;
+
+import java.util.Date;
+
+/**
+ * Period to currency pivot report, as rendered in pivot sheet.
+ */
+public interface PivotReport {
+
+    /**
+     * @return start dates of report periods (rows)
+     */
+    public Date[] getPeriods();
+
+    /**
+     * @return XLSX data format of period start dates
+     */
+    public String getPeriodFormat();
+
+    /**
+     * @return sorted buyer currencies (columns)
+     */
+    public String[] getCurrencies();
+
+    public Summary getPeriodSummary(Date period);
+
+    public Summary getCurrencySummary(String currency);
+
+    public Summary getPeriodCurrencySummary(Date period, String currency);
+
+    public Summary getSummary();
+}
@@ -0,0 +1,394 @@
+package com.bytestorm.isp;
+
+import com.bytestorm.utils.Log;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Local store of NBP exchange tables shared by runs and processes.
+ * <p/>
+ * File consists of header followed by fixed size records. Quote record holds single quote of table (table day, table
+ * type, currency, multiplier and rate), directory record holds table listed in NBP tables directory (table day and
+ * type). Records are only appended, every append ends with commit record carrying range of days covered by NBP tables
+ * directory, records after last commit (left by interrupted append) are ignored and dropped by next append. File is
+ * memory mapped for reads under shared lock and appended under exclusive lock, so concurrent processes never see
+ * partial appends.
+ * <p/>
+ * Historical tables never change, so date range within covered days may be processed without network access once
+ * every directory table needed for the range is stored.
+ */
+public class RateStore {
+
+    /**
+     * Stored exchange table.
+     */
+    public static class Table {
+
+        Table(char type, long epochDay) {
+            this.type = type;
+            this.epochDay = epochDay;
+        }
+
+        Table(char type, DateTime date) {
+            this(type, date.getMillis() / MILLIS_PER_DAY);
+        }
+
+        Table(char type, DateTime date, Map<String, Exchange.Quote> quotes) {
+            this(type, date);
+            this.quotes.putAll(quotes);
+        }
+
+        /**
+         * @return table type ('a' or 'b')
+         */
+        public char getType() {
+            return type;
+        }
+
+        /**
+         * @return table date (UTC midnight)
+         */
+        public DateTime getDate() {
+            return new DateTime(epochDay * MILLIS_PER_DAY, DateTimeZone.UTC);
+        }
+
+        /**
+         * @return currency to quote
+         */
+        public Map<String, Exchange.Quote> getQuotes() {
+            return Collections.unmodifiableMap(quotes);
+        }
+
+        private final char type;
+        private final long epochDay;
+        private final HashMap<String, Exchange.Quote> quotes = new HashMap<>();
+    }
+
+    public RateStore(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Reads all committed tables, missing file is treated as empty store.
+     *
+     * @throws IOException on read error or if file is not a rate store
+     */
+    public void load() throws IOException {
+        clear();
+        if (!file.exists()) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            final FileLock lock = channel.lock(0, Long.MAX_VALUE, true);
+            try {
+                final long size = channel.size();
+                if (size >= HEADER_SIZE) {
+                    final MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                    checkHeader(data);
+                    readRecords(data);
+                }
+            } finally {
+                lock.release();
+            }
+        }
+        Log.v("Rate store " + file + " loaded, tables: " + tables.size() + " directory tables: " + directory.size()
+                + " covered days: " + coveredFrom + " - " + coveredTo);
+    }
+
+    /**
+     * Selects tables needed for given date range the same way as {@link Exchange#download()} does - last A and B
+     * tables before range start and all tables within range.
+     *
+     * @return tables ordered by date and type or null if directory of range is not covered or any of its tables is not
+     * stored
+     */
+    public List<Table> getTables(DateTime from, DateTime to) {
+        if (NO_DAY == coveredFrom || from.getMillis() < coveredFrom * MILLIS_PER_DAY
+                || to.getMillis() > (coveredTo + 1) * MILLIS_PER_DAY) {
+            return null;
+        }
+        final ArrayList<Table> out = new ArrayList<>();
+        Long lastA = null;
+        Long lastB = null;
+        for (Long key : directory.subSet(getKey('a', coveredFrom), getKey('a', coveredTo + 1))) {
+            final long day = key / 2;
+            if (day * MILLIS_PER_DAY < from.getMillis()) {
+                if (0 == key % 2) {
+                    lastA = key;
+                } else {
+                    lastB = key;
+                }
+            } else if (day * MILLIS_PER_DAY < to.getMillis()) {
+                out.add(tables.get(key));
+            }
+        }
+        if (null == lastA || null == lastB) {
+            return null;
+        }
+        out.add(0, tables.get(Math.max(lastA, lastB)));
+        out.add(0, tables.get(Math.min(lastA, lastB)));
+        return out.contains(null) ? null : out;
+    }
+
+    /**
+     * @return stored table or null
+     */
+    public Table getTable(char type, DateTime date) {
+        return tables.get(getKey(type, date.getMillis() / MILLIS_PER_DAY));
+    }
+
+    /**
+     * Appends tables and directory entries which are not stored yet (records appended meanwhile by other processes are
+     * loaded first). Nothing is written if store already holds all of them.
+     *
+     * @param newTables downloaded tables, tables which can't be stored exactly are skipped
+     * @param dirTables all tables listed in NBP directory (only dates and types are used)
+     */
+    public void append(List<Table> newTables, List<Table> dirTables) throws IOException {
+        if (dirTables.isEmpty()) {
+            return;
+        }
+        long dirFrom = Long.MAX_VALUE;
+        long dirTo = Long.MIN_VALUE;
+        for (Table table : dirTables) {
+            dirFrom = Math.min(dirFrom, table.epochDay);
+            dirTo = Math.max(dirTo, table.epochDay);
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE)) {
+            final FileLock lock = channel.lock();
+            try {
+                append(channel, newTables, dirTables, dirFrom, dirTo);
+            } finally {
+                lock.release();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return file.toString();
+    }
+
+    private void append(FileChannel channel, List<Table> newTables, List<Table> dirTables, long dirFrom, long dirTo)
+            throws IOException {
+        long size = channel.size();
+        clear();
+        if (size >= HEADER_SIZE) {
+            // not mapped, file may be truncated below
+            final ByteBuffer data = ByteBuffer.allocate((int) size);
+            while (data.hasRemaining()) {
+                if (channel.read(data, data.position()) < 0) {
+                    break;
+                }
+            }
+            data.flip();
+            checkHeader(data);
+            size = readRecords(data);
+        }
+        final ArrayList<byte[]> records = new ArrayList<>();
+        int appended = 0;
+        for (Table table : newTables) {
+            final long key = getKey(table.type, table.epochDay);
+            if (tables.containsKey(key) || !isStorable(table)) {
+                continue;
+            }
+            for (Exchange.Quote quote : table.quotes.values()) {
+                final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+                record.putInt((int) table.epochDay);
+                record.put((byte) table.type);
+                record.put(quote.getCurrency().getBytes(StandardCharsets.US_ASCII));
+                record.putInt(quote.getAmount());
+                record.putLong(quote.getRate().unscaledValue().longValue());
+                record.put((byte) quote.getRate().scale());
+                records.add(record.array());
+            }
+            tables.put(key, table);
+            ++appended;
+        }
+        for (Table table : dirTables) {
+            final long key = getKey(table.type, table.epochDay);
+            if (directory.add(key)) {
+                final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+                record.putInt((int) table.epochDay);
+                record.put(DIRECTORY);
+                record.put((byte) table.type);
+                records.add(record.array());
+            }
+        }
+        final long oldFrom = coveredFrom;
+        final long oldTo = coveredTo;
+        cover(dirFrom, dirTo);
+        if (records.isEmpty() && oldFrom == coveredFrom && oldTo == coveredTo) {
+            Log.v("Rate store " + file + " is up to date");
+            return;
+        }
+        final ByteBuffer commit = ByteBuffer.allocate(RECORD_SIZE);
+        commit.putInt((int) dirFrom);
+        commit.put(COMMIT);
+        commit.position(8);
+        commit.putInt((int) dirTo);
+        records.add(commit.array());
+        final ByteBuffer out = ByteBuffer.allocate(records.size() * RECORD_SIZE);
+        for (byte[] record : records) {
+            out.put(record);
+        }
+        out.flip();
+        if (size < HEADER_SIZE) {
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).flip();
+            writeFully(channel, header, 0);
+            size = HEADER_SIZE;
+        }
+        channel.truncate(size);
+        writeFully(channel, out, size);
+        channel.force(false);
+        Log.v("Rate store " + file + " updated, appended tables: " + appended);
+    }
+
+    private static void checkHeader(ByteBuffer data) throws IOException {
+        if (data.getInt(0) != MAGIC || data.getInt(4) != VERSION) {
+            throw new IOException("Invalid rate store file");
+        }
+    }
+
+    /**
+     * Reads committed records.
+     *
+     * @return size of file up to last commit record
+     */
+    private long readRecords(ByteBuffer data) {
+        final ArrayList<Table> pending = new ArrayList<>();
+        final ArrayList<Long> pendingDirectory = new ArrayList<>();
+        Table table = null;
+        long committed = HEADER_SIZE;
+        final byte[] currency = new byte[3];
+        for (int pos = HEADER_SIZE; pos + RECORD_SIZE <= data.limit(); pos += RECORD_SIZE) {
+            data.position(pos);
+            final int day = data.getInt();
+            final byte type = data.get();
+            if (COMMIT == type) {
+                data.position(pos + 8);
+                cover(day, data.getInt());
+                for (Table t : pending) {
+                    tables.put(getKey(t.type, t.epochDay), t);
+                }
+                directory.addAll(pendingDirectory);
+                pending.clear();
+                pendingDirectory.clear();
+                table = null;
+                committed = pos + RECORD_SIZE;
+                continue;
+            }
+            if (DIRECTORY == type) {
+                final byte tableType = data.get();
+                if ('a' != tableType && 'b' != tableType) {
+                    break;
+                }
+                pendingDirectory.add(getKey((char) tableType, day));
+                continue;
+            }
+            if ('a' != type && 'b' != type) {
+                // garbage left by interrupted append
+                break;
+            }
+            if (null == table || table.epochDay != day || table.type != type) {
+                table = new Table((char) type, day);
+                pending.add(table);
+            }
+            data.get(currency);
+            final int amount = data.getInt();
+            final long unscaled = data.getLong();
+            final int scale = data.get();
+            final String code = new String(currency, StandardCharsets.US_ASCII);
+            table.quotes.put(code, new Exchange.Quote(code, amount, BigDecimal.valueOf(unscaled, scale)));
+        }
+        return committed;
+    }
+
+    private void clear() {
+        tables.clear();
+        directory.clear();
+        coveredFrom = coveredTo = NO_DAY;
+    }
+
+    /**
+     * Extends covered days, disjoint range replaces current one.
+     */
+    private void cover(long from, long to) {
+        if (NO_DAY == coveredFrom || from > coveredTo + 1 || to < coveredFrom - 1) {
+            coveredFrom = from;
+            coveredTo = to;
+        } else {
+            coveredFrom = Math.min(coveredFrom, from);
+            coveredTo = Math.max(coveredTo, to);
+        }
+    }
+
+    private static boolean isStorable(Table table) {
+        if (table.quotes.isEmpty()) {
+            return false;
+        }
+        for (Map.Entry<String, Exchange.Quote> entry : table.quotes.entrySet()) {
+            final String currency = entry.getKey();
+            final BigDecimal rate = entry.getValue().getRate();
+            if (null == currency || 3 != currency.length() || !currency.equals(entry.getValue().getCurrency())
+                    || null == rate || rate.scale() < 0 || rate.scale() > Byte.MAX_VALUE
+                    || rate.unscaledValue().bitLength() > 63) {
+                return false;
+            }
+            for (int i = 0; i < currency.length(); i++) {
+                if (currency.charAt(i) >= 0x80) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer data, long position) throws IOException {
+        while (data.hasRemaining()) {
+            position += channel.write(data, position);
+        }
+    }
+
+    private static long getKey(char type, long epochDay) {
+        return epochDay * 2 + ('a' == type ? 0 : 1);
+    }
+
+    private final File file;
+    // key (see getKey) to table, ordered by date and type
+    private final TreeMap<Long, Table> tables = new TreeMap<>();
+    // keys of tables listed in NBP directory, ordered by date and type
+    private final TreeSet<Long> directory = new TreeSet<>();
+    private long coveredFrom = NO_DAY, coveredTo = NO_DAY;
+
+    private static final int MAGIC = 0x4e425052; // "NBPR"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    // day (4), type (1), currency (3), multiplier (4), unscaled rate (8), scale (1), padding (3)
+    private static final int RECORD_SIZE = 24;
+    private static final byte COMMIT = 'C';
+    // day (4), type (1), table type (1), padding (18)
+    private static final byte DIRECTORY = 'D';
+    private static final long NO_DAY = Long.MIN_VALUE;
+    private static final long MILLIS_PER_DAY = 24 * 60 * 60 * 1000L;
+}
@@ -0,0 +1,279 @@
+package com.bytestorm.isp;
+
+import com.bytestorm.utils.Log;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Properties;
+
+/**
+ * Persistent cache of unpacked reports.
+ * <p/>
+ * Entries are keyed by storage object identity (bucket, name, generation and content hashes), so changed object is
+ * never served from cache. Each entry holds uncompressed CSV and properties file with original zip entry name and
+ * MD5 of the CSV, which is verified on every hit. Entries are evicted by {@link #evict()} in least recently used order
+ * when cache exceeds its size limit or when entry was not used for longer than max age. Entries returned by this
+ * instance are never evicted, as their files may still be read. Hits are verified and stored data is written outside
+ * of cache lock, so cache may be used by multiple download threads.
+ * <p/>
+ * Other processes could evict entries this instance returned, so cache directory is locked by the first instance
+ * created for it until {@link #close()} is called or process exits.
+ */
+public class ReportCache implements Closeable {
+
+    /**
+     * Cache entry.
+     */
+    public static class Entry {
+
+        Entry(File file, String entryName) {
+            this.file = file;
+            this.entryName = entryName;
+        }
+
+        /**
+         * @return uncompressed CSV file
+         */
+        public File getFile() {
+            return file;
+        }
+
+        /**
+         * @return name of CSV file in original zip archive
+         */
+        public String getEntryName() {
+            return entryName;
+        }
+
+        private final File file;
+        private final String entryName;
+    }
+
+    /**
+     * @param dir     cache directory, created if doesn't exist
+     * @param maxSize maximum total size of cached CSVs in bytes
+     * @param maxAge  maximum time in milliseconds entry can be kept unused
+     */
+    public ReportCache(File dir, long maxSize, long maxAge) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create report cache directory " + dir);
+        }
+        this.dir = dir;
+        this.maxSize = maxSize;
+        this.maxAge = maxAge;
+        lockFile = new RandomAccessFile(new File(dir, LOCK_FILE), "rw");
+        FileLock lock = null;
+        try {
+            lock = lockFile.getChannel().tryLock();
+        } catch (OverlappingFileLockException e) {
+            // locked by other instance of this process
+        } finally {
+            if (null == lock) {
+                lockFile.close();
+            }
+        }
+        if (null == lock) {
+            throw new IOException("Report cache directory " + dir + " is used by another process");
+        }
+    }
+
+    /**
+     * Creates cache key for storage object.
+     */
+    public static String key(String bucket, String name, Long generation, String md5, String crc32c) {
+        return toHex(digest("SHA-256").digest((bucket + "\n" + name + "\n" + generation + "\n" + md5 + "\n" + crc32c)
+                .getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Looks up cache entry, corrupted entries are removed.
+     *
+     * @param key entry key, see {@link #key(String, String, Long, String, String)}
+     *
+     * @return cached entry or null if not found
+     */
+    public Entry get(String key) {
+        final File csv = csvFile(key);
+        final File meta = metaFile(key);
+        synchronized (this) {
+            if (!csv.isFile() || !meta.isFile()) {
+                return null;
+            }
+            // entry is not evicted while verified
+            used.add(key);
+        }
+        final Properties props = new Properties();
+        final MessageDigest md5 = digest("MD5");
+        try {
+            try (InputStream in = new FileInputStream(meta)) {
+                props.load(in);
+            }
+            try (InputStream in = new DigestInputStream(new FileInputStream(csv), md5)) {
+                final byte[] buffer = new byte[BUFFER_SIZE];
+                while (in.read(buffer) >= 0) {
+                    // digest only
+                }
+            }
+        } catch (IOException e) {
+            Log.v("Cannot read cached report " + csv + " " + e);
+            remove(key);
+            return null;
+        }
+        if (!toHex(md5.digest()).equals(props.getProperty("md5"))) {
+            Log.v("Cached report " + csv + " is corrupted, removing");
+            remove(key);
+            return null;
+        }
+        synchronized (this) {
+            final long now = System.currentTimeMillis();
+            csv.setLastModified(now);
+            meta.setLastModified(now);
+        }
+        return new Entry(csv, props.getProperty("entry"));
+    }
+
+    /**
+     * Stores CSV data in cache.
+     *
+     * @param key       entry key, see {@link #key(String, String, Long, String, String)}
+     * @param entryName name of CSV file in original zip archive
+     * @param in        CSV data
+     *
+     * @return stored entry
+     */
+    public Entry put(String key, String entryName, InputStream in) throws IOException {
+        final File tmp = File.createTempFile("report", ".tmp", dir);
+        try {
+            final MessageDigest md5 = digest("MD5");
+            try (OutputStream out = new FileOutputStream(tmp)) {
+                final byte[] buffer = new byte[BUFFER_SIZE];
+                for (int read; (read = in.read(buffer)) >= 0; ) {
+                    md5.update(buffer, 0, read);
+                    out.write(buffer, 0, read);
+                }
+            }
+            final Properties props = new Properties();
+            props.setProperty("entry", entryName);
+            props.setProperty("md5", toHex(md5.digest()));
+            synchronized (this) {
+                try (OutputStream out = new FileOutputStream(metaFile(key))) {
+                    props.store(out, null);
+                }
+                Files.move(tmp.toPath(), csvFile(key).toPath(), StandardCopyOption.REPLACE_EXISTING);
+                used.add(key);
+            }
+        } finally {
+            tmp.delete();
+        }
+        return new Entry(csvFile(key), entryName);
+    }
+
+    /**
+     * Removes expired entries and least recently used ones until cache size fits in limit. Entries returned by this
+     * instance are kept (but counted to cache size), so it should be called once, after all reports were downloaded.
+     */
+    public synchronized void evict() {
+        final File[] files = dir.listFiles();
+        if (null == files) {
+            return;
+        }
+        final ArrayList<File> csvs = new ArrayList<>();
+        for (File f : files) {
+            if (f.getName().endsWith(CSV_EXT)) {
+                csvs.add(f);
+            }
+        }
+        Collections.sort(csvs, new Comparator<File>() {
+            @Override
+            public int compare(File f1, File f2) {
+                final long t1 = f1.lastModified();
+                final long t2 = f2.lastModified();
+                return t1 < t2 ? 1 : (t1 == t2 ? 0 : -1);
+            }
+        });
+        final long now = System.currentTimeMillis();
+        long size = 0;
+        // most recently used first
+        for (File csv : csvs) {
+            final long length = csv.length();
+            final String name = csv.getName();
+            final String key = name.substring(0, name.length() - CSV_EXT.length());
+            size += length;
+            if (!used.contains(key) && (size > maxSize || now - csv.lastModified() > maxAge)) {
+                Log.v("Evicting cached report " + csv);
+                remove(key);
+                size -= length;
+            }
+        }
+    }
+
+    /**
+     * Releases lock of cache directory, entries returned by this instance may be evicted by other instances afterwards.
+     */
+    @Override
+    public void close() throws IOException {
+        lockFile.close();
+    }
+
+    private synchronized void remove(String key) {
+        csvFile(key).delete();
+        metaFile(key).delete();
+        used.remove(key);
+    }
+
+    private File csvFile(String key) {
+        return new File(dir, key + CSV_EXT);
+    }
+
+    private File metaFile(String key) {
+        return new File(dir, key + META_EXT);
+    }
+
+    static MessageDigest digest(String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(algorithm + " not supported", e);
+        }
+    }
+
+    static String toHex(byte[] data) {
+        final char[] out = new char[data.length * 2];
+        for (int i = 0; i < data.length; i++) {
+            out[i * 2] = HEX[(data[i] >> 4) & 0xf];
+            out[i * 2 + 1] = HEX[data[i] & 0xf];
+        }
+        return new String(out);
+    }
+
+    private final File dir;
+    private final long maxSize;
+    private final long maxAge;
+    // keys of entries returned by this instance
+    private final HashSet<String> used = new HashSet<>();
+    private final RandomAccessFile lockFile;
+
+    private static final String CSV_EXT = ".csv";
+    private static final String META_EXT = ".properties";
+    private static final String LOCK_FILE = ".lock";
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+}
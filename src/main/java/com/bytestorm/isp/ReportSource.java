@@ -0,0 +1,133 @@
+package com.bytestorm.isp;
+
+import org.apache.commons.io.input.BoundedInputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Single CSV report which can be read as a stream.
+ */
+public abstract class ReportSource {
+
+    /**
+     * Creates source for plain CSV file.
+     */
+    public static ReportSource forFile(final File file) {
+        return new ReportSource(file.getAbsolutePath()) {
+            @Override
+            public InputStream open() throws IOException {
+                return new FileInputStream(file);
+            }
+
+            @Override
+            public File getFile() {
+                return file;
+            }
+        };
+    }
+
+    /**
+     * Creates source for CSV file packed in zip archive, data is inflated while read.
+     */
+    public static ReportSource forZip(final File zipFile) {
+        return new ReportSource(zipFile.getAbsolutePath()) {
+            @Override
+            public InputStream open() throws IOException {
+                return ZipUtils.openSingleEntry(zipFile);
+            }
+        };
+    }
+
+    /**
+     * Converts sources to plain files, see {@link #toFile()}.
+     */
+    public static File[] toFiles(ReportSource[] sources) throws IOException {
+        final File[] files = new File[sources.length];
+        for (int i = 0; i < files.length; i++) {
+            files[i] = sources[i].toFile();
+        }
+        return files;
+    }
+
+    protected ReportSource(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @return report name used in logs
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Opens report CSV data, caller is responsible for closing returned stream.
+     *
+     * @return CSV data stream
+     */
+    public abstract InputStream open() throws IOException;
+
+    /**
+     * Opens part of report CSV data, caller is responsible for closing returned stream.
+     *
+     * @param chunk chunk of this report returned by {@link CsvSplitter#open(ReportSource, long)}
+     *
+     * @return chunk data stream
+     */
+    public InputStream open(CsvSplitter.Chunk chunk) throws IOException {
+        if (null != chunk.getData()) {
+            return new ByteArrayInputStream(chunk.getData(), 0, (int) (chunk.getEnd() - chunk.getStart()));
+        }
+        final FileInputStream in = new FileInputStream(getFile());
+        try {
+            in.getChannel().position(chunk.getStart());
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+        return new BoundedInputStream(in, chunk.getEnd() - chunk.getStart());
+    }
+
+    /**
+     * @return uncompressed CSV file or null if report is not available as plain file (such reports are split into
+     * chunks while read, see {@link CsvSplitter#open(ReportSource, long)})
+     */
+    public File getFile() {
+        return null;
+    }
+
+    /**
+     * Returns report as plain file, reports not stored as plain files are copied to temporary file.
+     *
+     * @return uncompressed CSV file
+     */
+    public File toFile() throws IOException {
+        File file = getFile();
+        if (null == file) {
+            file = File.createTempFile("report", ".csv");
+            file.deleteOnExit();
+            try (InputStream in = open()) {
+                try (OutputStream out = new FileOutputStream(file)) {
+                    byte[] buffer = new byte[64 * 1024];
+                    for (int read = 0; (read = in.read(buffer)) > 0; ) {
+                        out.write(buffer, 0, read);
+                    }
+                }
+            }
+        }
+        return file;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    private final String name;
+}
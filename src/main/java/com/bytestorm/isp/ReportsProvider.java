@@ -10,5 +10,17 @@ public interface ReportsProvider {
 
     public File[] getSalesReportsFiles() throws IOException, IllegalArgumentException;
 
+    /**
+     * @return earnings reports readable as streams (no temporary files are created, reports which are not plain files
+     * are inflated while read)
+     */
+    public ReportSource[] getEarningsReports() throws IOException, IllegalArgumentException;
+
+    /**
+     * @return sales reports readable as streams (no temporary files are created, reports which are not plain files
+     * are inflated while read)
+     */
+    public ReportSource[] getSalesReports() throws IOException, IllegalArgumentException;
+
     public Date getDate();
 }
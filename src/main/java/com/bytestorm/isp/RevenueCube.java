@@ -0,0 +1,295 @@
+package com.bytestorm.isp;
+
+import com.bytestorm.isp.MonthlyPivotReport.Summary;
+
+import org.joda.time.DateTimeConstants;
+import org.joda.time.DateTimeZone;
+import org.joda.time.LocalDate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Date;
+import java.util.TreeSet;
+
+/**
+ * Transaction totals bucketed by day and buyer currency, spanning any number of months. Days are bounded by midnight
+ * in default time zone, the same way as in {@link MonthlyPivotReport}, while period dates of rolled up reports are UTC
+ * midnights of period start days (as dates of monthly report days).
+ * <p/>
+ * Cube is built in single pass and its size depends only on number of days and currencies. Day buckets are rolled
+ * up to weeks, months, quarters or years when {@link PivotReport} of given date range is requested.
+ */
+public class RevenueCube {
+
+    public static enum Granularity {
+        DAY("dd.MM.yy"), WEEK("dd.MM.yy"), MONTH("MM.yyyy"), QUARTER("MM.yyyy"), YEAR("yyyy");
+
+        private Granularity(String format) {
+            this.format = format;
+        }
+
+        /**
+         * @return start of period containing given day
+         */
+        LocalDate getPeriodStart(LocalDate day) {
+            switch (this) {
+                case WEEK:
+                    return day.withDayOfWeek(DateTimeConstants.MONDAY);
+                case MONTH:
+                    return day.withDayOfMonth(1);
+                case QUARTER:
+                    return day.withDayOfMonth(1).withMonthOfYear((day.getMonthOfYear() - 1) / 3 * 3 + 1);
+                case YEAR:
+                    return day.withDayOfYear(1);
+                default:
+                    return day;
+            }
+        }
+
+        private final String format;
+    }
+
+    /**
+     * Adds transaction to bucket of its day.
+     *
+     * @param t transaction, may be flyweight since it is not retained
+     */
+    public void add(TransactionRow t) {
+        final long epochDay = toEpochDay(t.getDate());
+        if (0 == daysCount) {
+            firstDay = epochDay;
+        }
+        if (epochDay < firstDay) {
+            // prepend buckets for earlier days
+            final int shift = (int) (firstDay - epochDay);
+            final Summary[][] grown = new Summary[Math.max(days.length, daysCount + shift)][];
+            System.arraycopy(days, 0, grown, shift, daysCount);
+            days = grown;
+            daysCount += shift;
+            firstDay = epochDay;
+        }
+        final int day = (int) (epochDay - firstDay);
+        if (day >= days.length) {
+            days = Arrays.copyOf(days, Math.max(days.length * 2, day + 1));
+        }
+        daysCount = Math.max(daysCount, day + 1);
+        final int code = t.getBuyerCurrencyCode();
+        Summary[] dayCurrencies = days[day];
+        if (null == dayCurrencies || code >= dayCurrencies.length) {
+            dayCurrencies = days[day] = null == dayCurrencies ? new Summary[code + 1] : Arrays.copyOf(dayCurrencies, code + 1);
+        }
+        if (null == dayCurrencies[code]) {
+            dayCurrencies[code] = new Summary();
+        }
+        dayCurrencies[code].add(t);
+    }
+
+    /**
+     * @return start of first day with transactions or null if cube is empty
+     */
+    public Date getFirstDate() {
+        return 0 == daysCount ? null : toDate(firstDay);
+    }
+
+    /**
+     * @return start of last day with transactions or null if cube is empty
+     */
+    public Date getLastDate() {
+        return 0 == daysCount ? null : toDate(firstDay + daysCount - 1);
+    }
+
+    /**
+     * Rolls up day buckets of whole cube.
+     *
+     * @throws IllegalStateException if cube is empty
+     * @see #getPivot(Granularity, Date, Date)
+     */
+    public PivotReport getPivot(Granularity granularity) {
+        if (0 == daysCount) {
+            throw new IllegalStateException("Revenue cube is empty");
+        }
+        return getPivot(granularity, getFirstDate(), getLastDate());
+    }
+
+    /**
+     * Rolls up day buckets of given date range to periods of given granularity. Report contains all periods
+     * overlapping date range (including periods without transactions), but only transactions from the range are
+     * summed up.
+     *
+     * @param granularity report period
+     * @param from        any time of first day of range
+     * @param to          any time of last day of range (inclusive)
+     *
+     * @return pivot report of date range
+     *
+     * @throws IllegalArgumentException if range is empty
+     */
+    public PivotReport getPivot(Granularity granularity, Date from, Date to) {
+        final long fromDay = toEpochDay(from);
+        final long toDay = toEpochDay(to);
+        if (toDay < fromDay) {
+            throw new IllegalArgumentException("Invalid date range " + from + " - " + to);
+        }
+        // currencies of transactions in range
+        final BitSet codes = new BitSet();
+        for (long d = Math.max(fromDay, firstDay); d <= toDay && d < firstDay + daysCount; d++) {
+            final Summary[] dayCurrencies = days[(int) (d - firstDay)];
+            for (int code = 0; null != dayCurrencies && code < dayCurrencies.length; code++) {
+                if (null != dayCurrencies[code]) {
+                    codes.set(code);
+                }
+            }
+        }
+        final TreeSet<String> currenciesSet = new TreeSet<>();
+        for (int code = codes.nextSetBit(0); code >= 0; code = codes.nextSetBit(code + 1)) {
+            currenciesSet.add(Transaction.CURRENCIES.decode(code));
+        }
+        final String[] currencies = currenciesSet.toArray(new String[currenciesSet.size()]);
+        final int[] currencyIndexes = new int[codes.length()];
+        for (int i = 0; i < currencies.length; i++) {
+            currencyIndexes[Transaction.CURRENCIES.find(currencies[i])] = i;
+        }
+        // roll up days of every period
+        final ArrayList<Date> periods = new ArrayList<>();
+        final ArrayList<Summary[]> cells = new ArrayList<>();
+        LocalDate periodStart = null;
+        Summary[] periodCells = null;
+        for (long d = fromDay; d <= toDay; d++) {
+            final LocalDate day = toLocalDate(d);
+            final LocalDate start = granularity.getPeriodStart(day);
+            if (!start.equals(periodStart)) {
+                periodStart = start;
+                periodCells = new Summary[currencies.length];
+                for (int i = 0; i < currencies.length; i++) {
+                    periodCells[i] = new Summary();
+                }
+                periods.add(start.toDateTimeAtStartOfDay(DateTimeZone.UTC).toDate());
+                cells.add(periodCells);
+            }
+            if (d < firstDay || d >= firstDay + daysCount) {
+                continue;
+            }
+            final Summary[] dayCurrencies = days[(int) (d - firstDay)];
+            for (int code = 0; null != dayCurrencies && code < dayCurrencies.length; code++) {
+                if (null != dayCurrencies[code]) {
+                    periodCells[currencyIndexes[code]].add(dayCurrencies[code]);
+                }
+            }
+        }
+        return new CubePivot(granularity, periods.toArray(new Date[periods.size()]), currencies,
+                cells.toArray(new Summary[cells.size()][]));
+    }
+
+    /**
+     * Rolled up cube data.
+     */
+    private static class CubePivot implements PivotReport {
+
+        CubePivot(Granularity granularity, Date[] periods, String[] currencies, Summary[][] cells) {
+            this.granularity = granularity;
+            this.periods = periods;
+            this.currencies = currencies;
+            this.cells = cells;
+            perPeriod = new Summary[periods.length];
+            perCurrency = new Summary[currencies.length];
+            for (int j = 0; j < currencies.length; j++) {
+                perCurrency[j] = new Summary();
+            }
+            for (int i = 0; i < periods.length; i++) {
+                perPeriod[i] = new Summary();
+                for (int j = 0; j < currencies.length; j++) {
+                    perPeriod[i].add(cells[i][j]);
+                    perCurrency[j].add(cells[i][j]);
+                }
+                summary.add(perPeriod[i]);
+            }
+        }
+
+        @Override
+        public Date[] getPeriods() {
+            return periods.clone();
+        }
+
+        @Override
+        public String getPeriodFormat() {
+            return granularity.format;
+        }
+
+        @Override
+        public String[] getCurrencies() {
+            return currencies;
+        }
+
+        @Override
+        public Summary getPeriodSummary(Date period) {
+            return perPeriod[getPeriodIndex(period)];
+        }
+
+        @Override
+        public Summary getCurrencySummary(String currency) {
+            return perCurrency[getCurrencyIndex(currency)];
+        }
+
+        @Override
+        public Summary getPeriodCurrencySummary(Date period, String currency) {
+            return cells[getPeriodIndex(period)][getCurrencyIndex(currency)];
+        }
+
+        @Override
+        public Summary getSummary() {
+            return summary;
+        }
+
+        private int getPeriodIndex(Date period) {
+            final int index = Arrays.binarySearch(periods, period);
+            if (index < 0) {
+                throw new IllegalArgumentException("Invalid period " + period);
+            }
+            return index;
+        }
+
+        private int getCurrencyIndex(String currency) {
+            final int index = Arrays.binarySearch(currencies, currency);
+            if (index < 0) {
+                throw new IllegalArgumentException("Invalid currency code");
+            }
+            return index;
+        }
+
+        private final Granularity granularity;
+        private final Date[] periods;
+        private final String[] currencies;
+        private final Summary[][] cells;
+        private final Summary[] perPeriod;
+        private final Summary[] perCurrency;
+        private final Summary summary = new Summary();
+    }
+
+    /**
+     * @return number of local date of given time (in default time zone) counted from 1970-01-01
+     */
+    private static long toEpochDay(Date date) {
+        final long utcMillis = date.getTime();
+        final long millis = utcMillis + DateTimeZone.getDefault().getOffset(utcMillis);
+        return millis >= 0 ? millis / MILLIS_PER_DAY : (millis + 1) / MILLIS_PER_DAY - 1;
+    }
+
+    private static LocalDate toLocalDate(long epochDay) {
+        return new LocalDate(epochDay * MILLIS_PER_DAY, DateTimeZone.UTC);
+    }
+
+    /**
+     * @return start of given day in default time zone
+     */
+    private static Date toDate(long epochDay) {
+        return toLocalDate(epochDay).toDateTimeAtStartOfDay().toDate();
+    }
+
+    private long firstDay;
+    private int daysCount;
+    // day (relative to first day) to currency code to totals, null if there are no transactions
+    private Summary[][] days = new Summary[32][];
+
+    private static final long MILLIS_PER_DAY = 24 * 60 * 60 * 1000L;
+}
@@ -1,15 +1,12 @@
 package com.bytestorm.isp;
 
 import org.supercsv.cellprocessor.Optional;
-import org.supercsv.cellprocessor.ParseBigDecimal;
 import org.supercsv.cellprocessor.ParseLong;
 import org.supercsv.cellprocessor.constraint.NotNull;
 import org.supercsv.cellprocessor.ift.CellProcessor;
 
 import java.math.BigDecimal;
-import java.text.DecimalFormatSymbols;
 import java.util.Date;
-import java.util.Locale;
 
 public class Sale {
 
@@ -45,9 +42,9 @@ public class Sale {
             null,
             null,
             new NotNull(),
-            new ParseBigDecimal(DecimalFormatSymbols.getInstance(Locale.US)),
-            new ParseBigDecimal(DecimalFormatSymbols.getInstance(Locale.US)),
-            new ParseBigDecimal(DecimalFormatSymbols.getInstance(Locale.US)),
+            new ParseDecimal(),
+            new ParseDecimal(),
+            new ParseDecimal(),
             null,
             null,
             null,
@@ -0,0 +1,239 @@
+package com.bytestorm.isp;
+
+import com.bytestorm.utils.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+/**
+ * External sort of sales by order id.
+ * <p/>
+ * Sales are buffered until estimated size of buffer exceeds memory budget, then buffer is sorted and written to
+ * temporary run file. Runs are merged when sorted sales are read. Sort is stable - sales with equal ids are returned
+ * in order they were added. Only fields used to match sales with transactions are kept (id, buyer currency, price,
+ * tax collected and buyer country).
+ */
+public class SaleSorter implements Closeable {
+
+    /**
+     * Sorted sales.
+     */
+    public interface SortedSales {
+
+        /**
+         * @return next sale or null if all sales were read
+         */
+        Sale next() throws IOException;
+    }
+
+    /**
+     * @param memoryBudget maximal estimated size in bytes of sales kept in memory
+     */
+    public SaleSorter(long memoryBudget) {
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * Adds sale, sales can't be added after {@link #sort()} was called.
+     */
+    public void add(Sale sale) throws IOException {
+        buffer.add(sale);
+        bufferSize += estimateSize(sale);
+        if (bufferSize > memoryBudget) {
+            spill();
+        }
+    }
+
+    /**
+     * @return all added sales ordered by id
+     */
+    public SortedSales sort() throws IOException {
+        if (runs.isEmpty()) {
+            Collections.sort(buffer, ID_ORDER);
+            return new SortedSales() {
+                @Override
+                public Sale next() {
+                    return next < buffer.size() ? buffer.get(next++) : null;
+                }
+
+                private int next;
+            };
+        }
+        spill();
+        Log.v("Merging " + runs.size() + " sorted sales runs");
+        final PriorityQueue<Run> queue = new PriorityQueue<>(runs.size(), new Comparator<Run>() {
+            @Override
+            public int compare(Run o1, Run o2) {
+                final int order = o1.head.getId().compareTo(o2.head.getId());
+                return 0 != order ? order : Integer.compare(o1.index, o2.index);
+            }
+        });
+        for (Run run : runs) {
+            if (run.advance()) {
+                queue.add(run);
+            }
+        }
+        return new SortedSales() {
+            @Override
+            public Sale next() throws IOException {
+                final Run run = queue.poll();
+                if (null == run) {
+                    return null;
+                }
+                final Sale sale = run.head;
+                if (run.advance()) {
+                    queue.add(run);
+                }
+                return sale;
+            }
+        };
+    }
+
+    /**
+     * Deletes run files.
+     */
+    @Override
+    public void close() throws IOException {
+        for (Run run : runs) {
+            run.close();
+        }
+    }
+
+    /**
+     * Sorted run stored in temporary file.
+     */
+    private static class Run implements Closeable {
+
+        Run(File file, int index) {
+            this.file = file;
+            this.index = index;
+        }
+
+        /**
+         * Reads next sale of run to {@link #head}.
+         *
+         * @return false if end of run was reached
+         */
+        boolean advance() throws IOException {
+            if (null == in) {
+                in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), IO_BUFFER_SIZE));
+            }
+            try {
+                final Sale sale = new Sale();
+                sale.setId(in.readUTF());
+                sale.setBuyerCurrency(readString(in));
+                sale.setPrice(readDecimal(in));
+                sale.setTaxCollected(readDecimal(in));
+                sale.setBuyerCountry(readString(in));
+                head = sale;
+                return true;
+            } catch (EOFException e) {
+                head = null;
+                close();
+                return false;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                if (null != in) {
+                    in.close();
+                }
+            } finally {
+                if (file.exists() && !file.delete()) {
+                    Log.v("Cannot delete sales run file " + file);
+                }
+            }
+        }
+
+        final File file;
+        final int index;
+        private DataInputStream in;
+        Sale head;
+    }
+
+    private void spill() throws IOException {
+        if (buffer.isEmpty()) {
+            return;
+        }
+        Collections.sort(buffer, ID_ORDER);
+        final File file = File.createTempFile("isp-sales-", ".run");
+        file.deleteOnExit();
+        runs.add(new Run(file, runs.size()));
+        Log.v("Writing sorted run of " + buffer.size() + " sales to " + file);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file),
+                IO_BUFFER_SIZE))) {
+            for (Sale sale : buffer) {
+                out.writeUTF(sale.getId());
+                writeString(out, sale.getBuyerCurrency());
+                writeDecimal(out, sale.getPrice());
+                writeDecimal(out, sale.getTaxCollected());
+                writeString(out, sale.getBuyerCountry());
+            }
+        }
+        buffer.clear();
+        bufferSize = 0;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(null != value);
+        if (null != value) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeDecimal(DataOutputStream out, BigDecimal value) throws IOException {
+        // string representation keeps scale
+        writeString(out, null == value ? null : value.toString());
+    }
+
+    private static BigDecimal readDecimal(DataInputStream in) throws IOException {
+        final String value = readString(in);
+        return null == value ? null : new BigDecimal(value);
+    }
+
+    private static long estimateSize(Sale sale) {
+        long size = SALE_OVERHEAD + 2L * sale.getId().length();
+        if (null != sale.getBuyerCurrency()) {
+            size += 2L * sale.getBuyerCurrency().length();
+        }
+        if (null != sale.getBuyerCountry()) {
+            size += 2L * sale.getBuyerCountry().length();
+        }
+        return size;
+    }
+
+    private final long memoryBudget;
+    private final ArrayList<Sale> buffer = new ArrayList<>();
+    private long bufferSize;
+    private final ArrayList<Run> runs = new ArrayList<>();
+
+    private static final Comparator<Sale> ID_ORDER = new Comparator<Sale>() {
+        @Override
+        public int compare(Sale o1, Sale o2) {
+            return o1.getId().compareTo(o2.getId());
+        }
+    };
+
+    // approximate size of sale object with its strings and decimals (excluding characters)
+    private static final int SALE_OVERHEAD = 256;
+    private static final int IO_BUFFER_SIZE = 64 * 1024;
+}
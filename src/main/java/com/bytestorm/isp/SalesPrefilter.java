@@ -0,0 +1,133 @@
+package com.bytestorm.isp;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Prefilter of sales report rows which can't match any earnings report charge.
+ * <p/>
+ * Consists of Bloom filter of charge order ids and optional window of sale timestamps. Filter has no false negatives -
+ * row rejected by filter is never matched, so rows can be skipped by {@link SalesReportReader} right after id and
+ * timestamp columns are tokenized, before any other column is decoded.
+ */
+public class SalesPrefilter {
+
+    /**
+     * @param expectedIds expected number of order ids
+     */
+    public SalesPrefilter(int expectedIds) {
+        int size = 64;
+        while (size < expectedIds * BITS_PER_ID && size < (1 << 30)) {
+            size <<= 1;
+        }
+        bits = new long[size >>> 6];
+        mask = size - 1;
+    }
+
+    /**
+     * Adds order id of charge.
+     */
+    public void addId(String id) {
+        final long h = hash(id);
+        int h1 = (int) h;
+        final int h2 = (int) (h >>> 32) | 1;
+        for (int i = 0; i < HASHES; i++, h1 += h2) {
+            final int bit = h1 & mask;
+            bits[bit >>> 6] |= 1L << bit;
+        }
+    }
+
+    /**
+     * Restricts accepted sales to ones charged in given date range extended by slack on both sides. Charge dates of
+     * earnings reports have day precision and their time zone is not known, so the whole day before first date and the
+     * whole day after last date (more than any time zone offset) are always accepted as well.
+     *
+     * @param fromMillis earliest charge date
+     * @param toMillis   latest charge date
+     * @param slackDays  days accepted before and after charges range
+     */
+    public void setWindow(long fromMillis, long toMillis, int slackDays) {
+        final long slack = (slackDays + 1) * SECONDS_PER_DAY;
+        fromSecond = epochDay(fromMillis) * SECONDS_PER_DAY - slack;
+        toSecond = (epochDay(toMillis) + 1) * SECONDS_PER_DAY + slack - 1;
+    }
+
+    /**
+     * @param id UTF-8 bytes of order id
+     *
+     * @return false if there is no charge with given order id
+     */
+    public boolean mayContain(byte[] id, int start, int end) {
+        final long h = mix(fnv(id, start, end));
+        int h1 = (int) h;
+        final int h2 = (int) (h >>> 32) | 1;
+        for (int i = 0; i < HASHES; i++, h1 += h2) {
+            final int bit = h1 & mask;
+            if (0 == (bits[bit >>> 6] & (1L << bit))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param timestamp sale unix timestamp
+     *
+     * @return false if sale is outside of window
+     */
+    public boolean inWindow(long timestamp) {
+        return timestamp >= fromSecond && timestamp <= toSecond;
+    }
+
+    /**
+     * @return true if window was set
+     */
+    public boolean hasWindow() {
+        return Long.MIN_VALUE != fromSecond;
+    }
+
+    private static long hash(String id) {
+        for (int i = 0; i < id.length(); i++) {
+            if (id.charAt(i) >= 0x80) {
+                final byte[] bytes = id.getBytes(StandardCharsets.UTF_8);
+                return mix(fnv(bytes, 0, bytes.length));
+            }
+        }
+        // ASCII id, chars are the same as UTF-8 bytes
+        long h = FNV_OFFSET;
+        for (int i = 0; i < id.length(); i++) {
+            h = (h ^ id.charAt(i)) * FNV_PRIME;
+        }
+        return mix(h);
+    }
+
+    private static long fnv(byte[] data, int start, int end) {
+        long h = FNV_OFFSET;
+        for (int i = start; i < end; i++) {
+            h = (h ^ (data[i] & 0xff)) * FNV_PRIME;
+        }
+        return h;
+    }
+
+    private static long mix(long h) {
+        h = (h ^ (h >>> 33)) * 0xff51afd7ed558ccdL;
+        h = (h ^ (h >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return h ^ (h >>> 33);
+    }
+
+    private static long epochDay(long millis) {
+        final long day = millis / (1000L * SECONDS_PER_DAY);
+        return millis < 0 && day * 1000L * SECONDS_PER_DAY != millis ? day - 1 : day;
+    }
+
+    private final long[] bits;
+    private final int mask;
+    private long fromSecond = Long.MIN_VALUE;
+    private long toSecond = Long.MAX_VALUE;
+
+    private static final long SECONDS_PER_DAY = 24 * 60 * 60;
+    // about 1% false positives
+    private static final int BITS_PER_ID = 10;
+    private static final int HASHES = 7;
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+}
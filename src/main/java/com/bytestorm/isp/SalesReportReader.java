@@ -0,0 +1,198 @@
+package com.bytestorm.isp;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+
+/**
+ * Sales report reader working directly on UTF-8 bytes.
+ * <p/>
+ * Populates {@link Sale} fields straight from {@link CsvTokenizer} columns, columns excluded by projection are
+ * skipped by tokenizer. Results are identical to ones produced by {@link BeanSaleReader}.
+ * <p/>
+ * With {@link SalesPrefilter} rows rejected by filter are skipped right after tokenizing, only id and timestamp bytes
+ * are inspected. Rows with empty or invalid id or timestamp are never rejected, so they are reported as invalid.
+ */
+public class SalesReportReader implements SaleReader {
+
+    /**
+     * @param in         report data
+     * @param projection columns to decode, fields of other columns are left unset
+     */
+    public SalesReportReader(InputStream in, ColumnProjection projection) throws IOException {
+        this(in, projection, null);
+    }
+
+    /**
+     * @param in         report data
+     * @param projection columns to decode, fields of other columns are left unset (timestamp column has to be
+     *                   included for filter window to be applied)
+     * @param filter     filter of rows which can't be matched or null to read all rows
+     */
+    public SalesReportReader(InputStream in, ColumnProjection projection, SalesPrefilter filter) throws IOException {
+        this(in, true, 0, projection, filter);
+    }
+
+    /**
+     * Creates reader for part of sales report.
+     *
+     * @param in         report data
+     * @param header     true if data starts with header row
+     * @param rowsBefore number of report rows preceding data (used for row numbering)
+     * @param projection columns to decode, fields of other columns are left unset
+     * @param filter     filter of rows which can't be matched or null to read all rows
+     */
+    public SalesReportReader(InputStream in, boolean header, int rowsBefore, ColumnProjection projection,
+                             SalesPrefilter filter) throws IOException {
+        this.projection = projection;
+        this.filter = filter;
+        tokenizer = new CsvTokenizer(in);
+        tokenizer.setRowNumber(rowsBefore);
+        if (header) {
+            // header will be ignored
+            tokenizer.nextRow();
+        }
+        tokenizer.setProjection(projection);
+    }
+
+    @Override
+    public Sale read() throws IOException {
+        do {
+            if (!tokenizer.nextRow()) {
+                return null;
+            }
+            if (tokenizer.getColumnCount() != Sale.MAPPING.length) {
+                throw invalidRow("expected " + Sale.MAPPING.length + " columns but found " + tokenizer.getColumnCount());
+            }
+        } while (!accept());
+        final Sale sale = new Sale();
+        if (projection.includes(COL_ID)) {
+            sale.setId(getNotNull(COL_ID));
+        }
+        if (projection.includes(COL_TIMESTAMP)) {
+            sale.setTimestamp(parseLong(COL_TIMESTAMP));
+        }
+        if (projection.includes(COL_BUYER_CURRENCY)) {
+            sale.setBuyerCurrency(getNotNull(COL_BUYER_CURRENCY));
+        }
+        if (projection.includes(COL_PRICE)) {
+            sale.setPrice(parseDecimal(COL_PRICE));
+        }
+        if (projection.includes(COL_TAX_COLLECTED)) {
+            sale.setTaxCollected(parseDecimal(COL_TAX_COLLECTED));
+        }
+        if (projection.includes(COL_CHARGED_AMOUNT)) {
+            sale.setChargedAmount(parseDecimal(COL_CHARGED_AMOUNT));
+        }
+        if (projection.includes(COL_BUYER_COUNTRY)) {
+            sale.setBuyerCountry(tokenizer.getString(COL_BUYER_COUNTRY));
+        }
+        return sale;
+    }
+
+    /**
+     * @return number of rows skipped because of filter
+     */
+    public int getRejectedCount() {
+        return rejectedCount;
+    }
+
+    @Override
+    public int getRowNumber() {
+        return tokenizer.getRowNumber();
+    }
+
+    @Override
+    public String getUntokenizedRow() {
+        return tokenizer.getUntokenizedRow();
+    }
+
+    @Override
+    public void close() throws IOException {
+        tokenizer.close();
+    }
+
+    private boolean accept() {
+        if (null == filter || tokenizer.isEmpty(COL_ID)) {
+            return true;
+        }
+        if (!filter.mayContain(tokenizer.getBytes(COL_ID), tokenizer.getStart(COL_ID), tokenizer.getEnd(COL_ID))) {
+            ++rejectedCount;
+            return false;
+        }
+        if (filter.hasWindow() && !tokenizer.isEmpty(COL_TIMESTAMP)) {
+            final byte[] data = tokenizer.getBytes(COL_TIMESTAMP);
+            final int start = tokenizer.getStart(COL_TIMESTAMP);
+            final int end = tokenizer.getEnd(COL_TIMESTAMP);
+            if (end - start > MAX_TIMESTAMP_DIGITS) {
+                return true;
+            }
+            long timestamp = 0;
+            for (int i = start; i < end; i++) {
+                if (data[i] < '0' || data[i] > '9') {
+                    return true;
+                }
+                timestamp = timestamp * 10 + (data[i] - '0');
+            }
+            if (!filter.inWindow(timestamp)) {
+                ++rejectedCount;
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String getNotNull(int col) throws IOException {
+        final String value = tokenizer.getString(col);
+        if (null == value) {
+            throw invalidRow("column " + (col + 1) + " (" + Sale.MAPPING[col] + ") is empty");
+        }
+        return value;
+    }
+
+    private long parseLong(int col) throws IOException {
+        final String value = getNotNull(col);
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw invalidRow("'" + value + "' could not be parsed as a Long");
+        }
+    }
+
+    private BigDecimal parseDecimal(int col) throws IOException {
+        if (tokenizer.isEmpty(col)) {
+            throw invalidRow("column " + (col + 1) + " (" + Sale.MAPPING[col] + ") is empty");
+        }
+        if (decimal.parse(tokenizer.getBytes(col), tokenizer.getStart(col), tokenizer.getEnd(col))) {
+            return decimal.toBigDecimal();
+        }
+        final String value = tokenizer.getString(col);
+        try {
+            return DecimalParser.parseBigDecimal(value);
+        } catch (NumberFormatException e) {
+            throw invalidRow("'" + value + "' could not be parsed as a BigDecimal");
+        }
+    }
+
+    private IOException invalidRow(String reason) {
+        return new IOException("Invalid row " + tokenizer.getRowNumber() + " - " + reason + "\n" + tokenizer.getUntokenizedRow());
+    }
+
+    private final CsvTokenizer tokenizer;
+    private final ColumnProjection projection;
+    private final SalesPrefilter filter;
+    private int rejectedCount;
+    private final DecimalParser decimal = new DecimalParser();
+
+    // column indexes, see Sale.MAPPING
+    static final int COL_ID = 0;
+    static final int COL_TIMESTAMP = 2;
+    static final int COL_BUYER_CURRENCY = 9;
+    static final int COL_PRICE = 10;
+    static final int COL_TAX_COLLECTED = 11;
+    static final int COL_CHARGED_AMOUNT = 12;
+    static final int COL_BUYER_COUNTRY = 16;
+
+    // longer timestamps are left to regular parsing
+    private static final int MAX_TIMESTAMP_DIGITS = 18;
+}
@@ -0,0 +1,82 @@
+package com.bytestorm.isp;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Thread safe dictionary of distinct column values, each value is assigned small int code (its index in dictionary).
+ * <p/>
+ * Codes are never reused, so they can be stored instead of strings and compared for equality directly. Null value is
+ * encoded as {@link #NULL}.
+ */
+public class StringDictionary {
+
+    public static final int NULL = -1;
+
+    /**
+     * Returns code of value, adding it to dictionary if needed.
+     *
+     * @param value value to encode
+     *
+     * @return value code or {@link #NULL} for null value
+     */
+    public int encode(String value) {
+        if (null == value) {
+            return NULL;
+        }
+        final Integer code = codes.get(value);
+        if (null != code) {
+            return code;
+        }
+        synchronized (this) {
+            final Integer existing = codes.get(value);
+            if (null != existing) {
+                return existing;
+            }
+            String[] data = values;
+            if (size == data.length) {
+                data = Arrays.copyOf(data, size * 2);
+            }
+            // value has to be stored before code is published
+            data[size] = value;
+            values = data;
+            codes.put(value, size);
+            return size++;
+        }
+    }
+
+    /**
+     * Returns code of value without adding it to dictionary.
+     *
+     * @param value value to look up
+     *
+     * @return value code or {@link #NULL} if value is null or not in dictionary
+     */
+    public int find(String value) {
+        if (null == value) {
+            return NULL;
+        }
+        final Integer code = codes.get(value);
+        return null == code ? NULL : code;
+    }
+
+    /**
+     * @param code value code
+     *
+     * @return value with given code or null for {@link #NULL}
+     */
+    public String decode(int code) {
+        return NULL == code ? null : values[code];
+    }
+
+    /**
+     * @return number of values in dictionary, all codes are lower than this value
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    private final ConcurrentHashMap<String, Integer> codes = new ConcurrentHashMap<>();
+    private volatile String[] values = new String[16];
+    private int size;
+}
@@ -2,14 +2,11 @@ package com.bytestorm.isp;
 
 import org.supercsv.cellprocessor.HashMapper;
 import org.supercsv.cellprocessor.Optional;
-import org.supercsv.cellprocessor.ParseBigDecimal;
-import org.supercsv.cellprocessor.ParseDate;
 import org.supercsv.cellprocessor.ParseInt;
 import org.supercsv.cellprocessor.constraint.NotNull;
 import org.supercsv.cellprocessor.ift.CellProcessor;
 
 import java.math.BigDecimal;
-import java.text.DecimalFormatSymbols;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Locale;
@@ -19,7 +16,7 @@ import java.util.TimeZone;
 /**
  * Transaction bean.
  */
-public class Transaction {
+public class Transaction implements TransactionRow {
 
     public static enum Type {
         CHARGE("Charge"), FEE("Google fee"), REFUND("Charge refund"), FEE_REFUND("Google fee refund"), TAX("Tax");
@@ -52,21 +49,21 @@ public class Transaction {
                 ", taxType='" + taxType + '\'' +
                 ", transactionType=" + transactionType +
                 ", refundType='" + refundType + '\'' +
-                ", productName='" + productName + '\'' +
-                ", applicationId='" + applicationId + '\'' +
+                ", productName='" + getProductName() + '\'' +
+                ", applicationId='" + getApplicationId() + '\'' +
                 ", productType=" + productType +
-                ", skuId='" + skuId + '\'' +
-                ", hardware='" + hardware + '\'' +
-                ", buyerCountry='" + buyerCountry + '\'' +
+                ", skuId='" + getSkuId() + '\'' +
+                ", hardware='" + getHardware() + '\'' +
+                ", buyerCountry='" + getBuyerCountry() + '\'' +
                 ", buyerState='" + buyerState + '\'' +
                 ", buyerPostalCode='" + buyerPostalCode + '\'' +
-                ", buyerCurrency='" + buyerCurrency + '\'' +
-                ", amount=" + amount +
+                ", buyerCurrency='" + getBuyerCurrency() + '\'' +
+                ", amount=" + getAmount() +
                 ", conversionRate=" + conversionRate +
-                ", merchantCurrency='" + merchantCurrency + '\'' +
-                ", payout=" + payout +
+                ", merchantCurrency='" + getMerchantCurrency() + '\'' +
+                ", payout=" + getPayout() +
                 ", conversionRateBaseAmount=" + conversionRateBaseAmount +
-                ", taxAmount=" + taxAmount +
+                ", taxAmount=" + getTaxAmount() +
                 '}';
     }
 
@@ -94,8 +91,8 @@ public class Transaction {
     };
     public static final CellProcessor CSV[] = new CellProcessor[]{
             new Optional(),
-            new ParseDateEx("MMM d, yyyy", true, Locale.US, TimeZone.getTimeZone("UTC")),
-            new ParseDate("h:mm:ss a", true, Locale.US),
+            new ParseDateEx(FastDateParser.DATE_PATTERN, true, Locale.US, TimeZone.getTimeZone("UTC")),
+            new ParseDateEx(FastDateParser.TIME_PATTERN, true, Locale.US, null),
             new Optional(),
             new Optional(new HashMapper(Type.MAP)),
             new Optional(),
@@ -108,12 +105,20 @@ public class Transaction {
             new Optional(),
             new Optional(),
             new NotNull(),
-            new ParseBigDecimal(DecimalFormatSymbols.getInstance(Locale.US)),
-            new ParseBigDecimal(DecimalFormatSymbols.getInstance(Locale.US)),
+            new ParseDecimal(),
+            new ParseDecimal(),
             new NotNull(),
-            new ParseBigDecimal(DecimalFormatSymbols.getInstance(Locale.US)),
+            new ParseDecimal(),
     };
 
+    // dictionaries of low cardinality columns, buyer and merchant currencies share codes
+    public static final StringDictionary CURRENCIES = new StringDictionary();
+    public static final StringDictionary COUNTRIES = new StringDictionary();
+    public static final StringDictionary SKUS = new StringDictionary();
+    public static final StringDictionary PRODUCT_NAMES = new StringDictionary();
+    public static final StringDictionary APPLICATIONS = new StringDictionary();
+    public static final StringDictionary HARDWARE = new StringDictionary();
+
     public Transaction() {
     }
 
@@ -122,6 +127,7 @@ public class Transaction {
      *
      * @return the id
      */
+    @Override
     public String getId() {
         return id;
     }
@@ -140,6 +146,7 @@ public class Transaction {
      *
      * @return the date
      */
+    @Override
     public Date getDate() {
         return date;
     }
@@ -182,6 +189,7 @@ public class Transaction {
     /**
      * @return the transactionType
      */
+    @Override
     public Type getTransactionType() {
         return transactionType;
     }
@@ -210,7 +218,15 @@ public class Transaction {
     /**
      * @return the productName
      */
+    @Override
     public String getProductName() {
+        return PRODUCT_NAMES.decode(productName);
+    }
+
+    /**
+     * @return the productName code in {@link #PRODUCT_NAMES} dictionary
+     */
+    public int getProductNameCode() {
         return productName;
     }
 
@@ -218,6 +234,13 @@ public class Transaction {
      * @param productName the productName to set
      */
     public void setProductName(String productName) {
+        this.productName = PRODUCT_NAMES.encode(productName);
+    }
+
+    /**
+     * @param productName the productName code in {@link #PRODUCT_NAMES} dictionary
+     */
+    public void setProductNameCode(int productName) {
         this.productName = productName;
     }
 
@@ -225,6 +248,13 @@ public class Transaction {
      * @return the applicationId
      */
     public String getApplicationId() {
+        return APPLICATIONS.decode(applicationId);
+    }
+
+    /**
+     * @return the applicationId code in {@link #APPLICATIONS} dictionary
+     */
+    public int getApplicationIdCode() {
         return applicationId;
     }
 
@@ -232,6 +262,13 @@ public class Transaction {
      * @param applicationId the applicationId to set
      */
     public void setApplicationId(String applicationId) {
+        this.applicationId = APPLICATIONS.encode(applicationId);
+    }
+
+    /**
+     * @param applicationId the applicationId code in {@link #APPLICATIONS} dictionary
+     */
+    public void setApplicationIdCode(int applicationId) {
         this.applicationId = applicationId;
     }
 
@@ -252,7 +289,15 @@ public class Transaction {
     /**
      * @return the skuId
      */
+    @Override
     public String getSkuId() {
+        return SKUS.decode(skuId);
+    }
+
+    /**
+     * @return the skuId code in {@link #SKUS} dictionary
+     */
+    public int getSkuIdCode() {
         return skuId;
     }
 
@@ -260,6 +305,13 @@ public class Transaction {
      * @param skuId the skuId to set
      */
     public void setSkuId(String skuId) {
+        this.skuId = SKUS.encode(skuId);
+    }
+
+    /**
+     * @param skuId the skuId code in {@link #SKUS} dictionary
+     */
+    public void setSkuIdCode(int skuId) {
         this.skuId = skuId;
     }
 
@@ -267,6 +319,13 @@ public class Transaction {
      * @return the hardware
      */
     public String getHardware() {
+        return HARDWARE.decode(hardware);
+    }
+
+    /**
+     * @return the hardware code in {@link #HARDWARE} dictionary
+     */
+    public int getHardwareCode() {
         return hardware;
     }
 
@@ -274,13 +333,28 @@ public class Transaction {
      * @param hardware the hardware to set
      */
     public void setHardware(String hardware) {
+        this.hardware = HARDWARE.encode(hardware);
+    }
+
+    /**
+     * @param hardware the hardware code in {@link #HARDWARE} dictionary
+     */
+    public void setHardwareCode(int hardware) {
         this.hardware = hardware;
     }
 
     /**
      * @return the buyerCountry
      */
+    @Override
     public String getBuyerCountry() {
+        return COUNTRIES.decode(buyerCountry);
+    }
+
+    /**
+     * @return the buyerCountry code in {@link #COUNTRIES} dictionary
+     */
+    public int getBuyerCountryCode() {
         return buyerCountry;
     }
 
@@ -288,6 +362,13 @@ public class Transaction {
      * @param buyerCountry the buyerCountry to set
      */
     public void setBuyerCountry(String buyerCountry) {
+        this.buyerCountry = COUNTRIES.encode(buyerCountry);
+    }
+
+    /**
+     * @param buyerCountry the buyerCountry code in {@link #COUNTRIES} dictionary
+     */
+    public void setBuyerCountryCode(int buyerCountry) {
         this.buyerCountry = buyerCountry;
     }
 
@@ -322,7 +403,16 @@ public class Transaction {
     /**
      * @return the buyerCurrency
      */
+    @Override
     public String getBuyerCurrency() {
+        return CURRENCIES.decode(buyerCurrency);
+    }
+
+    /**
+     * @return the buyerCurrency code in {@link #CURRENCIES} dictionary
+     */
+    @Override
+    public int getBuyerCurrencyCode() {
         return buyerCurrency;
     }
 
@@ -330,21 +420,59 @@ public class Transaction {
      * @param buyerCurrency the buyerCurrency to set
      */
     public void setBuyerCurrency(String buyerCurrency) {
+        this.buyerCurrency = CURRENCIES.encode(buyerCurrency);
+        invalidateConverted();
+    }
+
+    /**
+     * @param buyerCurrency the buyerCurrency code in {@link #CURRENCIES} dictionary
+     */
+    public void setBuyerCurrencyCode(int buyerCurrency) {
         this.buyerCurrency = buyerCurrency;
+        invalidateConverted();
     }
 
     /**
      * @return the amount
      */
+    @Override
     public BigDecimal getAmount() {
-        return amount;
+        return DECIMAL_SCALE == amountScale ? amountDecimal : BigDecimal.valueOf(amount, amountScale);
     }
 
     /**
      * @param amount the amount to set
      */
     public void setAmount(BigDecimal amount) {
-        this.amount = amount;
+        if (null != amount && MoneySum.isFixedPoint(amount)) {
+            setAmount(amount.unscaledValue().longValue(), amount.scale());
+        } else {
+            this.amountScale = DECIMAL_SCALE;
+            this.amountDecimal = amount;
+            invalidateConverted();
+        }
+    }
+
+    /**
+     * Sets amount as fixed point value.
+     *
+     * @param unscaled unscaled value
+     * @param scale    value scale (0 - 18)
+     */
+    public void setAmount(long unscaled, int scale) {
+        this.amount = unscaled;
+        this.amountScale = scale;
+        this.amountDecimal = null;
+        invalidateConverted();
+    }
+
+    @Override
+    public void addAmountTo(MoneySum sum) {
+        if (DECIMAL_SCALE == amountScale) {
+            sum.add(amountDecimal);
+        } else {
+            sum.add(amount, amountScale);
+        }
     }
 
     /**
@@ -359,12 +487,21 @@ public class Transaction {
      */
     public void setConversionRate(BigDecimal conversionRate) {
         this.conversionRate = conversionRate;
+        invalidateConverted();
     }
 
     /**
      * @return the merchantCurrency
      */
+    @Override
     public String getMerchantCurrency() {
+        return CURRENCIES.decode(merchantCurrency);
+    }
+
+    /**
+     * @return the merchantCurrency code in {@link #CURRENCIES} dictionary
+     */
+    public int getMerchantCurrencyCode() {
         return merchantCurrency;
     }
 
@@ -372,21 +509,59 @@ public class Transaction {
      * @param merchantCurrency the merchantCurrency to set
      */
     public void setMerchantCurrency(String merchantCurrency) {
+        this.merchantCurrency = CURRENCIES.encode(merchantCurrency);
+        invalidateConverted();
+    }
+
+    /**
+     * @param merchantCurrency the merchantCurrency code in {@link #CURRENCIES} dictionary
+     */
+    public void setMerchantCurrencyCode(int merchantCurrency) {
         this.merchantCurrency = merchantCurrency;
+        invalidateConverted();
     }
 
     /**
      * @return the payout
      */
+    @Override
     public BigDecimal getPayout() {
-        return payout;
+        return DECIMAL_SCALE == payoutScale ? payoutDecimal : BigDecimal.valueOf(payout, payoutScale);
     }
 
     /**
      * @param payout the payout to set
      */
     public void setPayout(BigDecimal payout) {
-        this.payout = payout;
+        if (null != payout && MoneySum.isFixedPoint(payout)) {
+            setPayout(payout.unscaledValue().longValue(), payout.scale());
+        } else {
+            this.payoutScale = DECIMAL_SCALE;
+            this.payoutDecimal = payout;
+            invalidateConverted();
+        }
+    }
+
+    /**
+     * Sets payout as fixed point value.
+     *
+     * @param unscaled unscaled value
+     * @param scale    value scale (0 - 18)
+     */
+    public void setPayout(long unscaled, int scale) {
+        this.payout = unscaled;
+        this.payoutScale = scale;
+        this.payoutDecimal = null;
+        invalidateConverted();
+    }
+
+    @Override
+    public void addPayoutTo(MoneySum sum) {
+        if (DECIMAL_SCALE == payoutScale) {
+            sum.add(payoutDecimal);
+        } else {
+            sum.add(payout, payoutScale);
+        }
     }
 
     /**
@@ -401,41 +576,104 @@ public class Transaction {
      */
     public void setConversionRateBaseAmount(int conversionRateBaseAmount) {
         this.conversionRateBaseAmount = conversionRateBaseAmount;
+        invalidateConverted();
+    }
+
+    /**
+     * Computes values derived from amounts and conversion rate (converted amount, spread and converted tax amount),
+     * so their getters return stored results. Derived values are otherwise computed on first use, in both cases they
+     * are discarded when any of source values is changed.
+     */
+    public void computeConverted() {
+        getAmountConverted();
+        getSpread();
+        getTaxAmountConverted();
     }
 
     /**
      * @return the amountConverted
      */
+    @Override
     public BigDecimal getAmountConverted() {
-        if (buyerCurrency.equals(merchantCurrency)) {
-            return amount;
+        if (null == amountConverted) {
+            amountConverted = convert(getAmount());
         }
-        return amount.multiply(conversionRate).divide(new BigDecimal(conversionRateBaseAmount));
+        return amountConverted;
     }
 
-    /**
-     * @param amountConverted the amountConverted to set
-     */
+    @Override
     public BigDecimal getSpread() {
-        if (buyerCurrency.equals(merchantCurrency)) {
-            return BigDecimal.ZERO;
+        if (null == spread) {
+            spread = buyerCurrency == merchantCurrency ? BigDecimal.ZERO : getPayout().subtract(getAmountConverted());
         }
-        return payout.subtract(getAmountConverted());
+        return spread;
     }
 
+    /**
+     * @return the tax amount
+     */
+    @Override
+    public BigDecimal getTaxAmount() {
+        return DECIMAL_SCALE == taxAmountScale ? taxAmountDecimal : BigDecimal.valueOf(taxAmount, taxAmountScale);
+    }
+
+    /**
+     * @param taxAmount the tax amount to set
+     */
     public void setTaxAmount(BigDecimal taxAmount) {
-        this.taxAmount = taxAmount;
+        if (null != taxAmount && MoneySum.isFixedPoint(taxAmount)) {
+            setTaxAmount(taxAmount.unscaledValue().longValue(), taxAmount.scale());
+        } else {
+            this.taxAmountScale = DECIMAL_SCALE;
+            this.taxAmountDecimal = taxAmount;
+            invalidateConverted();
+        }
     }
 
-    public BigDecimal getTaxAmount() {
-        return taxAmount;
+    /**
+     * Sets taxAmount as fixed point value.
+     *
+     * @param unscaled unscaled value
+     * @param scale    value scale (0 - 18)
+     */
+    public void setTaxAmount(long unscaled, int scale) {
+        this.taxAmount = unscaled;
+        this.taxAmountScale = scale;
+        this.taxAmountDecimal = null;
+        invalidateConverted();
+    }
+
+    @Override
+    public void addTaxAmountTo(MoneySum sum) {
+        if (DECIMAL_SCALE == taxAmountScale) {
+            sum.add(taxAmountDecimal);
+        } else {
+            sum.add(taxAmount, taxAmountScale);
+        }
     }
 
+    /**
+     * @return tax amount converted to merchant currency or null if tax amount is not set
+     */
+    @Override
     public BigDecimal getTaxAmountConverted() {
-        if (buyerCurrency.equals(merchantCurrency)) {
-            return taxAmount;
+        if (null == taxAmountConverted) {
+            taxAmountConverted = convert(getTaxAmount());
         }
-        return taxAmount.multiply(conversionRate).divide(new BigDecimal(conversionRateBaseAmount));
+        return taxAmountConverted;
+    }
+
+    private BigDecimal convert(BigDecimal value) {
+        if (null == value || buyerCurrency == merchantCurrency) {
+            return value;
+        }
+        return value.multiply(conversionRate).divide(new BigDecimal(conversionRateBaseAmount));
+    }
+
+    private void invalidateConverted() {
+        amountConverted = null;
+        spread = null;
+        taxAmountConverted = null;
     }
 
     private String id;
@@ -444,19 +682,32 @@ public class Transaction {
     private String taxType;
     private Type transactionType;
     private String refundType;
-    private String productName;
-    private String applicationId;
+    private int productName = StringDictionary.NULL;
+    private int applicationId = StringDictionary.NULL;
     private int productType;
-    private String skuId;
-    private String hardware;
-    private String buyerCountry;
+    private int skuId = StringDictionary.NULL;
+    private int hardware = StringDictionary.NULL;
+    private int buyerCountry = StringDictionary.NULL;
     private String buyerState;
     private String buyerPostalCode;
-    private String buyerCurrency;
-    private BigDecimal amount;
+    private int buyerCurrency = StringDictionary.NULL;
+    // monetary values are kept as unscaled long and scale, or as BigDecimal if scale is DECIMAL_SCALE
+    private long amount;
+    private int amountScale = DECIMAL_SCALE;
+    private BigDecimal amountDecimal;
     private BigDecimal conversionRate;
-    private String merchantCurrency;
-    private BigDecimal payout;
+    private int merchantCurrency = StringDictionary.NULL;
+    private long payout;
+    private int payoutScale = DECIMAL_SCALE;
+    private BigDecimal payoutDecimal;
     private int conversionRateBaseAmount;
-    private BigDecimal taxAmount;
+    private long taxAmount;
+    private int taxAmountScale = DECIMAL_SCALE;
+    private BigDecimal taxAmountDecimal;
+    // derived values, computed once and cleared when source values change
+    private BigDecimal amountConverted;
+    private BigDecimal spread;
+    private BigDecimal taxAmountConverted;
+
+    private static final int DECIMAL_SCALE = -1;
 }
@@ -0,0 +1,243 @@
+package com.bytestorm.isp;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Computes all aggregated data needed by output in single pass over transactions.
+ * <p/>
+ * Collects per SKU statistics, income and tax deduction totals, monthly pivot report, VAT collected per currency,
+ * summary sheet totals and amount precision of currencies, so output sheets don't have to iterate over transactions
+ * again. Transactions have to be added after exchange rates are applied.
+ * <p/>
+ * Pivot is either {@link MonthlyPivotReport} (transactions from single month) or {@link RevenueCube} rolled up to
+ * periods of requested granularity. Monthly pivot report may be built separately by multiple threads when aggregation
+ * is finished.
+ */
+public class TransactionAggregator {
+
+    /**
+     * @param euCurrencies codes of EU currencies in {@link Transaction#CURRENCIES} dictionary
+     * @param vat          true if transactions have tax amounts (VAT data is collected)
+     * @param granularity  pivot periods granularity or null for monthly pivot report
+     * @param pivotThreads number of threads building monthly pivot report, when more than one the report is built by
+     *                     {@link #finish(List)} instead of being summed up with other data
+     */
+    public TransactionAggregator(BitSet euCurrencies, boolean vat, RevenueCube.Granularity granularity,
+                                 int pivotThreads) {
+        this.euCurrencies = euCurrencies;
+        this.vat = vat;
+        this.granularity = granularity;
+        this.pivotThreads = pivotThreads;
+        this.monthlyPivot = null == granularity && pivotThreads <= 1 ? new MonthlyPivotReport() : null;
+        this.cube = null == granularity ? null : new RevenueCube();
+    }
+
+    /**
+     * Adds next transaction.
+     *
+     * @param t transaction, may be flyweight since it is not retained
+     */
+    public void add(TransactionRow t) {
+        final Transaction.Type type = t.getTransactionType();
+        final int currency = t.getBuyerCurrencyCode();
+        // per SKU statistics and totals
+        if (Transaction.Type.TAX == type) {
+            t.addPayoutTo(taxDeduction);
+        } else {
+            final String sku = t.getSkuId();
+            int[] counters = skuStats.get(sku);
+            if (null == counters) {
+                counters = new int[2];
+                skuStats.put(sku, counters);
+            }
+            if (Transaction.Type.CHARGE == type) {
+                ++counters[0];
+            } else if (Transaction.Type.REFUND == type) {
+                ++counters[1];
+            }
+        }
+        t.addPayoutTo(income);
+        // currency amounts precision
+        currencies.set(currency);
+        final BigDecimal amount = t.getAmount();
+        if (!amount.subtract(amount.setScale(0, RoundingMode.FLOOR)).equals(BigDecimal.ZERO)) {
+            fractionalCurrencies.set(currency);
+        }
+        if (null != cube) {
+            cube.add(t);
+        } else if (null != monthlyPivot) {
+            monthlyPivot.add(t);
+        }
+        // VAT
+        final boolean eu = euCurrencies.get(currency);
+        if (vat && Transaction.Type.CHARGE == type && eu) {
+            final String currencyName = t.getBuyerCurrency();
+            MoneySum[] collected = vatCollected.get(currencyName);
+            if (null == collected) {
+                collected = new MoneySum[]{new MoneySum(), new MoneySum()};
+                vatCollected.put(currencyName, collected);
+            }
+            t.addTaxAmountTo(collected[0]);
+            collected[1].add(t.getTaxAmountConverted());
+        }
+        // summary
+        if (null == t.getId()) {
+            t.addPayoutTo(noIdPayout);
+            t.addPayoutTo(totalConverted);
+        } else {
+            if (eu) {
+                t.addPayoutTo(euPayout);
+                if (vat && Transaction.Type.CHARGE == type) {
+                    totalVat.add(t.getTaxAmountConverted());
+                }
+            }
+            totalConverted.add(t.getAmountConverted());
+        }
+    }
+
+    /**
+     * Completes aggregation after last transaction was added.
+     *
+     * @param transactions all added transactions, used only to build monthly pivot report by multiple threads
+     *
+     * @return this aggregator
+     *
+     * @throws IllegalArgumentException if no transaction was added
+     */
+    public TransactionAggregator finish(List<? extends TransactionRow> transactions) {
+        if (null != cube) {
+            pivot = cube.getPivot(granularity);
+        } else if (null != monthlyPivot) {
+            monthlyPivot.finish();
+            pivot = monthlyPivot;
+        } else {
+            pivot = MonthlyPivotReport.build(transactions, pivotThreads);
+        }
+        return this;
+    }
+
+    /**
+     * @return SKUs of all non tax transactions
+     */
+    public Set<String> getSkus() {
+        return skuStats.keySet();
+    }
+
+    /**
+     * @return number of charges of given SKU
+     */
+    public int getSells(String sku) {
+        return skuStats.get(sku)[0];
+    }
+
+    /**
+     * @return number of refunds of given SKU
+     */
+    public int getRefunds(String sku) {
+        return skuStats.get(sku)[1];
+    }
+
+    /**
+     * @return total payout of all transactions
+     */
+    public BigDecimal getIncome() {
+        return income.toBigDecimal();
+    }
+
+    /**
+     * @return total payout of tax transactions
+     */
+    public BigDecimal getTaxDeduction() {
+        return taxDeduction.toBigDecimal();
+    }
+
+    /**
+     * @return total payout of entries without id (tax deductions)
+     */
+    public BigDecimal getNoIdPayout() {
+        return noIdPayout.toBigDecimal();
+    }
+
+    /**
+     * @return total payout of transactions in EU currencies
+     */
+    public BigDecimal getEuPayout() {
+        return euPayout.toBigDecimal();
+    }
+
+    /**
+     * @return total of amounts converted using NBP rates (entries without id are counted with payout)
+     */
+    public BigDecimal getTotalConverted() {
+        return totalConverted.toBigDecimal();
+    }
+
+    /**
+     * @return total VAT collected converted using NBP rates
+     */
+    public BigDecimal getTotalVat() {
+        return totalVat.toBigDecimal();
+    }
+
+    /**
+     * @return VAT collected per EU currency (sorted by currency), as pair of amount in buyer currency and amount
+     * converted using NBP rates
+     */
+    public Map<String, MoneySum[]> getVatCollected() {
+        return vatCollected;
+    }
+
+    /**
+     * @return codes of all buyer currencies
+     */
+    public BitSet getCurrencies() {
+        return currencies;
+    }
+
+    /**
+     * @return codes of buyer currencies with fractional amounts
+     */
+    public BitSet getFractionalCurrencies() {
+        return fractionalCurrencies;
+    }
+
+    /**
+     * @return pivot report, available after {@link #finish(List)}
+     */
+    public PivotReport getPivot() {
+        return pivot;
+    }
+
+    /**
+     * @return revenue cube or null if monthly pivot report is used
+     */
+    public RevenueCube getCube() {
+        return cube;
+    }
+
+    private final BitSet euCurrencies;
+    private final boolean vat;
+    // SKU to sells and refunds count
+    private final HashMap<String, int[]> skuStats = new HashMap<>();
+    private final MoneySum income = new MoneySum();
+    private final MoneySum taxDeduction = new MoneySum();
+    private final MoneySum noIdPayout = new MoneySum();
+    private final MoneySum euPayout = new MoneySum();
+    private final MoneySum totalConverted = new MoneySum();
+    private final MoneySum totalVat = new MoneySum();
+    private final TreeMap<String, MoneySum[]> vatCollected = new TreeMap<>();
+    private final BitSet currencies = new BitSet();
+    private final BitSet fractionalCurrencies = new BitSet();
+    private final RevenueCube.Granularity granularity;
+    private final int pivotThreads;
+    private final MonthlyPivotReport monthlyPivot;
+    private final RevenueCube cube;
+    private PivotReport pivot;
+}
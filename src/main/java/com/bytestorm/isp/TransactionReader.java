@@ -0,0 +1,25 @@
+package com.bytestorm.isp;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Earnings report reader.
+ */
+public interface TransactionReader extends Closeable {
+
+    /**
+     * @return next transaction or null if end of report was reached
+     */
+    public Transaction read() throws IOException;
+
+    /**
+     * @return number of last read row (header row included)
+     */
+    public int getRowNumber();
+
+    /**
+     * @return raw content of last read row
+     */
+    public String getUntokenizedRow();
+}
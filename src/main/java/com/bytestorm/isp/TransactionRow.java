@@ -0,0 +1,61 @@
+package com.bytestorm.isp;
+
+import java.math.BigDecimal;
+import java.util.Date;
+
+/**
+ * Read only view of transaction data used by output sheets builders.
+ */
+public interface TransactionRow {
+
+    public String getId();
+
+    public Date getDate();
+
+    public Transaction.Type getTransactionType();
+
+    public String getProductName();
+
+    public String getSkuId();
+
+    public String getBuyerCountry();
+
+    public String getBuyerCurrency();
+
+    /**
+     * @return buyer currency code in {@link Transaction#CURRENCIES} dictionary
+     */
+    public int getBuyerCurrencyCode();
+
+    public String getMerchantCurrency();
+
+    public BigDecimal getAmount();
+
+    public BigDecimal getPayout();
+
+    public BigDecimal getTaxAmount();
+
+    /**
+     * Adds amount to sum without creating BigDecimal when possible.
+     */
+    public void addAmountTo(MoneySum sum);
+
+    public void addPayoutTo(MoneySum sum);
+
+    public void addTaxAmountTo(MoneySum sum);
+
+    /**
+     * @return amount converted to merchant currency using NBP rate
+     */
+    public BigDecimal getAmountConverted();
+
+    /**
+     * @return difference between payout and amount converted using NBP rate
+     */
+    public BigDecimal getSpread();
+
+    /**
+     * @return tax amount converted to merchant currency using NBP rate
+     */
+    public BigDecimal getTaxAmountConverted();
+}
@@ -0,0 +1,174 @@
+package com.bytestorm.isp;
+
+import com.bytestorm.utils.Log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Stable ordering of transactions by date.
+ * <p/>
+ * Result is always the same as result of stable comparator sort of all runs concatenated, but comparator sort is used
+ * only as a fallback. When every run (transactions of single report) is already ordered runs are k-way merged,
+ * otherwise transactions are counting sorted into day buckets (UTC days, a report spans a month at most) and only
+ * buckets which are not ordered yet are sorted.
+ */
+public class TransactionSorter {
+
+    /**
+     * @param runs transactions lists in input order, transactions with equal date keep this order
+     *
+     * @return all transactions ordered by date
+     */
+    public static ArrayList<Transaction> sortByDate(List<? extends List<Transaction>> runs) {
+        int size = 0;
+        boolean presorted = true;
+        final long[][] times = new long[runs.size()][];
+        for (int r = 0; r < times.length; r++) {
+            final List<Transaction> run = runs.get(r);
+            times[r] = new long[run.size()];
+            for (int i = 0; i < times[r].length; i++) {
+                times[r][i] = run.get(i).getDate().getTime();
+                presorted &= 0 == i || times[r][i - 1] <= times[r][i];
+            }
+            size += times[r].length;
+        }
+        final Transaction[] out;
+        if (presorted) {
+            Log.v("Merging " + runs.size() + " ordered transaction runs");
+            out = merge(runs, times, size);
+        } else {
+            out = sortByDay(runs, times, size);
+        }
+        return new ArrayList<>(Arrays.asList(out));
+    }
+
+    /**
+     * K-way merge of ordered runs, on equal dates transaction from earlier run goes first.
+     */
+    private static Transaction[] merge(List<? extends List<Transaction>> runs, long[][] times, int size) {
+        final Transaction[] out = new Transaction[size];
+        // binary heap of runs with remaining transactions ordered by date of next transaction and run index
+        final int[] heap = new int[runs.size()];
+        final int[] next = new int[runs.size()];
+        int heapSize = 0;
+        for (int r = 0; r < heap.length; r++) {
+            if (times[r].length > 0) {
+                heap[heapSize++] = r;
+            }
+        }
+        for (int i = heapSize / 2 - 1; i >= 0; i--) {
+            siftDown(heap, heapSize, i, times, next);
+        }
+        for (int pos = 0; heapSize > 0; pos++) {
+            final int r = heap[0];
+            out[pos] = runs.get(r).get(next[r]++);
+            if (next[r] == times[r].length) {
+                heap[0] = heap[--heapSize];
+            }
+            siftDown(heap, heapSize, 0, times, next);
+        }
+        return out;
+    }
+
+    private static void siftDown(int[] heap, int heapSize, int i, long[][] times, int[] next) {
+        while (true) {
+            int min = i;
+            final int left = 2 * i + 1;
+            final int right = left + 1;
+            if (left < heapSize && isBefore(heap[left], heap[min], times, next)) {
+                min = left;
+            }
+            if (right < heapSize && isBefore(heap[right], heap[min], times, next)) {
+                min = right;
+            }
+            if (min == i) {
+                return;
+            }
+            final int tmp = heap[i];
+            heap[i] = heap[min];
+            heap[min] = tmp;
+            i = min;
+        }
+    }
+
+    private static boolean isBefore(int a, int b, long[][] times, int[] next) {
+        final long timeA = times[a][next[a]];
+        final long timeB = times[b][next[b]];
+        return timeA < timeB || (timeA == timeB && a < b);
+    }
+
+    /**
+     * Stable counting sort by day followed by sorting of unordered day buckets.
+     */
+    private static Transaction[] sortByDay(List<? extends List<Transaction>> runs, long[][] times, int size) {
+        long minDay = Long.MAX_VALUE;
+        long maxDay = Long.MIN_VALUE;
+        for (long[] runTimes : times) {
+            for (long time : runTimes) {
+                final long day = toDay(time);
+                minDay = Math.min(minDay, day);
+                maxDay = Math.max(maxDay, day);
+            }
+        }
+        final Transaction[] out = new Transaction[size];
+        if (0 == size || maxDay - minDay >= MAX_BUCKETS) {
+            Log.v("Sorting transactions by date");
+            int pos = 0;
+            for (List<Transaction> run : runs) {
+                for (Transaction t : run) {
+                    out[pos++] = t;
+                }
+            }
+            Arrays.sort(out, DATE_ORDER);
+            return out;
+        }
+        Log.v("Sorting transactions into " + (maxDay - minDay + 1) + " day buckets");
+        // bucket b holds transactions out[offsets[b]] - out[offsets[b + 1] - 1]
+        final int[] offsets = new int[(int) (maxDay - minDay) + 2];
+        for (long[] runTimes : times) {
+            for (long time : runTimes) {
+                ++offsets[(int) (toDay(time) - minDay) + 1];
+            }
+        }
+        for (int b = 1; b < offsets.length; b++) {
+            offsets[b] += offsets[b - 1];
+        }
+        final int[] fill = Arrays.copyOf(offsets, offsets.length - 1);
+        final long[] outTimes = new long[size];
+        for (int r = 0; r < times.length; r++) {
+            final List<Transaction> run = runs.get(r);
+            for (int i = 0; i < times[r].length; i++) {
+                final int pos = fill[(int) (toDay(times[r][i]) - minDay)]++;
+                out[pos] = run.get(i);
+                outTimes[pos] = times[r][i];
+            }
+        }
+        for (int b = 0; b < offsets.length - 1; b++) {
+            for (int i = offsets[b] + 1; i < offsets[b + 1]; i++) {
+                if (outTimes[i - 1] > outTimes[i]) {
+                    Arrays.sort(out, offsets[b], offsets[b + 1], DATE_ORDER);
+                    break;
+                }
+            }
+        }
+        return out;
+    }
+
+    private static long toDay(long millis) {
+        return millis >= 0 ? millis / MILLIS_PER_DAY : (millis + 1) / MILLIS_PER_DAY - 1;
+    }
+
+    private static final Comparator<Transaction> DATE_ORDER = new Comparator<Transaction>() {
+        @Override
+        public int compare(Transaction o1, Transaction o2) {
+            return Long.compare(o1.getDate().getTime(), o2.getDate().getTime());
+        }
+    };
+
+    // reports spanning more days are sorted with comparator
+    private static final int MAX_BUCKETS = 4 * 366;
+    private static final long MILLIS_PER_DAY = 24 * 60 * 60 * 1000L;
+}
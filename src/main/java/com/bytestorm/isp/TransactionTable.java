@@ -0,0 +1,366 @@
+package com.bytestorm.isp;
+
+import java.math.BigDecimal;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+
+/**
+ * Column oriented transaction storage.
+ * <p/>
+ * Transactions are kept as set of primitive arrays (dates, enum ordinals, decimal unscaled values and scales, order
+ * ids encoded by {@link OrderIndex}) and string columns as codes of {@link Transaction} dictionaries, which takes
+ * fraction of memory used by {@link Transaction} beans and keeps each column data contiguous. Rare values which don't
+ * fit in primitive columns are stored in sparse columns. Rows are accessed through {@link Cursor} flyweight, iterator
+ * returns the same cursor instance moved to the next row, so returned rows must not be retained. {@link #get(int)}
+ * returns new cursor, so table may be read by multiple threads.
+ * <p/>
+ * Table is filled from transactions after sales reports are matched and exchange rates are applied (both update
+ * transactions), so output sheets and aggregated data are built from table after transactions are released.
+ */
+public class TransactionTable extends AbstractList<TransactionRow> implements RandomAccess {
+
+    /**
+     * Movable view of single table row.
+     */
+    public class Cursor implements TransactionRow {
+
+        private Cursor() {
+        }
+
+        /**
+         * Moves cursor to given row.
+         *
+         * @param row row index
+         *
+         * @return this cursor
+         */
+        public Cursor moveTo(int row) {
+            if (row < 0 || row >= size) {
+                throw new IndexOutOfBoundsException("Row " + row + " size " + size);
+            }
+            this.row = row;
+            return this;
+        }
+
+        /**
+         * @return index of current row
+         */
+        public int getRow() {
+            return row;
+        }
+
+        @Override
+        public String getId() {
+            final long id = ids[row];
+            if (id >= 0) {
+                return OrderIndex.decode(id);
+            }
+            return OTHER_ID == id ? otherIds.get(row) : null;
+        }
+
+        @Override
+        public Date getDate() {
+            return new Date(dates[row]);
+        }
+
+        @Override
+        public Transaction.Type getTransactionType() {
+            final byte type = types[row];
+            return type < 0 ? null : TYPES[type];
+        }
+
+        @Override
+        public String getProductName() {
+            return productNames.get(row);
+        }
+
+        @Override
+        public String getSkuId() {
+            return skuIds.get(row);
+        }
+
+        @Override
+        public String getBuyerCountry() {
+            return buyerCountries.get(row);
+        }
+
+        @Override
+        public String getBuyerCurrency() {
+            return buyerCurrencies.get(row);
+        }
+
+        @Override
+        public int getBuyerCurrencyCode() {
+            return buyerCurrencies.codes[row];
+        }
+
+        @Override
+        public String getMerchantCurrency() {
+            return merchantCurrencies.get(row);
+        }
+
+        @Override
+        public BigDecimal getAmount() {
+            return amounts.get(row);
+        }
+
+        @Override
+        public BigDecimal getPayout() {
+            return payouts.get(row);
+        }
+
+        @Override
+        public BigDecimal getTaxAmount() {
+            return taxAmounts.get(row);
+        }
+
+        @Override
+        public void addAmountTo(MoneySum sum) {
+            amounts.addTo(row, sum);
+        }
+
+        @Override
+        public void addPayoutTo(MoneySum sum) {
+            payouts.addTo(row, sum);
+        }
+
+        @Override
+        public void addTaxAmountTo(MoneySum sum) {
+            taxAmounts.addTo(row, sum);
+        }
+
+        @Override
+        public BigDecimal getAmountConverted() {
+            return amountsConverted.get(row);
+        }
+
+        @Override
+        public BigDecimal getSpread() {
+            return spreads.get(row);
+        }
+
+        @Override
+        public BigDecimal getTaxAmountConverted() {
+            return taxAmountsConverted.get(row);
+        }
+
+        private int row;
+    }
+
+    /**
+     * Creates table with copy of transactions data, converted values are stored as computed by transactions so
+     * converted values have to be computed before.
+     *
+     * @param transactions transactions to store
+     */
+    public TransactionTable(List<Transaction> transactions) {
+        size = transactions.size();
+        ids = new long[size];
+        dates = new long[size];
+        types = new byte[size];
+        productNames = new StringColumn(Transaction.PRODUCT_NAMES, size);
+        skuIds = new StringColumn(Transaction.SKUS, size);
+        buyerCountries = new StringColumn(Transaction.COUNTRIES, size);
+        buyerCurrencies = new StringColumn(Transaction.CURRENCIES, size);
+        merchantCurrencies = new StringColumn(Transaction.CURRENCIES, size);
+        amounts = new DecimalColumn(size);
+        payouts = new DecimalColumn(size);
+        taxAmounts = new DecimalColumn(size);
+        amountsConverted = new DecimalColumn(size);
+        spreads = new DecimalColumn(size);
+        taxAmountsConverted = new DecimalColumn(size);
+        int row = 0;
+        for (Transaction t : transactions) {
+            final String id = t.getId();
+            ids[row] = null == id ? NULL_ID : OrderIndex.encode(id);
+            if (ids[row] < 0 && null != id) {
+                ids[row] = OTHER_ID;
+                otherIds.put(row, id);
+            }
+            dates[row] = t.getDate().getTime();
+            types[row] = null == t.getTransactionType() ? -1 : (byte) t.getTransactionType().ordinal();
+            productNames.codes[row] = t.getProductNameCode();
+            skuIds.codes[row] = t.getSkuIdCode();
+            buyerCountries.codes[row] = t.getBuyerCountryCode();
+            buyerCurrencies.codes[row] = t.getBuyerCurrencyCode();
+            merchantCurrencies.codes[row] = t.getMerchantCurrencyCode();
+            amounts.set(row, t.getAmount());
+            payouts.set(row, t.getPayout());
+            taxAmounts.set(row, t.getTaxAmount());
+            amountsConverted.set(row, t.getAmountConverted());
+            spreads.set(row, t.getSpread());
+            taxAmountsConverted.set(row, t.getTaxAmountConverted());
+            ++row;
+        }
+    }
+
+    /**
+     * @return number of rows
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return new cursor positioned at given row
+     */
+    @Override
+    public TransactionRow get(int row) {
+        return new Cursor().moveTo(row);
+    }
+
+    /**
+     * @return new cursor, positioned at first row
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    @Override
+    public Iterator<TransactionRow> iterator() {
+        return new Iterator<TransactionRow>() {
+            @Override
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            @Override
+            public TransactionRow next() {
+                if (next >= size) {
+                    throw new NoSuchElementException();
+                }
+                return cursor.moveTo(next++);
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+
+            private final Cursor cursor = new Cursor();
+            private int next;
+        };
+    }
+
+    /**
+     * Values of few rows, rows have to be set in increasing order.
+     */
+    private static class SparseColumn<T> {
+
+        void put(int row, T value) {
+            if (count == rows.length) {
+                rows = Arrays.copyOf(rows, Math.max(8, 2 * count));
+                values = Arrays.copyOf(values, rows.length);
+            }
+            rows[count] = row;
+            values[count] = value;
+            ++count;
+        }
+
+        @SuppressWarnings("unchecked")
+        T get(int row) {
+            final int index = Arrays.binarySearch(rows, 0, count, row);
+            return index < 0 ? null : (T) values[index];
+        }
+
+        private int[] rows = new int[0];
+        private Object[] values = new Object[0];
+        private int count;
+    }
+
+    /**
+     * String column stored as dictionary codes.
+     */
+    private static class StringColumn {
+
+        StringColumn(StringDictionary dictionary, int size) {
+            this.dictionary = dictionary;
+            this.codes = new int[size];
+        }
+
+        String get(int row) {
+            return dictionary.decode(codes[row]);
+        }
+
+        final StringDictionary dictionary;
+        final int[] codes;
+    }
+
+    /**
+     * Decimal column stored as unscaled values and scales, values not fitting in long are kept aside.
+     */
+    private static class DecimalColumn {
+
+        DecimalColumn(int size) {
+            unscaled = new long[size];
+            scales = new byte[size];
+        }
+
+        void set(int row, BigDecimal value) {
+            if (null == value) {
+                scales[row] = NULL_SCALE;
+            } else if (value.unscaledValue().bitLength() < 64 && value.scale() > NULL_SCALE && value.scale() < OVERFLOW_SCALE) {
+                unscaled[row] = value.unscaledValue().longValue();
+                scales[row] = (byte) value.scale();
+            } else {
+                scales[row] = OVERFLOW_SCALE;
+                overflow.put(row, value);
+            }
+        }
+
+        BigDecimal get(int row) {
+            final byte scale = scales[row];
+            if (NULL_SCALE == scale) {
+                return null;
+            }
+            if (OVERFLOW_SCALE == scale) {
+                return overflow.get(row);
+            }
+            return BigDecimal.valueOf(unscaled[row], scale);
+        }
+
+        void addTo(int row, MoneySum sum) {
+            final byte scale = scales[row];
+            if (NULL_SCALE == scale || OVERFLOW_SCALE == scale) {
+                sum.add(get(row));
+            } else {
+                sum.add(unscaled[row], scale);
+            }
+        }
+
+        final long[] unscaled;
+        final byte[] scales;
+        final SparseColumn<BigDecimal> overflow = new SparseColumn<>();
+
+        private static final byte NULL_SCALE = Byte.MIN_VALUE;
+        private static final byte OVERFLOW_SCALE = Byte.MAX_VALUE;
+    }
+
+    private final int size;
+    // encoded order ids, NULL_ID or OTHER_ID
+    private final long[] ids;
+    private final SparseColumn<String> otherIds = new SparseColumn<>();
+    private final long[] dates;
+    private final byte[] types;
+    private final StringColumn productNames;
+    private final StringColumn skuIds;
+    private final StringColumn buyerCountries;
+    private final StringColumn buyerCurrencies;
+    private final StringColumn merchantCurrencies;
+    private final DecimalColumn amounts;
+    private final DecimalColumn payouts;
+    private final DecimalColumn taxAmounts;
+    private final DecimalColumn amountsConverted;
+    private final DecimalColumn spreads;
+    private final DecimalColumn taxAmountsConverted;
+
+    private static final Transaction.Type[] TYPES = Transaction.Type.values();
+    private static final long NULL_ID = -1;
+    private static final long OTHER_ID = -2;
+}
@@ -2,6 +2,7 @@ package com.bytestorm.isp;
 
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -55,6 +56,82 @@ public class ZipUtils {
         }
     }
 
+    /**
+     * Opens single file packed in zip archive for reading, archive is closed together with returned stream.
+     */
+    public static InputStream openSingleEntry(File zipFile) throws IOException {
+        final ZipFile zip = new ZipFile(zipFile);
+        try {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            if (!entries.hasMoreElements()) {
+                throw new IOException("Zip with one file expected (empty found)");
+            }
+            ZipEntry entry = entries.nextElement();
+            if (entries.hasMoreElements()) {
+                throw new IOException("Zip with one file expected (more entries found)");
+            }
+            return new FilterInputStream(zip.getInputStream(entry)) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        zip.close();
+                    }
+                }
+            };
+        } catch (IOException e) {
+            zip.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens single file packed in zip stream for reading, data is inflated while read. Presence of other entries
+     * is verified when end of file data is reached.
+     */
+    public static InputStream openSingleEntry(InputStream zipStream) throws IOException {
+        final ZipInputStream zip = new ZipInputStream(zipStream);
+        try {
+            if (null == zip.getNextEntry()) {
+                throw new IOException("Zip with one file expected (empty found)");
+            }
+        } catch (IOException e) {
+            zip.close();
+            throw e;
+        }
+        return new FilterInputStream(zip) {
+            @Override
+            public int read() throws IOException {
+                final int b = super.read();
+                if (b < 0) {
+                    checkEnd();
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                final int read = super.read(b, off, len);
+                if (read < 0) {
+                    checkEnd();
+                }
+                return read;
+            }
+
+            private void checkEnd() throws IOException {
+                if (!verified) {
+                    verified = true;
+                    if (null != zip.getNextEntry()) {
+                        throw new IOException("Zip with one file expected (more entries found)");
+                    }
+                }
+            }
+
+            private boolean verified;
+        };
+    }
+
     private ZipUtils() {
     }
 }
@@ -0,0 +1,151 @@
+package com.bytestorm.isp;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CsvSplitterTest {
+
+    private static final String ROWS =
+            "GPA.1234-5678-9012-34567,\"Jun 1, 2015\",1:02:03 AM,,Charge,,\"Title, with comma\",com.app,0," +
+            "sku1,phone,PL,,,PLN,\"1,234.50\",1.000000,PLN,1234.50\r\n" +
+            "GPA.1234-5678-9012-34568..0,\"Jun 30, 2015\",11:59:59 PM,VAT,Charge,,\"Multi\r\nline \"\"title\"\"\"," +
+            "com.app,1,sku2,,US,CA,90210,USD,0.99,3.812345,PLN,3.77\n" +
+            "\n" +
+            "GPA.1234-5678-9012-34569,\"Jun 2, 2015\",1:02:03 PM,,Charge,,\"\"\"\n\n\"\",\r\n\",com.app,0," +
+            "sku1,,DE,,,EUR,1.00,4.1,PLN,4.10\r\n" +
+            "\r\n" +
+            "GPA.1234-5678-9012-34570,\"Jun 3, 2015\",1:02:03 PM,,Google fee,,\"\"\"\",com.app,0," +
+            "sku1,,DE,,,EUR,-0.30,4.1,PLN,-1.23\n" +
+            ",\"Jun 15, 2015\",12:30:00 PM,,Tax,,Zażółć,com.app,,sku3,,DE,,,EUR,12.123,4.1,PLN,0.0000";
+
+    private static final String INVALID_ROW =
+            "GPA.1234-5678-9012-34571,\"Jun 4, 2015\",1:02:03 PM,,,,\"a\nb\",com.app,0,sku1,,DE,,,EUR,1.00,4.1,PLN,4.10\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void chunksParsedSameAsWholeFile() throws IOException {
+        for (String csv : new String[]{EarningsReportReaderTest.HEADER + ROWS, EarningsReportReaderTest.HEADER + ROWS + "\n",
+                EarningsReportReaderTest.HEADER + ROWS + "\r\n\r\n"}) {
+            final File file = write(csv);
+            final ReportSource source = ReportSource.forFile(file);
+            final List<String> expected = parse(source, new CsvSplitter.Chunk(0, file.length(), 0));
+            assertEquals(5, expected.size());
+            for (long chunkSize = 1; chunkSize <= file.length() + 1; chunkSize++) {
+                final List<CsvSplitter.Chunk> chunks = CsvSplitter.split(file, chunkSize);
+                assertTrue(chunks.get(0).isFirst());
+                final ArrayList<String> actual = new ArrayList<>();
+                long end = 0;
+                for (CsvSplitter.Chunk chunk : chunks) {
+                    assertEquals("Chunks are continuous", end, chunk.getStart());
+                    end = chunk.getEnd();
+                    actual.addAll(parse(source, chunk));
+                }
+                assertEquals(file.length(), end);
+                assertEquals("Chunk size " + chunkSize, expected, actual);
+            }
+        }
+    }
+
+    @Test
+    public void streamSplitSameAsFileSplit() throws IOException {
+        final String csv = EarningsReportReaderTest.HEADER + ROWS + "\r\n";
+        final File file = write(csv);
+        final ReportSource zip = ReportSource.forZip(zip(csv));
+        assertNull(zip.getFile());
+        for (long chunkSize = 1; chunkSize <= file.length() + 1; chunkSize++) {
+            final List<CsvSplitter.Chunk> expected = CsvSplitter.split(file, chunkSize);
+            try (CsvSplitter.Chunks chunks = CsvSplitter.open(zip, chunkSize)) {
+                for (CsvSplitter.Chunk e : expected) {
+                    final CsvSplitter.Chunk a = chunks.next();
+                    assertNotNull(a.getData());
+                    assertEquals(e.getStart(), a.getStart());
+                    assertEquals(e.getEnd(), a.getEnd());
+                    assertEquals(e.getRowsBefore(), a.getRowsBefore());
+                    assertEquals(parse(ReportSource.forFile(file), e), parse(zip, a));
+                }
+                assertNull(chunks.next());
+            }
+        }
+    }
+
+    @Test
+    public void emptyStreamIsSingleChunk() throws IOException {
+        try (CsvSplitter.Chunks chunks = CsvSplitter.open(ReportSource.forZip(zip("")), 10)) {
+            final CsvSplitter.Chunk chunk = chunks.next();
+            assertTrue(chunk.isFirst());
+            assertEquals(0, chunk.getEnd());
+            assertNull(chunks.next());
+        }
+    }
+
+    @Test
+    public void invalidRowNumberSameAsWholeFile() throws IOException {
+        final File file = write(EarningsReportReaderTest.HEADER + ROWS + "\n" + INVALID_ROW + ROWS);
+        final ReportSource source = ReportSource.forFile(file);
+        final String expected = parseError(source, CsvSplitter.split(file, 0));
+        assertTrue(expected, expected.startsWith("Invalid row 7 "));
+        for (long chunkSize = 1; chunkSize <= file.length(); chunkSize += 7) {
+            assertEquals(expected, parseError(source, CsvSplitter.split(file, chunkSize)));
+        }
+    }
+
+    private File write(String csv) throws IOException {
+        final File file = folder.newFile();
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(csv.getBytes(CsvTokenizer.CHARSET));
+        }
+        return file;
+    }
+
+    private File zip(String csv) throws IOException {
+        final File file = folder.newFile();
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file))) {
+            out.putNextEntry(new ZipEntry("report.csv"));
+            out.write(csv.getBytes(CsvTokenizer.CHARSET));
+        }
+        return file;
+    }
+
+    /**
+     * @return transactions and their row numbers
+     */
+    private static List<String> parse(ReportSource source, CsvSplitter.Chunk chunk) throws IOException {
+        final ArrayList<String> rows = new ArrayList<>();
+        try (TransactionReader reader = new EarningsReportReader(source.open(chunk), chunk.isFirst(), chunk.getRowsBefore(), ColumnProjection.all(Transaction.MAPPING))) {
+            for (Transaction t; null != (t = reader.read()); ) {
+                rows.add(reader.getRowNumber() + ": " + t);
+            }
+        }
+        return rows;
+    }
+
+    private static String parseError(ReportSource source, List<CsvSplitter.Chunk> chunks) {
+        try {
+            for (CsvSplitter.Chunk chunk : chunks) {
+                EarningsReport.parse(source, chunk, ColumnProjection.all(Transaction.MAPPING));
+            }
+            fail("Invalid row accepted");
+            return null;
+        } catch (IOException e) {
+            return e.getMessage();
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.bytestorm.isp;
+
+import org.junit.Test;
+import org.supercsv.io.CsvListReader;
+import org.supercsv.prefs.CsvPreference;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CsvTokenizerTest {
+
+    @Test
+    public void quotedFields() throws IOException {
+        assertSameAsSuperCsv("a,\"b,c\",\"d \"\"e\"\"\",,\"\"\n" +
+                "\"x\"\"\",y,\"\"\"z\"\"\"\n");
+    }
+
+    @Test
+    public void lineEndings() throws IOException {
+        assertSameAsSuperCsv("a,b\r\nc,d\re,f\n\r\ng,h");
+    }
+
+    @Test
+    public void newLinesInQuotedFields() throws IOException {
+        assertSameAsSuperCsv("1,\"multi\nline\",2\r\n" +
+                "3,\"crlf\r\ninside\",4\n" +
+                "5,\"cr\rinside\",6\n" +
+                "7,\"\n\n\",8\n");
+    }
+
+    @Test
+    public void emptyLinesAndColumns() throws IOException {
+        assertSameAsSuperCsv("\n\na,,b\n,\n\n,,\nc\n\n");
+    }
+
+    @Test
+    public void multiByteCharacters() throws IOException {
+        assertSameAsSuperCsv("zażółć,\"gęślą, jaźń\",€\n\"日本\",x\n");
+    }
+
+    @Test
+    public void randomData() throws IOException {
+        final Random random = new Random(1);
+        final String[] tokens = {"a", "bc", ",", "\"", "\"\"", "\n", "\r\n", "\r", " ", "ą"};
+        for (int i = 0; i < 500; i++) {
+            final StringBuilder csv = new StringBuilder();
+            final int rows = 1 + random.nextInt(10);
+            for (int r = 0; r < rows; r++) {
+                final int cols = 1 + random.nextInt(5);
+                for (int c = 0; c < cols; c++) {
+                    if (c > 0) {
+                        csv.append(',');
+                    }
+                    if (random.nextBoolean()) {
+                        // quoted field may contain anything
+                        csv.append('"');
+                        for (int k = random.nextInt(6); k > 0; k--) {
+                            final String token = tokens[random.nextInt(tokens.length)];
+                            csv.append("\"".equals(token) ? "\"\"" : token);
+                        }
+                        csv.append('"');
+                    } else {
+                        for (int k = random.nextInt(3); k > 0; k--) {
+                            csv.append(tokens[random.nextInt(2)]);
+                        }
+                    }
+                }
+                csv.append(random.nextBoolean() ? "\n" : "\r\n");
+            }
+            assertSameAsSuperCsv(csv.toString());
+        }
+    }
+
+    @Test
+    public void unterminatedQuote() throws IOException {
+        try (CsvTokenizer tokenizer = tokenizer("a,\"b\n", 16)) {
+            tokenizer.nextRow();
+            fail("Unterminated quoted column accepted");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void matches() throws IOException {
+        try (CsvTokenizer tokenizer = tokenizer("abc,\"a\"\"b\"\n", 16)) {
+            assertTrue(tokenizer.nextRow());
+            assertTrue(tokenizer.matches(0, "abc".getBytes(CsvTokenizer.CHARSET)));
+            assertFalse(tokenizer.matches(0, "ab".getBytes(CsvTokenizer.CHARSET)));
+            assertTrue(tokenizer.matches(1, "a\"b".getBytes(CsvTokenizer.CHARSET)));
+            assertFalse(tokenizer.nextRow());
+        }
+    }
+
+    private static void assertSameAsSuperCsv(String csv) throws IOException {
+        final List<List<String>> expected = new ArrayList<>();
+        try (CsvListReader reader = new CsvListReader(new StringReader(csv), CsvPreference.STANDARD_PREFERENCE)) {
+            for (List<String> row; null != (row = reader.read()); ) {
+                expected.add(row);
+            }
+        }
+        // small buffers exercise refills inside fields
+        for (int bufferSize : new int[]{1, 2, 3, 7, 64 * 1024}) {
+            final List<List<String>> actual = new ArrayList<>();
+            try (CsvTokenizer tokenizer = tokenizer(csv, bufferSize)) {
+                while (tokenizer.nextRow()) {
+                    final String[] row = new String[tokenizer.getColumnCount()];
+                    for (int i = 0; i < row.length; i++) {
+                        row[i] = tokenizer.getString(i);
+                    }
+                    actual.add(Arrays.asList(row));
+                }
+            }
+            assertEquals("Buffer size " + bufferSize + " data: " + csv, expected, actual);
+        }
+    }
+
+    private static CsvTokenizer tokenizer(String csv, int bufferSize) {
+        return new CsvTokenizer(new ByteArrayInputStream(csv.getBytes(CsvTokenizer.CHARSET)), bufferSize);
+    }
+}
@@ -0,0 +1,80 @@
+package com.bytestorm.isp;
+
+import org.junit.Test;
+import org.supercsv.cellprocessor.ParseBigDecimal;
+import org.supercsv.exception.SuperCsvCellProcessorException;
+import org.supercsv.util.CsvContext;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.text.DecimalFormatSymbols;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DecimalParserTest {
+
+    private static final ParseBigDecimal SUPER_CSV = new ParseBigDecimal(new DecimalFormatSymbols(Locale.US));
+
+    @Test
+    public void sameAsParseBigDecimal() {
+        final String[] values = {"0", "-0", "0.00", "-0.00", "1", "+1", "-1", "1.5", "-1.50", "1,234.50", "-1,234,567.891",
+                "1,2,3", ",1", "1,", "007", "0.007", ".5", "-.5", "5.", "999999999999999999", "-999999999999999999",
+                "1000000000000000000", "123456789012345678901.123", "0.000000000000000001", "0.0000000000000000001",
+                "1e3", "1E-3", "-1.5e+2", "", "-", "+", ".", "1.2.3", "1-", "--1", "+-1", "abc", " 1", "1 ", "0x10",
+                "١٢٣"};
+        for (String value : values) {
+            assertSame(value);
+        }
+    }
+
+    @Test
+    public void randomValues() {
+        final Random random = new Random(1);
+        final String chars = "0123456789,.-+e";
+        for (int i = 0; i < 100000; i++) {
+            final StringBuilder value = new StringBuilder();
+            for (int k = random.nextInt(24); k > 0; k--) {
+                // mostly digits
+                value.append(chars.charAt(random.nextInt(random.nextInt(4) > 0 ? 10 : chars.length())));
+            }
+            assertSame(value.toString());
+        }
+    }
+
+    @Test
+    public void scannedValue() {
+        final DecimalParser parser = new DecimalParser();
+        final byte[] data = "x-12,345.678y".getBytes(StandardCharsets.US_ASCII);
+        assertTrue(parser.parse(data, 1, data.length - 1));
+        assertEquals(-12345678L, parser.getUnscaled());
+        assertEquals(3, parser.getScale());
+        assertFalse(parser.parse("12345678901234567890"));
+        assertFalse(parser.parse("1e5"));
+    }
+
+    private static void assertSame(String value) {
+        BigDecimal expected;
+        try {
+            expected = (BigDecimal) SUPER_CSV.execute(value, new CsvContext(1, 1, 1));
+        } catch (SuperCsvCellProcessorException e) {
+            expected = null;
+        }
+        BigDecimal actual;
+        try {
+            actual = DecimalParser.parseBigDecimal(value);
+        } catch (NumberFormatException e) {
+            actual = null;
+        }
+        // equals compares scale as well
+        assertEquals("Value '" + value + "'", expected, actual);
+        final DecimalParser parser = new DecimalParser();
+        final byte[] data = value.getBytes(StandardCharsets.UTF_8);
+        if (parser.parse(data, 0, data.length)) {
+            assertEquals("Value '" + value + "'", expected, parser.toBigDecimal());
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.bytestorm.isp;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class DownloadSchedulerTest {
+
+    @Test
+    public void resultsInInputOrder() throws IOException {
+        final Random random = new Random(1);
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final ArrayList<TestDownload> downloads = new ArrayList<>();
+        final ArrayList<String> expected = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            // later downloads often finish first
+            downloads.add(new TestDownload("report" + i, random.nextInt(20), 0, running, maxRunning));
+            expected.add("report" + i);
+        }
+        assertEquals(expected, new DownloadScheduler(4, 0, 0).downloadAll(downloads));
+        assertTrue("Downloads in flight " + maxRunning.get(), maxRunning.get() <= 4);
+        for (TestDownload download : downloads) {
+            assertEquals(1, download.attempts.get());
+        }
+    }
+
+    @Test
+    public void noDownloads() throws IOException {
+        assertEquals(0, new DownloadScheduler(4, 0, 0).downloadAll(Collections.<TestDownload>emptyList()).size());
+    }
+
+    @Test
+    public void failedDownloadRetried() throws IOException {
+        final TestDownload download = new TestDownload("report", 0, 2, new AtomicInteger(), new AtomicInteger());
+        assertEquals(Collections.singletonList("report"),
+                new DownloadScheduler(2, 2, 1).downloadAll(Collections.singletonList(download)));
+        assertEquals(3, download.attempts.get());
+    }
+
+    @Test
+    public void failurePropagated() {
+        final List<TestDownload> downloads = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            // third and seventh download never succeed
+            downloads.add(new TestDownload("report" + i, 1, 2 == i % 4 ? Integer.MAX_VALUE : 0, new AtomicInteger(),
+                    new AtomicInteger()));
+        }
+        try {
+            new DownloadScheduler(3, 1, 1).downloadAll(downloads);
+            fail("Failed download not reported");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Download failed for:\n  report2: "));
+            assertTrue(e.getMessage(), e.getMessage().contains("\n  report6: "));
+            assertSame(downloads.get(2).failure, e.getCause());
+            assertEquals(1, e.getSuppressed().length);
+            assertSame(downloads.get(6).failure, e.getSuppressed()[0]);
+        }
+        for (int i = 0; i < downloads.size(); i++) {
+            // other downloads are completed, failed ones retried
+            assertEquals(2 == i % 4 ? 2 : 1, downloads.get(i).attempts.get());
+        }
+    }
+
+    /**
+     * Download returning its name after given delay, first given number of attempts fail.
+     */
+    private static class TestDownload implements DownloadScheduler.Download<String> {
+
+        TestDownload(String name, int delay, int failures, AtomicInteger running, AtomicInteger maxRunning) {
+            this.name = name;
+            this.delay = delay;
+            this.failures = failures;
+            this.running = running;
+            this.maxRunning = maxRunning;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public String download() throws IOException {
+            final int inFlight = running.incrementAndGet();
+            try {
+                for (int max; inFlight > (max = maxRunning.get()) && !maxRunning.compareAndSet(max, inFlight); ) {
+                    // retry update of maximum
+                }
+                Thread.sleep(delay);
+                if (attempts.incrementAndGet() <= failures) {
+                    failure = new IOException("Download of " + name + " failed");
+                    throw failure;
+                }
+                return name;
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            } finally {
+                running.decrementAndGet();
+            }
+        }
+
+        final AtomicInteger attempts = new AtomicInteger();
+        volatile IOException failure;
+        private final String name;
+        private final int delay;
+        private final int failures;
+        private final AtomicInteger running;
+        private final AtomicInteger maxRunning;
+    }
+}
@@ -0,0 +1,75 @@
+package com.bytestorm.isp;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class EarningsReportReaderTest {
+
+    static final String HEADER = "Description,Transaction Date,Transaction Time,Tax Type,Transaction Type," +
+            "Refund Type,Product Title,Product id,Product Type,Sku Id,Hardware,Buyer Country,Buyer State," +
+            "Buyer Postal Code,Buyer Currency,Amount (Buyer Currency),Currency Conversion Rate,Merchant Currency," +
+            "Amount (Merchant Currency)\r\n";
+
+    @Test
+    public void sameAsBeanReader() throws IOException {
+        assertSameAsBeanReader(HEADER +
+                "GPA.1234-5678-9012-34567,\"Jun 1, 2015\",1:02:03 AM,,Charge,,\"Title, with comma\",com.app,0," +
+                "sku1,phone,PL,,,PLN,\"1,234.50\",1.000000,PLN,1234.50\r\n" +
+                "GPA.1234-5678-9012-34567,\"Jun 1, 2015\",1:02:03 AM,,Google fee,,\"Title, with comma\",com.app,0," +
+                "sku1,phone,PL,,,PLN,-370.35,1.000000,PLN,-370.35\r\n" +
+                "GPA.1234-5678-9012-34568..0,\"Jun 30, 2015\",11:59:59 PM,VAT,Charge,,\"Multi\r\nline \"\"title\"\"\"," +
+                "com.app,1,sku2,,US,CA,90210,USD,0.99,3.812345,PLN,3.77\n" +
+                "GPA.1234-5678-9012-34568..0,\"Jun 30, 2015\",12:00:00 AM,,Charge refund,Full,\"Multi\r\nline " +
+                "\"\"title\"\"\",com.app,1,sku2,,US,CA,90210,USD,-0.99,3.812345,PLN,-3.77\n" +
+                "\n" +
+                ",\"Jun 15, 2015\",12:30:00 PM,,Tax,,Zażółć,com.app,,sku3,,DE,,,EUR,123456789012345678901.123,4.1," +
+                "PLN,0.0000\n");
+    }
+
+    @Test
+    public void invalidRow() throws IOException {
+        try (TransactionReader reader = new EarningsReportReader(stream(HEADER + "a,b,c\n"))) {
+            reader.read();
+            fail("Row with invalid columns count accepted");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    private static void assertSameAsBeanReader(String csv) throws IOException {
+        try (TransactionReader expected = new BeanTransactionReader(new StringReader(csv));
+             TransactionReader actual = new EarningsReportReader(stream(csv))) {
+            int rows = 0;
+            for (Transaction t; null != (t = expected.read()); ) {
+                final Transaction a = actual.read();
+                assertEquals(t.toString(), String.valueOf(a));
+                assertEquals(expected.getRowNumber(), actual.getRowNumber());
+                ++rows;
+            }
+            assertNull(actual.read());
+            assertEquals(5, rows);
+        }
+        // projected columns
+        final ColumnProjection projection = ColumnProjection.of(Transaction.MAPPING,
+                Arrays.asList("id", "date", "buyerCurrency", "amount"));
+        try (TransactionReader expected = new BeanTransactionReader(new StringReader(csv), projection);
+             TransactionReader actual = new EarningsReportReader(stream(csv), true, 0, projection)) {
+            for (Transaction t; null != (t = expected.read()); ) {
+                assertEquals(t.toString(), String.valueOf(actual.read()));
+            }
+            assertNull(actual.read());
+        }
+    }
+
+    private static ByteArrayInputStream stream(String csv) {
+        return new ByteArrayInputStream(csv.getBytes(CsvTokenizer.CHARSET));
+    }
+}
@@ -0,0 +1,82 @@
+package com.bytestorm.isp;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.Date;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Exchange of local copy of NBP tables (see test resources), rates of a day come from last tables published before it.
+ */
+public class ExchangeTest {
+
+    static final Date FROM = day(4);
+    static final Date TO = day(9);
+
+    @Test
+    public void ratesOfLastTablesBeforeDay() throws Exception {
+        for (int threads : new int[]{1, 4}) {
+            final Exchange exchange = new Exchange(FROM, TO, baseUrl(), threads);
+            exchange.download();
+            assertRates(exchange);
+        }
+    }
+
+    @Test
+    public void baseUrlWithoutTrailingSlash() throws Exception {
+        final String url = baseUrl();
+        final Exchange exchange = new Exchange(FROM, TO, url.substring(0, url.length() - 1), 2);
+        exchange.download();
+        assertRates(exchange);
+    }
+
+    @Test
+    public void unknownCurrency() throws Exception {
+        final Exchange exchange = new Exchange(FROM, TO, baseUrl(), 1);
+        exchange.download();
+        try {
+            exchange.getQuote(noon(5), "XYZ");
+            fail("Quote of unknown currency returned");
+        } catch (RuntimeException e) {
+            // expected
+        }
+    }
+
+    static void assertRates(Exchange exchange) {
+        final String[] usd = {"3.7200", "3.7300", "3.7400", "3.7400", "3.7400", "3.7500"};
+        final String[] eur = {"4.1000", "4.1500", "4.2000", "4.2000", "4.2000", "4.2000"};
+        final String[] jpy = {"3.0200", "3.0300", "3.0400", "3.0400", "3.0400", "3.0500"};
+        for (int i = 0; i < usd.length; i++) {
+            final Date date = noon(4 + i);
+            assertQuote(exchange.getQuote(date, "USD"), 1, usd[i]);
+            assertQuote(exchange.getQuote(date, "eur"), 1, eur[i]);
+            assertQuote(exchange.getQuote(date, "JPY"), 100, jpy[i]);
+            // B tables are published weekly
+            assertQuote(exchange.getQuote(date, "AFN"), 1, "0.0600");
+            assertQuote(exchange.getQuote(date, "AMD"), 100, "0.7900");
+        }
+    }
+
+    static String baseUrl() {
+        final String dir = ExchangeTest.class.getResource("/nbp/dir.txt").toString();
+        return dir.substring(0, dir.length() - "dir.txt".length());
+    }
+
+    private static void assertQuote(Exchange.Quote quote, int amount, String rate) {
+        assertEquals(amount, quote.getAmount());
+        assertEquals(new BigDecimal(rate), quote.getRate());
+    }
+
+    private static Date day(int day) {
+        return new DateTime(2015, 6, day, 0, 0, DateTimeZone.UTC).toDate();
+    }
+
+    private static Date noon(int day) {
+        return new DateTime(2015, 6, day, 12, 0, DateTimeZone.UTC).toDate();
+    }
+}
@@ -0,0 +1,108 @@
+package com.bytestorm.isp;
+
+import org.junit.Test;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class FastDateParserTest {
+
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+    @Test
+    public void datesSameAsSimpleDateFormat() throws ParseException {
+        for (boolean lenient : new boolean[]{true, false}) {
+            final FastDateParser parser = FastDateParser.forPattern(FastDateParser.DATE_PATTERN, lenient, Locale.US, UTC);
+            final SimpleDateFormat expected = format(FastDateParser.DATE_PATTERN, lenient, UTC);
+            // every day of years around leap years, memoized values are parsed twice
+            final Calendar calendar = Calendar.getInstance(UTC, Locale.US);
+            calendar.clear();
+            calendar.set(1999, Calendar.DECEMBER, 1);
+            final SimpleDateFormat formatter = format(FastDateParser.DATE_PATTERN, false, UTC);
+            for (int i = 0; i < 2 * 366 + 100; i++) {
+                final String value = formatter.format(calendar.getTime());
+                assertSame(expected, parser, value);
+                assertSame(expected, parser, value);
+                calendar.add(Calendar.DAY_OF_MONTH, 1);
+            }
+            final String[] values = {"Feb 29, 2015", "Feb 30, 2016", "Jan 32, 2015", "Jan 0, 2015", "Jun 1, 1899",
+                    "Jun 01, 2015", "June 1, 2015", "jun 1, 2015", "Jun 1 2015", "Jun 1, 15", "Jun 1, 20150", "Jun  1, 2015",
+                    "Jun 1, 2015 ", "Jun 1,2015", "Abc 1, 2015", "", "Jun", "Dec 31, 9999"};
+            for (String value : values) {
+                assertSame(expected, parser, value);
+            }
+        }
+    }
+
+    @Test
+    public void timesSameAsSimpleDateFormat() throws ParseException {
+        for (String zone : new String[]{"UTC", "Europe/Warsaw", "America/Los_Angeles"}) {
+            final TimeZone defaultZone = TimeZone.getDefault();
+            TimeZone.setDefault(TimeZone.getTimeZone(zone));
+            try {
+                final FastDateParser parser = FastDateParser.forPattern(FastDateParser.TIME_PATTERN, true, Locale.US, null);
+                final SimpleDateFormat expected = format(FastDateParser.TIME_PATTERN, true, null);
+                for (int second = 0; second < 24 * 60 * 60; second += 7) {
+                    final int hour = second / 3600 % 12;
+                    final String value = (0 == hour ? 12 : hour) + ":" + pad(second / 60 % 60) + ":" + pad(second % 60)
+                            + (second < 12 * 3600 ? " AM" : " PM");
+                    assertSame(expected, parser, value);
+                }
+                final String[] values = {"0:00:00 AM", "13:00:00 PM", "1:60:00 AM", "1:00:60 PM", "01:02:03 AM", "1:2:3 AM",
+                        "1:02:03 am", "1:02:03 XM", "1:02:03AM", "1:02:03 AM ", "12:00:00 PM", "12:00:00 AM", ""};
+                for (String value : values) {
+                    assertSame(expected, parser, value);
+                }
+            } finally {
+                TimeZone.setDefault(defaultZone);
+            }
+        }
+    }
+
+    @Test
+    public void unsupportedFormats() {
+        assertNull(FastDateParser.forPattern("yyyy-MM-dd", true, Locale.US, UTC));
+        assertNull(FastDateParser.forPattern(FastDateParser.DATE_PATTERN, true, new Locale("pl"), UTC));
+        assertNull(FastDateParser.forPattern(FastDateParser.DATE_PATTERN, true, Locale.US, TimeZone.getTimeZone("Europe/Warsaw")));
+    }
+
+    private static void assertSame(SimpleDateFormat expected, FastDateParser parser, String value) {
+        assertEquals("Value '" + value + "'", parse(expected, value), parse(parser, value));
+    }
+
+    private static Date parse(SimpleDateFormat format, String value) {
+        try {
+            return format.parse(value);
+        } catch (ParseException e) {
+            return null;
+        }
+    }
+
+    private static Date parse(FastDateParser parser, String value) {
+        try {
+            return parser.parse(value);
+        } catch (ParseException e) {
+            return null;
+        }
+    }
+
+    private static SimpleDateFormat format(String pattern, boolean lenient, TimeZone tz) {
+        final SimpleDateFormat format = new SimpleDateFormat(pattern, Locale.US);
+        format.setLenient(lenient);
+        if (null != tz) {
+            format.setTimeZone(tz);
+        }
+        return format;
+    }
+
+    private static String pad(int value) {
+        return value < 10 ? "0" + value : String.valueOf(value);
+    }
+}
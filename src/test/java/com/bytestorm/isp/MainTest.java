@@ -0,0 +1,167 @@
+package com.bytestorm.isp;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class MainTest {
+
+    private static final String HEADER = "Order Number,Order Charged Date,Order Charged Timestamp,Financial Status," +
+            "Device Model,Product Title,Product ID,Product Type,SKU ID,Currency of Sale,Item Price,Taxes Collected," +
+            "Charged Amount,City of Buyer,State of Buyer,Postal Code of Buyer,Country of Buyer\n";
+    private static final int CHARGES = 3000;
+    private static final int[] THREADS = {2, 3, 8};
+    private static final long[] CHUNK_SIZES = {0, 997, 64 * 1024};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void parallelJoinSameAsHashed() throws IOException {
+        final Random random = new Random(1);
+        final ReportSource[] reports = salesReports(random, false);
+        final List<String> expected = join(reports, true, 0, 0);
+        assertNull(expected.get(0));
+        assertEquals(expected, join(reports, false, 0, 0));
+        for (int threads : THREADS) {
+            for (long chunkSize : CHUNK_SIZES) {
+                assertEquals(expected, join(reports, true, threads, chunkSize));
+            }
+            assertEquals(expected, join(reports, false, threads, 0));
+        }
+    }
+
+    @Test
+    public void parallelJoinFailsSameAsHashed() throws IOException {
+        final Random random = new Random(2);
+        final ReportSource[] reports = salesReports(random, true);
+        final String expected = join(reports, true, 0, 0).get(0);
+        assertEquals("Some transaction were not matched with transaction from sales reports", expected);
+        for (int threads : THREADS) {
+            for (long chunkSize : CHUNK_SIZES) {
+                assertEquals(expected, join(reports, true, threads, chunkSize).get(0));
+            }
+        }
+    }
+
+    /**
+     * @return error message (or null) followed by tax amounts of transactions, each sale has distinct tax amount
+     */
+    private static List<String> join(ReportSource[] reports, boolean fastReader, int threads, long chunkSize) {
+        final List<Transaction> transactions = charges();
+        final SalesPrefilter filter = fastReader ? Main.createSalesFilter(transactions, -1) : null;
+        final ArrayList<String> out = new ArrayList<>();
+        try {
+            if (threads > 0) {
+                Main.joinSalesParallel(transactions, reports, fastReader, filter, threads, chunkSize);
+            } else {
+                Main.joinSalesHashed(transactions, reports, fastReader, filter);
+            }
+            out.add(null);
+            for (Transaction t : transactions) {
+                out.add(null == t.getTaxAmount() ? null : t.getTaxAmount().toPlainString());
+            }
+        } catch (IOException e) {
+            out.add(e.getMessage());
+        }
+        return out;
+    }
+
+    /**
+     * @return charges (with duplicated order ids) and refunds in the same order every time
+     */
+    private static List<Transaction> charges() {
+        final ArrayList<Transaction> transactions = new ArrayList<>();
+        for (int i = 0; i < CHARGES; i++) {
+            final Transaction t = new Transaction();
+            // every tenth charge has the same id as previous one
+            final int order = 0 == i % 10 && i > 0 ? i - 1 : i;
+            t.setId(orderId(order));
+            t.setTransactionType(0 == i % 7 ? Transaction.Type.REFUND : Transaction.Type.CHARGE);
+            t.setDate(new Date(1433116800000L));
+            t.setAmount(price(order));
+            t.setBuyerCurrency("EUR");
+            t.setBuyerCountry("DE");
+            transactions.add(t);
+        }
+        return transactions;
+    }
+
+    /**
+     * Creates sales reports, every charge has sale in one or more reports, sales with the same id are placed in the
+     * same and in different reports (and in different chunks).
+     */
+    private ReportSource[] salesReports(Random random, boolean missingSale) throws IOException {
+        final List<List<String>> rows = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            rows.add(new ArrayList<String>());
+        }
+        for (int i = 0; i < CHARGES; i++) {
+            // order of charge which isn't refund and doesn't share id
+            if (missingSale && 1501 == i) {
+                continue;
+            }
+            final int copies = 1 + random.nextInt(4);
+            for (int copy = 0; copy < copies; copy++) {
+                rows.get(random.nextInt(rows.size())).add(orderId(i) + "," + price(i));
+            }
+        }
+        for (List<String> report : rows) {
+            // sales of other months
+            for (int i = 0; i < 500; i++) {
+                report.add(orderId(CHARGES + random.nextInt(CHARGES)) + ",1.00");
+            }
+            Collections.shuffle(report, random);
+        }
+        final ReportSource[] reports = new ReportSource[rows.size()];
+        int tax = 0;
+        for (int i = 0; i < reports.length; i++) {
+            final StringBuilder csv = new StringBuilder(HEADER);
+            for (String row : rows.get(i)) {
+                final String[] sale = row.split(",");
+                csv.append(sale[0]).append(",\"Jun 1, 2015\",1433116800,Charged,phone,\"Title, long\",com.app,inapp,")
+                        .append("sku1,EUR,").append(sale[1]).append(',').append(BigDecimal.valueOf(++tax, 2))
+                        .append(",1.00,,,,DE\n");
+            }
+            // last report is zipped, it's split while inflated
+            final File file = folder.newFile();
+            if (reports.length - 1 == i) {
+                try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file))) {
+                    out.putNextEntry(new ZipEntry("sales.csv"));
+                    out.write(csv.toString().getBytes(CsvTokenizer.CHARSET));
+                }
+                reports[i] = ReportSource.forZip(file);
+            } else {
+                try (OutputStream out = new FileOutputStream(file)) {
+                    out.write(csv.toString().getBytes(CsvTokenizer.CHARSET));
+                }
+                reports[i] = ReportSource.forFile(file);
+            }
+        }
+        return reports;
+    }
+
+    private static String orderId(int i) {
+        return String.format("GPA.1234-5678-9012-%05d", i);
+    }
+
+    private static BigDecimal price(int i) {
+        return BigDecimal.valueOf(100 + i % 97, 2);
+    }
+}
@@ -0,0 +1,108 @@
+package com.bytestorm.isp;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MoneySumTest {
+
+    @After
+    public void disableVerify() {
+        MoneySum.setVerify(false);
+    }
+
+    @Test
+    public void keepsScaleOfBigDecimalSum() {
+        final MoneySum sum = new MoneySum();
+        sum.add(new BigDecimal("1.5"));
+        sum.add(new BigDecimal("-2.250"));
+        sum.add(3, 0);
+        assertTrue(sum.isFixedPoint());
+        assertEquals(new BigDecimal("2.250"), sum.toBigDecimal());
+        assertEquals(BigDecimal.ZERO, new MoneySum().toBigDecimal());
+    }
+
+    @Test
+    public void overflowFallsBackToBigDecimal() {
+        final MoneySum sum = new MoneySum();
+        sum.add(Long.MAX_VALUE, 0);
+        sum.add(1, 0);
+        assertFalse(sum.isFixedPoint());
+        assertEquals(BigDecimal.valueOf(Long.MAX_VALUE).add(BigDecimal.ONE), sum.toBigDecimal());
+        sum.add(new BigDecimal("-0.01"));
+        assertEquals(new BigDecimal("9223372036854775807.99"), sum.toBigDecimal());
+
+        final MoneySum negative = new MoneySum();
+        negative.add(Long.MIN_VALUE, 2);
+        negative.add(-1, 2);
+        assertFalse(negative.isFixedPoint());
+        assertEquals(BigDecimal.valueOf(Long.MIN_VALUE, 2).subtract(new BigDecimal("0.01")), negative.toBigDecimal());
+    }
+
+    @Test
+    public void rescaleOverflowFallsBackToBigDecimal() {
+        final MoneySum sum = new MoneySum();
+        sum.add(Long.MAX_VALUE / 10, 0);
+        // rescaling sum to 2 decimal places doesn't fit in long
+        sum.add(1, 2);
+        assertFalse(sum.isFixedPoint());
+        assertEquals(BigDecimal.valueOf(Long.MAX_VALUE / 10).add(new BigDecimal("0.01")), sum.toBigDecimal());
+    }
+
+    @Test
+    public void unsupportedValuesFallBackToBigDecimal() {
+        final MoneySum large = new MoneySum();
+        large.add(new BigDecimal("123456789012345678901234.5"));
+        assertFalse(large.isFixedPoint());
+        assertEquals(new BigDecimal("123456789012345678901234.5"), large.toBigDecimal());
+
+        final MoneySum negativeScale = new MoneySum();
+        negativeScale.add(new BigDecimal("1E+3"));
+        negativeScale.add(BigDecimal.ONE);
+        assertEquals(new BigDecimal("1E+3").add(BigDecimal.ONE), negativeScale.toBigDecimal());
+    }
+
+    @Test
+    public void addsOtherSums() {
+        final MoneySum fixed = new MoneySum();
+        fixed.add(new BigDecimal("1.25"));
+        final MoneySum big = new MoneySum();
+        big.add(Long.MAX_VALUE, 0);
+        big.add(Long.MAX_VALUE, 0);
+        final MoneySum sum = new MoneySum();
+        sum.add(fixed);
+        assertTrue(sum.isFixedPoint());
+        sum.add(big);
+        assertFalse(sum.isFixedPoint());
+        assertEquals(BigDecimal.valueOf(Long.MAX_VALUE).multiply(BigDecimal.valueOf(2)).add(new BigDecimal("1.25")),
+                sum.toBigDecimal());
+    }
+
+    @Test
+    public void randomSumsSameAsBigDecimal() {
+        MoneySum.setVerify(true);
+        final Random random = new Random(1);
+        for (int i = 0; i < 1000; i++) {
+            final MoneySum sum = new MoneySum();
+            BigDecimal expected = BigDecimal.ZERO;
+            for (int k = random.nextInt(50); k > 0; k--) {
+                final long unscaled = random.nextInt(4) > 0 ? random.nextInt(2000000) - 1000000 : random.nextLong();
+                final BigDecimal value = BigDecimal.valueOf(unscaled, random.nextInt(6));
+                expected = expected.add(value);
+                if (random.nextBoolean()) {
+                    sum.add(value);
+                } else {
+                    sum.add(value.unscaledValue().longValue(), value.scale());
+                }
+            }
+            // verify mode throws if fixed point result differs
+            assertEquals(expected, sum.toBigDecimal());
+        }
+    }
+}
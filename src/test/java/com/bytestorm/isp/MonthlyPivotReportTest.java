@@ -0,0 +1,231 @@
+package com.bytestorm.isp;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.LocalDate;
+import org.junit.After;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class MonthlyPivotReportTest {
+
+    private static final String[] ZONES = {"UTC", "Europe/Warsaw", "America/Los_Angeles"};
+    private static final String[] CURRENCIES = {"PLN", "EUR", "USD", "JPY", "KRW"};
+
+    private final TimeZone defaultZone = TimeZone.getDefault();
+    private final DateTimeZone defaultDateTimeZone = DateTimeZone.getDefault();
+
+    @After
+    public void restoreTimeZone() {
+        TimeZone.setDefault(defaultZone);
+        DateTimeZone.setDefault(defaultDateTimeZone);
+    }
+
+    @Test
+    public void summariesSameAsBaseline() {
+        for (String zone : ZONES) {
+            setTimeZone(zone);
+            final List<Transaction> transactions = randomTransactions(new Random(1), 2015, 6, 20000);
+            final Baseline expected = new Baseline(transactions);
+            assertSameAs(expected, new MonthlyPivotReport(transactions));
+            // report filled by aggregator
+            final MonthlyPivotReport incremental = new MonthlyPivotReport();
+            for (Transaction t : transactions) {
+                incremental.add(t);
+            }
+            incremental.finish();
+            assertSameAs(expected, incremental);
+        }
+    }
+
+    @Test
+    public void summariesOfFebruarySameAsBaseline() {
+        for (String zone : ZONES) {
+            setTimeZone(zone);
+            final List<Transaction> transactions = randomTransactions(new Random(2), 2016, 2, 3000);
+            assertSameAs(new Baseline(transactions), new MonthlyPivotReport(transactions));
+        }
+    }
+
+    @Test
+    public void parallelBuildSameAsSequential() {
+        for (String zone : ZONES) {
+            setTimeZone(zone);
+            // several fork/join ranges per thread
+            final List<Transaction> transactions = randomTransactions(new Random(3), 2015, 7, 200000);
+            final MonthlyPivotReport sequential = new MonthlyPivotReport(transactions);
+            final Baseline expected = new Baseline(transactions);
+            for (int threads : new int[]{1, 2, 3, 4, 8}) {
+                final MonthlyPivotReport parallel = MonthlyPivotReport.build(transactions, threads);
+                assertSameAs(expected, parallel);
+                assertArrayEquals(sequential.getCurrencies(), parallel.getCurrencies());
+                assertSameSummary(sequential.getSummary(), parallel.getSummary());
+                for (String currency : sequential.getCurrencies()) {
+                    assertSameSummary(sequential.getCurrencySummary(currency), parallel.getCurrencySummary(currency));
+                }
+                for (Date day : sequential.getDays()) {
+                    assertSameSummary(sequential.getDaySummary(day), parallel.getDaySummary(day));
+                    for (String currency : sequential.getCurrencies()) {
+                        assertSameSummary(sequential.getDayCurrencySummary(day, currency),
+                                parallel.getDayCurrencySummary(day, currency));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void emptyTransactions() {
+        new MonthlyPivotReport(new ArrayList<Transaction>());
+    }
+
+    static void setTimeZone(String zone) {
+        TimeZone.setDefault(TimeZone.getTimeZone(zone));
+        DateTimeZone.setDefault(DateTimeZone.forID(zone));
+    }
+
+    /**
+     * @return transactions of given month in default time zone, including transactions at day boundaries
+     */
+    static List<Transaction> randomTransactions(Random random, int year, int month, int count) {
+        final LocalDate first = new LocalDate(year, month, 1);
+        final long from = first.toDateTimeAtStartOfDay().getMillis();
+        final long to = first.plusMonths(1).toDateTimeAtStartOfDay().getMillis();
+        final int days = first.dayOfMonth().getMaximumValue();
+        final ArrayList<Transaction> transactions = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final Transaction t = new Transaction();
+            t.setId("GPA." + i);
+            final long millis;
+            switch (random.nextInt(4)) {
+                case 0:
+                    // first and last millisecond of day
+                    final long dayStart = first.plusDays(random.nextInt(days)).toDateTimeAtStartOfDay().getMillis();
+                    millis = random.nextBoolean() ? dayStart : dayStart - 1;
+                    break;
+                default:
+                    millis = from + (long) (random.nextDouble() * (to - from));
+            }
+            t.setDate(new Date(Math.max(from, Math.min(to - 1, millis))));
+            t.setTransactionType(Transaction.Type.values()[random.nextInt(Transaction.Type.values().length)]);
+            final String currency = CURRENCIES[random.nextInt(i < count / 2 ? 3 : CURRENCIES.length)];
+            t.setBuyerCurrency(currency);
+            t.setMerchantCurrency("PLN");
+            t.setAmount(BigDecimal.valueOf(random.nextInt(200000) - 50000, random.nextInt(3)));
+            t.setPayout(0 == random.nextInt(1000) ? new BigDecimal("123456789012345678901.5")
+                    : BigDecimal.valueOf(random.nextInt(100000), 2));
+            t.setConversionRate(new BigDecimal("4.1234"));
+            t.setConversionRateBaseAmount(1);
+            t.computeConverted();
+            transactions.add(t);
+        }
+        Collections.shuffle(transactions, random);
+        return transactions;
+    }
+
+    static void assertSameAs(Baseline expected, MonthlyPivotReport actual) {
+        assertArrayEquals(expected.currencies.keySet().toArray(new String[0]), actual.getCurrencies());
+        final Date[] days = actual.getDays();
+        assertEquals(expected.perDay.length, days.length);
+        assertSame(expected.summary, actual.getSummary());
+        for (Map.Entry<String, Integer> currency : expected.currencies.entrySet()) {
+            assertSame(expected.perCurrency[currency.getValue()], actual.getCurrencySummary(currency.getKey()));
+        }
+        for (int day = 0; day < days.length; day++) {
+            assertEquals(day + 1, new DateTime(days[day], DateTimeZone.UTC).getDayOfMonth());
+            assertSame(expected.perDay[day], actual.getDaySummary(days[day]));
+            assertSame(expected.perDay[day], actual.getPeriodSummary(days[day]));
+            final Iterator<MonthlyPivotReport.Summary> row = actual.getDaySummaryRow(days[day]).iterator();
+            for (Map.Entry<String, Integer> currency : expected.currencies.entrySet()) {
+                final BigDecimal[] cell = expected.perDayCurrency[day][currency.getValue()];
+                assertSame(cell, actual.getDayCurrencySummary(days[day], currency.getKey()));
+                assertSame(cell, row.next());
+            }
+            assertFalse(row.hasNext());
+        }
+    }
+
+    /**
+     * Summaries are equal including scales of sums.
+     */
+    private static void assertSameSummary(MonthlyPivotReport.Summary expected, MonthlyPivotReport.Summary actual) {
+        assertEquals(expected.getTotal(), actual.getTotal());
+        assertEquals(expected.getTotalPayout(), actual.getTotalPayout());
+        assertEquals(expected.getTotalConverted(), actual.getTotalConverted());
+    }
+
+    private static void assertSame(BigDecimal[] expected, MonthlyPivotReport.Summary actual) {
+        // compareTo, baseline sums keep scale of values added first
+        assertEquals(0, expected[0].compareTo(actual.getTotal()));
+        assertEquals(0, expected[1].compareTo(actual.getTotalPayout()));
+        assertEquals(0, expected[2].compareTo(actual.getTotalConverted()));
+    }
+
+    /**
+     * Pivot report computed as original report did (BigDecimal sums of day of month in default time zone).
+     */
+    static class Baseline {
+
+        Baseline(List<Transaction> transactions) {
+            final DateTime first = new DateTime(transactions.get(0).getDate());
+            final int days = first.dayOfMonth().getMaximumValue();
+            for (Transaction t : transactions) {
+                currencies.put(t.getBuyerCurrency(), 0);
+            }
+            int index = 0;
+            for (Map.Entry<String, Integer> currency : currencies.entrySet()) {
+                currency.setValue(index++);
+            }
+            perDay = sums(days);
+            perCurrency = sums(currencies.size());
+            perDayCurrency = new BigDecimal[days][][];
+            for (int i = 0; i < days; i++) {
+                perDayCurrency[i] = sums(currencies.size());
+            }
+            final HashMap<String, Integer> indexes = new HashMap<>(currencies);
+            for (Transaction t : transactions) {
+                final int day = new DateTime(t.getDate()).getDayOfMonth() - 1;
+                final int currency = indexes.get(t.getBuyerCurrency());
+                add(summary, t);
+                add(perDay[day], t);
+                add(perCurrency[currency], t);
+                add(perDayCurrency[day][currency], t);
+            }
+        }
+
+        private static void add(BigDecimal[] sums, Transaction t) {
+            sums[0] = sums[0].add(t.getAmount());
+            sums[1] = sums[1].add(t.getPayout());
+            sums[2] = sums[2].add(t.getAmountConverted());
+        }
+
+        private static BigDecimal[][] sums(int size) {
+            final BigDecimal[][] out = new BigDecimal[size][];
+            for (int i = 0; i < size; i++) {
+                out[i] = new BigDecimal[]{BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO};
+            }
+            return out;
+        }
+
+        final TreeMap<String, Integer> currencies = new TreeMap<>();
+        final BigDecimal[] summary = {BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO};
+        final BigDecimal[][] perDay;
+        final BigDecimal[][] perCurrency;
+        final BigDecimal[][][] perDayCurrency;
+    }
+}
@@ -0,0 +1,81 @@
+package com.bytestorm.isp;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class OrderIndexTest {
+
+    private static final String ID = "GPA.1234-5678-9012-34567";
+
+    @Test
+    public void encodesPlayIds() {
+        assertEquals(12345678901234567L, OrderIndex.encode(ID));
+        assertEquals(0L, OrderIndex.encode("GPA.0000-0000-0000-00000"));
+        assertEquals(99999999999999999L, OrderIndex.encode("GPA.9999-9999-9999-99999"));
+    }
+
+    @Test
+    public void encodesRenewalSuffix() {
+        final HashSet<Long> keys = new HashSet<>();
+        keys.add(OrderIndex.encode(ID));
+        for (int renewal = 0; renewal < 90; renewal++) {
+            final long key = OrderIndex.encode(ID + ".." + renewal);
+            assertTrue("Renewal " + renewal, key >= 0);
+            assertTrue("Renewal " + renewal + " collides", keys.add(key));
+        }
+        // keys of all renewals of largest id are distinct
+        assertTrue(OrderIndex.encode("GPA.9999-9999-9999-99999..89") > OrderIndex.encode("GPA.9999-9999-9999-99999..88"));
+    }
+
+    @Test
+    public void rejectsOtherFormats() {
+        final String[] ids = {null, "", "GPA.", "GPA.1234-5678-9012-3456", "GPA.1234-5678-9012-345678",
+                "gpa.1234-5678-9012-34567", "GPA.1234 5678-9012-34567", "GPA.1234-5678-9012-3456a",
+                "GPA.12345678-9012-34567", ID + "..", ID + "..90", ID + "..100", ID + "..05", ID + "..00", ID + "..-1",
+                ID + ".1", ID + "...1", ID + "..1a", "12999999999999999999", "A.1234-5678-9012-34567"};
+        for (String id : ids) {
+            assertEquals("Id " + id, -1L, OrderIndex.encode(id));
+        }
+    }
+
+    @Test
+    public void sameAsHashMap() {
+        final Random random = new Random(1);
+        final HashMap<String, Integer> expected = new HashMap<>();
+        final OrderIndex index = new OrderIndex(16);
+        for (int i = 0; i < 200000; i++) {
+            final String id = randomId(random);
+            switch (random.nextInt(4)) {
+                case 0:
+                    final Integer removed = expected.remove(id);
+                    assertEquals(null == removed ? -1 : removed, index.remove(id));
+                    break;
+                default:
+                    expected.put(id, i);
+                    index.put(id, i);
+            }
+            assertEquals(expected.size(), index.size());
+        }
+        for (Map.Entry<String, Integer> entry : expected.entrySet()) {
+            assertEquals((int) entry.getValue(), index.get(entry.getKey()));
+        }
+        assertEquals(-1, index.get("GPA.0000-0000-0000-00000..99"));
+    }
+
+    private static String randomId(Random random) {
+        if (0 == random.nextInt(10)) {
+            // unknown format, kept in hash map
+            return "other-" + random.nextInt(1000);
+        }
+        final String id = String.format("GPA.%04d-%04d-%04d-%05d", random.nextInt(10), random.nextInt(10000),
+                random.nextInt(10000), random.nextInt(100000));
+        return random.nextBoolean() ? id : id + ".." + random.nextInt(100);
+    }
+}
@@ -0,0 +1,111 @@
+package com.bytestorm.isp;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Date;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RateStoreTest {
+
+    private static final String OFFLINE_URL = "file:/nonexistent-nbp/";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Before
+    public void createStoreFile() throws IOException {
+        file = new File(folder.getRoot(), "rates.bin");
+    }
+
+    @Test
+    public void storedTablesUsedOffline() throws Exception {
+        download(ExchangeTest.baseUrl());
+        assertTrue(file.length() > 0);
+        ExchangeTest.assertRates(download(OFFLINE_URL));
+    }
+
+    @Test
+    public void unchangedStoreIsNotAppended() throws Exception {
+        download(ExchangeTest.baseUrl());
+        final long size = file.length();
+        download(ExchangeTest.baseUrl());
+        assertEquals(size, file.length());
+    }
+
+    @Test
+    public void tablesOfOtherRangeAreNotUsedOffline() throws Exception {
+        // stores only tables needed for last days
+        final Exchange later = new Exchange(new DateTime(2015, 6, 8, 0, 0, DateTimeZone.UTC).toDate(), ExchangeTest.TO,
+                ExchangeTest.baseUrl(), 1);
+        later.setRateStore(new RateStore(file));
+        later.download();
+        try {
+            download(OFFLINE_URL);
+            fail("Range with missing tables processed offline");
+        } catch (IOException e) {
+            // expected
+        }
+        download(ExchangeTest.baseUrl());
+        ExchangeTest.assertRates(download(OFFLINE_URL));
+    }
+
+    @Test
+    public void rangeAfterDirectoryNeedsDownload() throws Exception {
+        download(ExchangeTest.baseUrl());
+        final Exchange exchange = new Exchange(ExchangeTest.FROM, new DateTime(2015, 6, 20, 0, 0, DateTimeZone.UTC).toDate(),
+                OFFLINE_URL, 1);
+        exchange.setRateStore(new RateStore(file));
+        try {
+            exchange.download();
+            fail("Range after last directory table processed offline");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void interruptedAppendIsIgnored() throws Exception {
+        download(ExchangeTest.baseUrl());
+        final long size = file.length();
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+            out.seek(size);
+            out.write(new byte[30]);
+        }
+        ExchangeTest.assertRates(download(OFFLINE_URL));
+        // garbage is dropped by next append
+        final Date earlier = new DateTime(2015, 6, 3, 0, 0, DateTimeZone.UTC).toDate();
+        final Exchange exchange = new Exchange(earlier, ExchangeTest.TO, ExchangeTest.baseUrl(), 1);
+        exchange.setRateStore(new RateStore(file));
+        exchange.download();
+        assertEquals(0, (file.length() - 8) % 24);
+        ExchangeTest.assertRates(download(OFFLINE_URL));
+    }
+
+    @Test(expected = IOException.class)
+    public void invalidFile() throws Exception {
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+            out.write("not a rate store".getBytes("US-ASCII"));
+        }
+        new RateStore(file).load();
+    }
+
+    private Exchange download(String baseUrl) throws Exception {
+        final Exchange exchange = new Exchange(ExchangeTest.FROM, ExchangeTest.TO, baseUrl, 2);
+        exchange.setRateStore(new RateStore(file));
+        exchange.download();
+        return exchange;
+    }
+
+    private File file;
+}
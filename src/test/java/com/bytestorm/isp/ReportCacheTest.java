@@ -0,0 +1,168 @@
+package com.bytestorm.isp;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ReportCacheTest {
+
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+    private static final long UNLIMITED = Long.MAX_VALUE;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void hitSameAsStored() throws IOException {
+        final File dir = folder.newFolder();
+        try (ReportCache cache = new ReportCache(dir, UNLIMITED, UNLIMITED)) {
+            final String key = key("a");
+            assertNull(cache.get(key));
+            final ReportCache.Entry stored = put(cache, key, "a,b\n1,2\n");
+            assertEquals("a.csv", stored.getEntryName());
+            assertEquals("a,b\n1,2\n", read(stored));
+        }
+        try (ReportCache cache = new ReportCache(dir, UNLIMITED, UNLIMITED)) {
+            final ReportCache.Entry entry = cache.get(key("a"));
+            assertNotNull(entry);
+            assertEquals("a.csv", entry.getEntryName());
+            assertEquals("a,b\n1,2\n", read(entry));
+        }
+    }
+
+    @Test
+    public void keyOfChangedObject() {
+        assertEquals(key("a"), ReportCache.key("bucket", "a", 1L, "md5", "crc"));
+        assertFalse(key("a").equals(ReportCache.key("bucket", "a", 2L, "md5", "crc")));
+        assertFalse(key("a").equals(ReportCache.key("bucket", "a", 1L, "md5", "crc2")));
+        assertFalse(key("a").equals(ReportCache.key("other", "a", 1L, "md5", "crc")));
+    }
+
+    @Test
+    public void corruptedEntryRemoved() throws IOException {
+        final File dir = folder.newFolder();
+        try (ReportCache cache = new ReportCache(dir, UNLIMITED, UNLIMITED)) {
+            final ReportCache.Entry entry = put(cache, key("a"), "a,b\n1,2\n");
+            // same length, different content
+            FileUtils.writeStringToFile(entry.getFile(), "a,b\n1,3\n", StandardCharsets.UTF_8);
+            assertNull(cache.get(key("a")));
+            assertFalse(entry.getFile().exists());
+            assertNull(cache.get(key("a")));
+            // entry can be stored again
+            put(cache, key("a"), "a,b\n1,2\n");
+            assertEquals("a,b\n1,2\n", read(cache.get(key("a"))));
+        }
+    }
+
+    @Test
+    public void usedEntriesNotEvicted() throws IOException {
+        final File dir = folder.newFolder();
+        try (ReportCache cache = new ReportCache(dir, 0, 0)) {
+            final File a = put(cache, key("a"), "aaaa").getFile();
+            final File b = put(cache, key("b"), "bbbb").getFile();
+            a.setLastModified(System.currentTimeMillis() - 10 * DAY);
+            cache.evict();
+            assertTrue(a.exists());
+            assertTrue(b.exists());
+        }
+        try (ReportCache cache = new ReportCache(dir, 0, UNLIMITED)) {
+            // returned by get
+            final File a = cache.get(key("a")).getFile();
+            cache.evict();
+            assertTrue(a.exists());
+            assertFalse(new File(dir, key("b") + ".csv").exists());
+        }
+    }
+
+    @Test
+    public void expiredEntriesEvicted() throws IOException {
+        final File dir = folder.newFolder();
+        final long now = System.currentTimeMillis();
+        try (ReportCache cache = new ReportCache(dir, UNLIMITED, UNLIMITED)) {
+            put(cache, key("a"), "a").getFile().setLastModified(now - 3 * DAY);
+            put(cache, key("b"), "b").getFile().setLastModified(now - DAY / 2);
+            put(cache, key("c"), "c").getFile().setLastModified(now - 2 * DAY);
+        }
+        try (ReportCache cache = new ReportCache(dir, UNLIMITED, DAY)) {
+            cache.evict();
+            assertNull(cache.get(key("a")));
+            assertNotNull(cache.get(key("b")));
+            assertNull(cache.get(key("c")));
+        }
+    }
+
+    @Test
+    public void leastRecentlyUsedEvicted() throws IOException {
+        final File dir = folder.newFolder();
+        final long now = System.currentTimeMillis();
+        try (ReportCache cache = new ReportCache(dir, UNLIMITED, UNLIMITED)) {
+            put(cache, key("a"), repeat('a', 100)).getFile().setLastModified(now - 3 * DAY);
+            put(cache, key("b"), repeat('b', 100)).getFile().setLastModified(now - 2 * DAY);
+            put(cache, key("c"), repeat('c', 100)).getFile().setLastModified(now - DAY);
+        }
+        try (ReportCache cache = new ReportCache(dir, 250, UNLIMITED)) {
+            // hit makes a most recently used
+            assertNotNull(cache.get(key("a")));
+            cache.evict();
+            assertTrue(new File(dir, key("c") + ".csv").exists());
+            assertFalse(new File(dir, key("b") + ".csv").exists());
+        }
+        try (ReportCache cache = new ReportCache(dir, 150, UNLIMITED)) {
+            cache.evict();
+            assertTrue(new File(dir, key("a") + ".csv").exists());
+            assertFalse(new File(dir, key("c") + ".csv").exists());
+        }
+    }
+
+    @Test
+    public void directoryLockedByOneInstance() throws IOException {
+        final File dir = folder.newFolder();
+        try (ReportCache cache = new ReportCache(dir, UNLIMITED, UNLIMITED)) {
+            put(cache, key("a"), "a");
+            try {
+                new ReportCache(dir, 0, 0);
+                fail("Cache directory used twice");
+            } catch (IOException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("used by another process"));
+            }
+            cache.evict();
+        }
+        try (ReportCache cache = new ReportCache(dir, UNLIMITED, UNLIMITED)) {
+            assertNotNull(cache.get(key("a")));
+        }
+    }
+
+    private static String key(String name) {
+        return ReportCache.key("bucket", name, 1L, "md5", "crc");
+    }
+
+    private static ReportCache.Entry put(ReportCache cache, String key, String csv) throws IOException {
+        final String name = csv.isEmpty() ? "empty" : csv.substring(0, 1);
+        return cache.put(key, name + ".csv", new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static String read(ReportCache.Entry entry) throws IOException {
+        return FileUtils.readFileToString(entry.getFile(), StandardCharsets.UTF_8);
+    }
+
+    private static String repeat(char c, int count) {
+        final StringBuilder out = new StringBuilder(count);
+        for (int i = 0; i < count; i++) {
+            out.append(c);
+        }
+        return out.toString();
+    }
+}
@@ -0,0 +1,158 @@
+package com.bytestorm.isp;
+
+import org.joda.time.DateTimeZone;
+import org.joda.time.LocalDate;
+import org.junit.After;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class RevenueCubeTest {
+
+    private static final String[] ZONES = {"UTC", "Europe/Warsaw", "America/Los_Angeles", "Pacific/Auckland"};
+
+    private final TimeZone defaultZone = TimeZone.getDefault();
+    private final DateTimeZone defaultDateTimeZone = DateTimeZone.getDefault();
+
+    @After
+    public void restoreTimeZone() {
+        TimeZone.setDefault(defaultZone);
+        DateTimeZone.setDefault(defaultDateTimeZone);
+    }
+
+    @Test
+    public void daysSameAsMonthlyPivot() {
+        for (String zone : ZONES) {
+            MonthlyPivotReportTest.setTimeZone(zone);
+            // March contains daylight saving time change in all zones but UTC
+            final List<Transaction> transactions = MonthlyPivotReportTest.randomTransactions(new Random(1), 2016, 3, 20000);
+            final RevenueCube cube = new RevenueCube();
+            for (Transaction t : transactions) {
+                cube.add(t);
+            }
+            final MonthlyPivotReport expected = new MonthlyPivotReport(transactions);
+            final PivotReport actual = cube.getPivot(RevenueCube.Granularity.DAY,
+                    new LocalDate(2016, 3, 1).toDate(), new LocalDate(2016, 3, 31).toDate());
+            assertArrayEquals(zone, expected.getPeriods(), actual.getPeriods());
+            assertArrayEquals(expected.getCurrencies(), actual.getCurrencies());
+            assertSame(expected.getSummary(), actual.getSummary());
+            for (String currency : expected.getCurrencies()) {
+                assertSame(expected.getCurrencySummary(currency), actual.getCurrencySummary(currency));
+            }
+            for (Date day : expected.getPeriods()) {
+                assertSame(expected.getPeriodSummary(day), actual.getPeriodSummary(day));
+                for (String currency : expected.getCurrencies()) {
+                    assertSame(expected.getPeriodCurrencySummary(day, currency),
+                            actual.getPeriodCurrencySummary(day, currency));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void periodsSameAsBaseline() {
+        for (String zone : ZONES) {
+            MonthlyPivotReportTest.setTimeZone(zone);
+            final Random random = new Random(2);
+            final ArrayList<Transaction> transactions = new ArrayList<>();
+            for (int month = 11; month <= 16; month++) {
+                transactions.addAll(MonthlyPivotReportTest.randomTransactions(random, 2015 + month / 13,
+                        (month - 1) % 12 + 1, 2000));
+            }
+            Collections.shuffle(transactions, random);
+            final RevenueCube cube = new RevenueCube();
+            for (Transaction t : transactions) {
+                cube.add(t);
+            }
+            assertEquals(new LocalDate(2015, 11, 1).toDate(), cube.getFirstDate());
+            assertEquals(new LocalDate(2016, 4, 30).toDate(), cube.getLastDate());
+            for (RevenueCube.Granularity granularity : RevenueCube.Granularity.values()) {
+                final PivotReport actual = cube.getPivot(granularity);
+                final TreeMap<Date, BigDecimal[]> expected = baseline(transactions, granularity);
+                assertArrayEquals(zone + " " + granularity, expected.keySet().toArray(), actual.getPeriods());
+                for (Map.Entry<Date, BigDecimal[]> period : expected.entrySet()) {
+                    final MonthlyPivotReport.Summary summary = actual.getPeriodSummary(period.getKey());
+                    assertEquals(0, period.getValue()[0].compareTo(summary.getTotal()));
+                    assertEquals(0, period.getValue()[1].compareTo(summary.getTotalPayout()));
+                    assertEquals(0, period.getValue()[2].compareTo(summary.getTotalConverted()));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void dayBoundsInDefaultTimeZone() {
+        MonthlyPivotReportTest.setTimeZone("America/Los_Angeles");
+        final RevenueCube cube = new RevenueCube();
+        assertNull(cube.getFirstDate());
+        final long dayStart = new LocalDate(2016, 6, 10).toDateTimeAtStartOfDay().getMillis();
+        // last millisecond of previous day, UTC date is the same as date of day start
+        cube.add(transaction(dayStart - 1, "1.00"));
+        cube.add(transaction(dayStart, "2.00"));
+        cube.add(transaction(dayStart + 24 * 60 * 60 * 1000L - 1, "4.00"));
+        assertEquals(new Date(dayStart - 24 * 60 * 60 * 1000L), cube.getFirstDate());
+        assertEquals(new Date(dayStart), cube.getLastDate());
+        final PivotReport pivot = cube.getPivot(RevenueCube.Granularity.DAY);
+        final Date[] periods = pivot.getPeriods();
+        assertEquals(2, periods.length);
+        // periods are UTC midnights of local days
+        assertEquals(new LocalDate(2016, 6, 9).toDateTimeAtStartOfDay(DateTimeZone.UTC).toDate(), periods[0]);
+        assertEquals(0, new BigDecimal("1.00").compareTo(pivot.getPeriodSummary(periods[0]).getTotal()));
+        assertEquals(0, new BigDecimal("6.00").compareTo(pivot.getPeriodSummary(periods[1]).getTotal()));
+    }
+
+    /**
+     * @return totals of amount, payout and converted amount per period start (UTC midnight) of local day
+     */
+    private static TreeMap<Date, BigDecimal[]> baseline(List<Transaction> transactions,
+                                                       RevenueCube.Granularity granularity) {
+        final TreeMap<Date, BigDecimal[]> out = new TreeMap<>();
+        final LocalDate first = granularity.getPeriodStart(new LocalDate(2015, 11, 1));
+        for (LocalDate day = first; !day.isAfter(new LocalDate(2016, 4, 30)); day = day.plusDays(1)) {
+            final Date period = granularity.getPeriodStart(day).toDateTimeAtStartOfDay(DateTimeZone.UTC).toDate();
+            if (!out.containsKey(period)) {
+                out.put(period, new BigDecimal[]{BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO});
+            }
+        }
+        for (Transaction t : transactions) {
+            final LocalDate day = new LocalDate(t.getDate());
+            final BigDecimal[] sums = out.get(granularity.getPeriodStart(day).toDateTimeAtStartOfDay(DateTimeZone.UTC)
+                    .toDate());
+            sums[0] = sums[0].add(t.getAmount());
+            sums[1] = sums[1].add(t.getPayout());
+            sums[2] = sums[2].add(t.getAmountConverted());
+        }
+        return out;
+    }
+
+    private static Transaction transaction(long millis, String amount) {
+        final Transaction t = new Transaction();
+        t.setDate(new Date(millis));
+        t.setBuyerCurrency("PLN");
+        t.setMerchantCurrency("PLN");
+        t.setAmount(new BigDecimal(amount));
+        t.setPayout(new BigDecimal(amount));
+        t.setConversionRate(BigDecimal.ONE);
+        t.setConversionRateBaseAmount(1);
+        t.computeConverted();
+        return t;
+    }
+
+    private static void assertSame(MonthlyPivotReport.Summary expected, MonthlyPivotReport.Summary actual) {
+        assertEquals(0, expected.getTotal().compareTo(actual.getTotal()));
+        assertEquals(0, expected.getTotalPayout().compareTo(actual.getTotalPayout()));
+        assertEquals(0, expected.getTotalConverted().compareTo(actual.getTotalConverted()));
+    }
+}
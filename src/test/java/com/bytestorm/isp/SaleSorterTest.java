@@ -0,0 +1,76 @@
+package com.bytestorm.isp;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class SaleSorterTest {
+
+    @Test
+    public void sortsInMemoryStably() throws IOException {
+        assertSortedStably(randomSales(new Random(1), 1000), Long.MAX_VALUE);
+    }
+
+    @Test
+    public void mergesSpilledRunsStably() throws IOException {
+        // few sales per run
+        assertSortedStably(randomSales(new Random(2), 5000), 10 * 1024);
+    }
+
+    @Test
+    public void sortsNoSales() throws IOException {
+        try (SaleSorter sorter = new SaleSorter(0)) {
+            assertNull(sorter.sort().next());
+        }
+    }
+
+    private static void assertSortedStably(List<Sale> sales, long memoryBudget) throws IOException {
+        final ArrayList<Sale> expected = new ArrayList<>(sales);
+        // Collections.sort is stable
+        Collections.sort(expected, new Comparator<Sale>() {
+            @Override
+            public int compare(Sale o1, Sale o2) {
+                return o1.getId().compareTo(o2.getId());
+            }
+        });
+        try (SaleSorter sorter = new SaleSorter(memoryBudget)) {
+            for (Sale sale : sales) {
+                sorter.add(sale);
+            }
+            final SaleSorter.SortedSales sorted = sorter.sort();
+            for (Sale e : expected) {
+                final Sale a = sorted.next();
+                assertEquals(e.getId(), a.getId());
+                assertEquals(e.getBuyerCurrency(), a.getBuyerCurrency());
+                assertEquals(e.getPrice(), a.getPrice());
+                assertEquals(e.getTaxCollected(), a.getTaxCollected());
+                // unique per sale, verifies order of equal ids
+                assertEquals(e.getBuyerCountry(), a.getBuyerCountry());
+            }
+            assertNull(sorted.next());
+        }
+    }
+
+    private static List<Sale> randomSales(Random random, int count) {
+        final ArrayList<Sale> sales = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            final Sale sale = new Sale();
+            sale.setId("GPA.0000-0000-0000-" + random.nextInt(count / 4) + (random.nextBoolean() ? "..1" : "ą"));
+            sale.setBuyerCurrency(0 == i % 7 ? null : "PLN");
+            sale.setPrice(new BigDecimal(random.nextInt(100000)).movePointLeft(random.nextInt(4)));
+            sale.setTaxCollected(0 == i % 3 ? null : new BigDecimal("0.230"));
+            sale.setBuyerCountry("C" + i);
+            sales.add(sale);
+        }
+        return sales;
+    }
+}
@@ -0,0 +1,182 @@
+package com.bytestorm.isp;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SalesPrefilterTest {
+
+    private static final String HEADER = "Order Number,Order Charged Date,Order Charged Timestamp,Financial Status," +
+            "Device Model,Product Title,Product ID,Product Type,SKU ID,Currency of Sale,Item Price,Taxes Collected," +
+            "Charged Amount,City of Buyer,State of Buyer,Postal Code of Buyer,Country of Buyer\n";
+    private static final String[] ODD_IDS = {"GPA.1234-5678-9012-34567..0", "order-1", "Zażółć gęślą jaźń", "日本",
+            "😀", "a,b", "\"quoted\"", "with \"\" escape", "line\nbreak", " "};
+    private static final long JUNE_1 = new DateTime(2015, 6, 1, 0, 0, DateTimeZone.UTC).getMillis();
+    private static final long JUNE_30 = new DateTime(2015, 6, 30, 0, 0, DateTimeZone.UTC).getMillis();
+    private static final ColumnProjection ID_COLUMNS = ColumnProjection.of(Sale.MAPPING, Arrays.asList("id", "timestamp"));
+    private static final long DAY = 24 * 60 * 60;
+
+    @Test
+    public void noFalseNegatives() {
+        final List<String> ids = randomIds(new Random(1), 20000);
+        final SalesPrefilter filter = new SalesPrefilter(ids.size());
+        for (String id : ids) {
+            filter.addId(id);
+        }
+        for (String id : ids) {
+            final byte[] bytes = id.getBytes(StandardCharsets.UTF_8);
+            assertTrue(id, filter.mayContain(bytes, 0, bytes.length));
+            // id in the middle of row data
+            final byte[] row = ("x," + id + ",y").getBytes(StandardCharsets.UTF_8);
+            assertTrue(id, filter.mayContain(row, 2, 2 + bytes.length));
+        }
+        int falsePositives = 0;
+        for (String id : randomIds(new Random(2), 20000)) {
+            final byte[] bytes = id.getBytes(StandardCharsets.UTF_8);
+            if (filter.mayContain(bytes, 0, bytes.length)) {
+                ++falsePositives;
+            }
+        }
+        assertTrue("False positives " + falsePositives, falsePositives < 20000 * 3 / 100);
+    }
+
+    @Test
+    public void quotedIdsNotRejected() throws IOException {
+        final List<String> ids = randomIds(new Random(3), 2000);
+        final SalesPrefilter filter = new SalesPrefilter(ids.size());
+        for (String id : ids) {
+            filter.addId(id);
+        }
+        final StringBuilder csv = new StringBuilder(HEADER);
+        for (int i = 0; i < ids.size(); i++) {
+            // quote every other id, ids with special characters are always quoted
+            csv.append(row(ids.get(i), JUNE_1 / 1000, 0 == i % 2));
+        }
+        assertEquals(ids, readIds(csv.toString(), filter, 0));
+    }
+
+    @Test
+    public void windowOfWholeChargeDays() {
+        final SalesPrefilter filter = new SalesPrefilter(1);
+        assertFalse(filter.hasWindow());
+        assertTrue(filter.inWindow(0));
+        assertTrue(filter.inWindow(Long.MAX_VALUE));
+        filter.setWindow(JUNE_1, JUNE_30, 0);
+        assertTrue(filter.hasWindow());
+        final long from = JUNE_1 / 1000;
+        final long to = JUNE_30 / 1000;
+        // same day late timestamp
+        assertTrue(filter.inWindow(to + DAY - 1));
+        // charge dates are in unknown time zone
+        assertTrue(filter.inWindow(from - DAY));
+        assertTrue(filter.inWindow(to + 2 * DAY - 1));
+        assertFalse(filter.inWindow(from - DAY - 1));
+        assertFalse(filter.inWindow(to + 2 * DAY));
+
+        filter.setWindow(JUNE_1, JUNE_30, 3);
+        assertTrue(filter.inWindow(from - 4 * DAY));
+        assertTrue(filter.inWindow(to + 5 * DAY - 1));
+        assertFalse(filter.inWindow(from - 4 * DAY - 1));
+        assertFalse(filter.inWindow(to + 5 * DAY));
+    }
+
+    @Test
+    public void windowOfChargesInLocalTime() {
+        // midnight in Warsaw is previous day in UTC
+        final long from = new DateTime(2015, 6, 1, 0, 0, DateTimeZone.forID("Europe/Warsaw")).getMillis();
+        final long to = new DateTime(2015, 6, 30, 0, 0, DateTimeZone.forID("Europe/Warsaw")).getMillis();
+        final SalesPrefilter filter = new SalesPrefilter(1);
+        filter.setWindow(from, to, 0);
+        assertTrue(filter.inWindow(from / 1000 - 1));
+        assertTrue(filter.inWindow(new DateTime(2015, 6, 30, 23, 59, 59, DateTimeZone.forID("Europe/Warsaw")).getMillis() / 1000));
+        // charge on day before epoch
+        final SalesPrefilter before = new SalesPrefilter(1);
+        before.setWindow(-1, -1, 0);
+        assertTrue(before.inWindow(-2 * DAY));
+        assertTrue(before.inWindow(DAY - 1));
+        assertFalse(before.inWindow(-2 * DAY - 1));
+        assertFalse(before.inWindow(DAY));
+    }
+
+    @Test
+    public void rejectedCount() throws IOException {
+        final SalesPrefilter filter = new SalesPrefilter(3);
+        filter.addId("a");
+        filter.addId("b");
+        filter.addId("Zażółć");
+        filter.setWindow(JUNE_1, JUNE_30, 0);
+        final long from = JUNE_1 / 1000 - DAY;
+        final long to = JUNE_30 / 1000 + 2 * DAY - 1;
+        final String csv = HEADER +
+                row("a", from, false) +
+                row("a", from - 1, true) +
+                row("Zażółć", to, true) +
+                row("Zażółć", to + 1, false) +
+                row("not-charged-1", from, false) +
+                row("b", to, false) +
+                row("not-charged-2", to + 1, true);
+        assertEquals(Arrays.asList("a", "Zażółć", "b"), readIds(csv, filter, 4));
+        // same ids without window
+        final SalesPrefilter idsOnly = new SalesPrefilter(3);
+        idsOnly.addId("a");
+        idsOnly.addId("b");
+        idsOnly.addId("Zażółć");
+        assertEquals(Arrays.asList("a", "a", "Zażółć", "Zażółć", "b"), readIds(csv, idsOnly, 2));
+    }
+
+    private static List<String> randomIds(Random random, int count) {
+        final HashSet<String> ids = new HashSet<>();
+        final ArrayList<String> out = new ArrayList<>(count);
+        for (String id : ODD_IDS) {
+            ids.add(id);
+            out.add(id);
+        }
+        while (out.size() < count) {
+            final String id;
+            switch (random.nextInt(3)) {
+                case 0:
+                    id = ODD_IDS[random.nextInt(ODD_IDS.length)] + random.nextInt(1000000);
+                    break;
+                default:
+                    id = String.format("GPA.%04d-%04d-%04d-%05d", random.nextInt(10000), random.nextInt(10000),
+                            random.nextInt(10000), random.nextInt(100000)) + (random.nextBoolean() ? ".." + random.nextInt(100) : "");
+            }
+            if (ids.add(id)) {
+                out.add(id);
+            }
+        }
+        return out;
+    }
+
+    private static String row(String id, long timestamp, boolean quote) {
+        if (quote || id.matches("(?s).*[,\"\n\r].*")) {
+            id = "\"" + id.replace("\"", "\"\"") + "\"";
+        }
+        return id + ",\"Jun 1, 2015\"," + timestamp + ",Charged,phone,Title,com.app,inapp,sku1,EUR,1.00,0.00,1.00,,,,DE\n";
+    }
+
+    private static List<String> readIds(String csv, SalesPrefilter filter, int expectedRejected) throws IOException {
+        final ArrayList<String> ids = new ArrayList<>();
+        try (SalesReportReader reader = new SalesReportReader(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)),
+                ID_COLUMNS, filter)) {
+            for (Sale sale; null != (sale = reader.read()); ) {
+                ids.add(sale.getId());
+            }
+            assertEquals(expectedRejected, reader.getRejectedCount());
+        }
+        return ids;
+    }
+}
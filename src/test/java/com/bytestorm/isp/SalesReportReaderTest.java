@@ -0,0 +1,119 @@
+package com.bytestorm.isp;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SalesReportReaderTest {
+
+    private static final String CSV = "Order Number,Order Charged Date,Order Charged Timestamp,Financial Status," +
+            "Device Model,Product Title,Product ID,Product Type,SKU ID,Currency of Sale,Item Price,Taxes Collected," +
+            "Charged Amount,City of Buyer,State of Buyer,Postal Code of Buyer,Country of Buyer\r\n" +
+            "GPA.1234-5678-9012-34567,2015-06-01,1433116800,Charged,phone,\"Title, with comma\",com.app,inapp," +
+            "sku1,PLN,1234.50,0.00,1234.50,Warszawa,,00-001,PL\r\n" +
+            "GPA.1234-5678-9012-34568..0,2015-06-30,1435708799,Charged,,\"Multi\r\nline \"\"title\"\"\",com.app," +
+            "inapp,sku2,EUR,0.99,0.19,1.18,,,,\n" +
+            "\n" +
+            "\"GPA.1234-5678-9012-34569\",2015-06-15,1434326400,Refund,tablet,Zażółć,com.app,subscription,sku3," +
+            "USD,123456789012345678901.123,-1.5,0,\"Los Angeles\",CA,90210,US\n";
+
+    private static final List<String> FIELDS = Arrays.asList("id", "timestamp", "buyerCurrency", "price",
+            "taxCollected", "chargedAmount", "buyerCountry");
+
+    private static final List<List<String>> PROJECTIONS = Arrays.asList(
+            Arrays.asList("id", "timestamp", "buyerCurrency", "price", "taxCollected", "buyerCountry"),
+            Arrays.asList("id", "price"),
+            Collections.singletonList("buyerCountry"),
+            Collections.<String>emptyList());
+
+    @Test
+    public void projectedSameAsFullRead() throws IOException {
+        final List<List<String>> full = readBeans(ColumnProjection.all(Sale.MAPPING));
+        assertEquals(3, full.size());
+        assertEquals(full, readFast(ColumnProjection.all(Sale.MAPPING)));
+        for (List<String> fields : PROJECTIONS) {
+            final ColumnProjection projection = ColumnProjection.of(Sale.MAPPING, fields);
+            // projected fields are decoded as in full read, other fields are left unset
+            final List<List<String>> expected = new ArrayList<>();
+            for (List<String> sale : full) {
+                final List<String> projected = new ArrayList<>(sale);
+                for (int i = 0; i < FIELDS.size(); i++) {
+                    if (!fields.contains(FIELDS.get(i))) {
+                        projected.set(i, "timestamp".equals(FIELDS.get(i)) ? "0" : null);
+                    }
+                }
+                expected.add(projected);
+            }
+            assertEquals(fields.toString(), expected, readBeans(projection));
+            assertEquals(fields.toString(), expected, readFast(projection));
+        }
+    }
+
+    @Test
+    public void projectionMapping() {
+        final ColumnProjection projection = ColumnProjection.of(Sale.MAPPING, Arrays.asList("id", "price"));
+        assertTrue(projection.includes("id"));
+        assertFalse(projection.includes("timestamp"));
+        assertFalse(projection.includes("unknown"));
+        assertTrue(projection.includes(0));
+        assertFalse(projection.includes(1));
+        assertFalse(projection.includes(2));
+        // columns past the end of mapping
+        assertTrue(projection.includes(Sale.MAPPING.length));
+        final String[] mapping = projection.getMapping();
+        assertEquals(Sale.MAPPING.length, mapping.length);
+        for (int i = 0; i < mapping.length; i++) {
+            assertEquals("id".equals(Sale.MAPPING[i]) || "price".equals(Sale.MAPPING[i]) ? Sale.MAPPING[i] : null,
+                    mapping[i]);
+            assertEquals(null == mapping[i] ? null : Sale.CSV[i], projection.getProcessors(Sale.CSV)[i]);
+        }
+        assertEquals(Arrays.asList(Sale.MAPPING), Arrays.asList(ColumnProjection.all(Sale.MAPPING).getMapping()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownField() {
+        ColumnProjection.of(Sale.MAPPING, Collections.singletonList("productTitle"));
+    }
+
+    private static List<List<String>> readBeans(ColumnProjection projection) throws IOException {
+        try (SaleReader reader = new BeanSaleReader(new StringReader(CSV), projection)) {
+            return read(reader);
+        }
+    }
+
+    private static List<List<String>> readFast(ColumnProjection projection) throws IOException {
+        try (SaleReader reader = new SalesReportReader(new ByteArrayInputStream(CSV.getBytes(CsvTokenizer.CHARSET)),
+                projection)) {
+            return read(reader);
+        }
+    }
+
+    /**
+     * @return values of all sale fields in {@link #FIELDS} order
+     */
+    private static List<List<String>> read(SaleReader reader) throws IOException {
+        final List<List<String>> out = new ArrayList<>();
+        for (Sale sale; null != (sale = reader.read()); ) {
+            out.add(Arrays.asList(sale.getId(), String.valueOf(sale.getTimestamp()), sale.getBuyerCurrency(),
+                    toString(sale.getPrice()), toString(sale.getTaxCollected()), toString(sale.getChargedAmount()),
+                    sale.getBuyerCountry()));
+        }
+        assertNull(reader.read());
+        return out;
+    }
+
+    private static String toString(Object value) {
+        return null == value ? null : value.toString();
+    }
+}
@@ -0,0 +1,83 @@
+package com.bytestorm.isp;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class StringDictionaryTest {
+
+    private static final String[] VALUES = {"PLN", "EUR", "", "Zażółć", "pln", "EUR ", "日本"};
+
+    @Test
+    public void roundTrip() {
+        final StringDictionary dictionary = new StringDictionary();
+        for (int i = 0; i < VALUES.length; i++) {
+            assertEquals(StringDictionary.NULL, dictionary.find(VALUES[i]));
+            assertEquals(i, dictionary.encode(VALUES[i]));
+            assertEquals(i + 1, dictionary.size());
+        }
+        for (int i = 0; i < VALUES.length; i++) {
+            // equal value, not the same instance
+            assertEquals(i, dictionary.encode(new String(VALUES[i])));
+            assertEquals(i, dictionary.find(new String(VALUES[i])));
+            assertSame(VALUES[i], dictionary.decode(i));
+        }
+        assertEquals(VALUES.length, dictionary.size());
+    }
+
+    @Test
+    public void nullValue() {
+        final StringDictionary dictionary = new StringDictionary();
+        assertEquals(StringDictionary.NULL, dictionary.encode(null));
+        assertEquals(StringDictionary.NULL, dictionary.find(null));
+        assertNull(dictionary.decode(StringDictionary.NULL));
+        assertEquals(0, dictionary.size());
+    }
+
+    @Test
+    public void concurrentEncode() throws Exception {
+        final StringDictionary dictionary = new StringDictionary();
+        final int threads = 8;
+        final int count = 10000;
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final List<Future<int[]>> results = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                final int offset = i * 1000;
+                results.add(executor.submit(new Callable<int[]>() {
+                    @Override
+                    public int[] call() {
+                        // threads encode overlapping values in different order while dictionary grows
+                        final int[] codes = new int[count];
+                        for (int j = 0; j < count; j++) {
+                            final int value = (offset + j) % count;
+                            codes[value] = dictionary.encode("value" + value);
+                            assertEquals("value" + value, dictionary.decode(codes[value]));
+                        }
+                        return codes;
+                    }
+                }));
+            }
+            final int[] expected = results.get(0).get();
+            for (Future<int[]> result : results) {
+                final int[] codes = result.get();
+                for (int value = 0; value < count; value++) {
+                    assertEquals(expected[value], codes[value]);
+                    assertEquals("value" + value, dictionary.decode(codes[value]));
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(count, dictionary.size());
+    }
+}
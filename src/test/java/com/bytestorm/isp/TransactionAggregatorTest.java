@@ -0,0 +1,181 @@
+package com.bytestorm.isp;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+
+public class TransactionAggregatorTest {
+
+    private static final List<String> EU = Arrays.asList("EUR", "PLN");
+
+    @Test
+    public void totalsSameAsBaseline() {
+        final List<Transaction> transactions = randomTransactions(new Random(1), 20000);
+        final Baseline expected = new Baseline(transactions, true);
+        for (int threads : new int[]{1, 4}) {
+            final TransactionAggregator beans = new TransactionAggregator(euCurrencies(), true, null, threads);
+            for (Transaction t : transactions) {
+                beans.add(t);
+            }
+            assertSameAs(expected, beans.finish(transactions));
+            MonthlyPivotReportTest.assertSameAs(new MonthlyPivotReportTest.Baseline(transactions),
+                    (MonthlyPivotReport) beans.getPivot());
+            // columnar store
+            final TransactionTable table = new TransactionTable(transactions);
+            final TransactionAggregator rows = new TransactionAggregator(euCurrencies(), true, null, threads);
+            for (TransactionRow t : table) {
+                rows.add(t);
+            }
+            assertSameAs(expected, rows.finish(table));
+            MonthlyPivotReportTest.assertSameAs(new MonthlyPivotReportTest.Baseline(transactions),
+                    (MonthlyPivotReport) rows.getPivot());
+        }
+    }
+
+    @Test
+    public void totalsWithoutVat() {
+        final List<Transaction> transactions = randomTransactions(new Random(2), 5000);
+        final TransactionAggregator aggregator = new TransactionAggregator(euCurrencies(), false, null, 1);
+        for (Transaction t : transactions) {
+            aggregator.add(t);
+        }
+        assertSameAs(new Baseline(transactions, false), aggregator.finish(transactions));
+        assertEquals(0, aggregator.getVatCollected().size());
+    }
+
+    private static BitSet euCurrencies() {
+        final BitSet eu = new BitSet();
+        for (String currency : EU) {
+            eu.set(Transaction.CURRENCIES.encode(currency));
+        }
+        return eu;
+    }
+
+    /**
+     * @return transactions of single month with SKUs, tax amounts and tax deductions without id
+     */
+    private static List<Transaction> randomTransactions(Random random, int count) {
+        final List<Transaction> transactions = MonthlyPivotReportTest.randomTransactions(random, 2015, 6, count);
+        for (Transaction t : transactions) {
+            t.setSkuId("sku" + random.nextInt(5));
+            if (Transaction.Type.TAX == t.getTransactionType() && random.nextBoolean()) {
+                t.setId(null);
+            }
+            t.setTaxAmount(BigDecimal.valueOf(random.nextInt(10000), 2));
+            t.computeConverted();
+        }
+        return transactions;
+    }
+
+    private static void assertSameAs(Baseline expected, TransactionAggregator actual) {
+        assertEquals(expected.sells.keySet(), actual.getSkus());
+        for (String sku : expected.sells.keySet()) {
+            assertEquals(expected.sells.get(sku).intValue(), actual.getSells(sku));
+            assertEquals(expected.refunds.get(sku).intValue(), actual.getRefunds(sku));
+        }
+        assertSame(expected.income, actual.getIncome());
+        assertSame(expected.taxDeduction, actual.getTaxDeduction());
+        assertSame(expected.noIdPayout, actual.getNoIdPayout());
+        assertSame(expected.euPayout, actual.getEuPayout());
+        assertSame(expected.totalConverted, actual.getTotalConverted());
+        assertSame(expected.totalVat, actual.getTotalVat());
+        assertEquals(expected.vatCollected.keySet(), actual.getVatCollected().keySet());
+        for (Map.Entry<String, BigDecimal[]> e : expected.vatCollected.entrySet()) {
+            assertSame(e.getValue()[0], actual.getVatCollected().get(e.getKey())[0].toBigDecimal());
+            assertSame(e.getValue()[1], actual.getVatCollected().get(e.getKey())[1].toBigDecimal());
+        }
+        final HashSet<String> currencies = new HashSet<>();
+        final HashSet<String> fractional = new HashSet<>();
+        for (int c = actual.getCurrencies().nextSetBit(0); c >= 0; c = actual.getCurrencies().nextSetBit(c + 1)) {
+            currencies.add(Transaction.CURRENCIES.decode(c));
+        }
+        for (int c = actual.getFractionalCurrencies().nextSetBit(0); c >= 0;
+             c = actual.getFractionalCurrencies().nextSetBit(c + 1)) {
+            fractional.add(Transaction.CURRENCIES.decode(c));
+        }
+        assertEquals(expected.currencies, currencies);
+        assertEquals(expected.fractionalCurrencies, fractional);
+    }
+
+    private static void assertSame(BigDecimal expected, BigDecimal actual) {
+        assertEquals(expected + " != " + actual, 0, expected.compareTo(actual));
+    }
+
+    /**
+     * Totals computed as original output sheets did (separate BigDecimal sums over all transactions).
+     */
+    private static class Baseline {
+
+        Baseline(List<Transaction> transactions, boolean vat) {
+            for (Transaction t : transactions) {
+                // per SKU statistics
+                if (Transaction.Type.TAX == t.getTransactionType()) {
+                    taxDeduction = taxDeduction.add(t.getPayout());
+                } else {
+                    final String sku = t.getSkuId();
+                    if (!sells.containsKey(sku)) {
+                        sells.put(sku, 0);
+                        refunds.put(sku, 0);
+                    }
+                    if (Transaction.Type.CHARGE == t.getTransactionType()) {
+                        sells.put(sku, sells.get(sku) + 1);
+                    } else if (Transaction.Type.REFUND == t.getTransactionType()) {
+                        refunds.put(sku, refunds.get(sku) + 1);
+                    }
+                }
+                income = income.add(t.getPayout());
+                // amount formats
+                currencies.add(t.getBuyerCurrency());
+                if (!t.getAmount().subtract(t.getAmount().setScale(0, RoundingMode.FLOOR)).equals(BigDecimal.ZERO)) {
+                    fractionalCurrencies.add(t.getBuyerCurrency());
+                }
+                // VAT sheet
+                if (vat && Transaction.Type.CHARGE == t.getTransactionType() && EU.contains(t.getBuyerCurrency())) {
+                    BigDecimal[] collected = vatCollected.get(t.getBuyerCurrency());
+                    if (null == collected) {
+                        collected = new BigDecimal[]{BigDecimal.ZERO, BigDecimal.ZERO};
+                        vatCollected.put(t.getBuyerCurrency(), collected);
+                    }
+                    collected[0] = collected[0].add(t.getTaxAmount());
+                    collected[1] = collected[1].add(t.getTaxAmountConverted());
+                }
+                // summary sheet
+                if (null == t.getId()) {
+                    noIdPayout = noIdPayout.add(t.getPayout());
+                    totalConverted = totalConverted.add(t.getPayout());
+                } else {
+                    if (EU.contains(t.getBuyerCurrency())) {
+                        euPayout = euPayout.add(t.getPayout());
+                        if (vat && Transaction.Type.CHARGE == t.getTransactionType()) {
+                            totalVat = totalVat.add(t.getTaxAmountConverted());
+                        }
+                    }
+                    totalConverted = totalConverted.add(t.getAmountConverted());
+                }
+            }
+        }
+
+        final HashMap<String, Integer> sells = new HashMap<>();
+        final HashMap<String, Integer> refunds = new HashMap<>();
+        final HashSet<String> currencies = new HashSet<>();
+        final HashSet<String> fractionalCurrencies = new HashSet<>();
+        final TreeMap<String, BigDecimal[]> vatCollected = new TreeMap<>();
+        BigDecimal income = BigDecimal.ZERO;
+        BigDecimal taxDeduction = BigDecimal.ZERO;
+        BigDecimal noIdPayout = BigDecimal.ZERO;
+        BigDecimal euPayout = BigDecimal.ZERO;
+        BigDecimal totalConverted = BigDecimal.ZERO;
+        BigDecimal totalVat = BigDecimal.ZERO;
+    }
+}
@@ -0,0 +1,106 @@
+package com.bytestorm.isp;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class TransactionSorterTest {
+
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+    private static final long START = 1433116800000L; // 2015-06-01
+
+    @Test
+    public void mergesOrderedRunsStably() {
+        final Random random = new Random(1);
+        for (int i = 0; i < 50; i++) {
+            final List<List<Transaction>> runs = randomRuns(random, START, 30 * DAY, true);
+            assertSortedStably(runs);
+        }
+    }
+
+    @Test
+    public void sortsUnorderedRunsByDayStably() {
+        final Random random = new Random(2);
+        for (int i = 0; i < 50; i++) {
+            final List<List<Transaction>> runs = randomRuns(random, START, 30 * DAY, false);
+            assertSortedStably(runs);
+        }
+    }
+
+    @Test
+    public void sortsWideRangesAndNegativeDates() {
+        final Random random = new Random(3);
+        for (int i = 0; i < 20; i++) {
+            // more days than buckets
+            assertSortedStably(randomRuns(random, START, 10 * 366 * DAY, false));
+            // dates before 1970
+            assertSortedStably(randomRuns(random, -5 * DAY, 10 * DAY, false));
+        }
+    }
+
+    @Test
+    public void handlesEmptyRuns() {
+        final List<List<Transaction>> runs = new ArrayList<>();
+        assertEquals(0, TransactionSorter.sortByDate(runs).size());
+        runs.add(new ArrayList<Transaction>());
+        runs.add(Collections.singletonList(transaction(START, 0)));
+        runs.add(new ArrayList<Transaction>());
+        assertSortedStably(runs);
+    }
+
+    private static void assertSortedStably(List<List<Transaction>> runs) {
+        final ArrayList<Transaction> expected = new ArrayList<>();
+        for (List<Transaction> run : runs) {
+            expected.addAll(run);
+        }
+        // Collections.sort is stable
+        Collections.sort(expected, new Comparator<Transaction>() {
+            @Override
+            public int compare(Transaction o1, Transaction o2) {
+                return o1.getDate().compareTo(o2.getDate());
+            }
+        });
+        final ArrayList<Transaction> actual = TransactionSorter.sortByDate(runs);
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertSame("Transaction " + i, expected.get(i), actual.get(i));
+        }
+    }
+
+    private static List<List<Transaction>> randomRuns(Random random, long start, long range, boolean ordered) {
+        final List<List<Transaction>> runs = new ArrayList<>();
+        int id = 0;
+        for (int r = random.nextInt(6); r >= 0; r--) {
+            final ArrayList<Long> times = new ArrayList<>();
+            for (int i = random.nextInt(300); i > 0; i--) {
+                // few distinct times, so many transactions have equal dates
+                times.add(start + (random.nextInt(4) > 0 ? random.nextInt(20) * (range / 20)
+                        : (long) (random.nextDouble() * range)));
+            }
+            if (ordered) {
+                Collections.sort(times);
+            }
+            final ArrayList<Transaction> run = new ArrayList<>();
+            for (long time : times) {
+                run.add(transaction(time, id++));
+            }
+            runs.add(run);
+        }
+        return runs;
+    }
+
+    private static Transaction transaction(long time, int id) {
+        final Transaction t = new Transaction();
+        t.setId("t" + id);
+        t.setDate(new Date(time));
+        return t;
+    }
+}
@@ -0,0 +1,108 @@
+package com.bytestorm.isp;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class TransactionTableTest {
+
+    private static final String[] IDS = {null, "GPA.1234-5678-9012-34567", "GPA.0000-0000-0000-00000..0",
+            "GPA.9999-9999-9999-99999..89", "GPA.1234-5678-9012-34567..90", "GPA.1234-5678-9012-34567..05",
+            "order-1", "GPA.1234-5678-9012-3456", "Zażółć", ""};
+    private static final BigDecimal[] AMOUNTS = {BigDecimal.ZERO, new BigDecimal("1.99"), new BigDecimal("-0.000001"),
+            new BigDecimal("123456789012345678.9"), new BigDecimal("1E+3"), new BigDecimal("-1E+200"),
+            new BigDecimal(BigInteger.ONE.shiftLeft(70), 2), new BigDecimal(BigInteger.ONE.shiftLeft(63)).negate(),
+            BigDecimal.valueOf(Long.MIN_VALUE, 2), new BigDecimal("1E-126"), new BigDecimal("1E-127"),
+            new BigDecimal("1E+128")};
+    private static final String[] CURRENCIES = {"PLN", "EUR", "USD", "JPY"};
+
+    @Test
+    public void roundTripsEveryField() {
+        final List<Transaction> transactions = randomTransactions(new Random(1), 5000);
+        final TransactionTable table = new TransactionTable(transactions);
+        assertEquals(transactions.size(), table.size());
+        final Iterator<TransactionRow> rows = table.iterator();
+        for (int i = 0; i < transactions.size(); i++) {
+            assertSameRow(transactions.get(i), rows.next());
+            assertSameRow(transactions.get(i), table.get(i));
+        }
+        assertFalse(rows.hasNext());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void rowOutOfRange() {
+        new TransactionTable(randomTransactions(new Random(2), 10)).get(10);
+    }
+
+    static List<Transaction> randomTransactions(Random random, int count) {
+        final ArrayList<Transaction> transactions = new ArrayList<>(count);
+        final Transaction.Type[] types = Transaction.Type.values();
+        for (int i = 0; i < count; i++) {
+            final Transaction t = new Transaction();
+            t.setId(0 == i % 3 ? "GPA.1234-5678-" + (1000 + random.nextInt(9000)) + "-" + (10000 + random.nextInt(90000))
+                    + (random.nextBoolean() ? ".." + random.nextInt(90) : "") : IDS[random.nextInt(IDS.length)]);
+            t.setDate(new Date(1433116800000L + (long) (random.nextDouble() * 30 * 24 * 60 * 60 * 1000L)));
+            t.setTransactionType(0 == random.nextInt(20) ? null : types[random.nextInt(types.length)]);
+            t.setProductName(0 == random.nextInt(10) ? null : "Product " + random.nextInt(5));
+            t.setSkuId("sku" + random.nextInt(3));
+            t.setBuyerCountry(0 == random.nextInt(10) ? null : "C" + random.nextInt(5));
+            final String currency = CURRENCIES[random.nextInt(CURRENCIES.length)];
+            t.setBuyerCurrency(currency);
+            t.setMerchantCurrency("PLN");
+            t.setAmount(randomAmount(random));
+            t.setPayout(randomAmount(random));
+            t.setTaxAmount(0 == random.nextInt(4) ? null : randomAmount(random));
+            t.setConversionRate(new BigDecimal("4.0123"));
+            t.setConversionRateBaseAmount(random.nextBoolean() ? 1 : 100);
+            t.computeConverted();
+            transactions.add(t);
+        }
+        return transactions;
+    }
+
+    private static BigDecimal randomAmount(Random random) {
+        if (0 == random.nextInt(10)) {
+            return AMOUNTS[random.nextInt(AMOUNTS.length)];
+        }
+        return BigDecimal.valueOf(random.nextInt(2000000) - 1000000, random.nextInt(4));
+    }
+
+    private static void assertSameRow(Transaction expected, TransactionRow actual) {
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getDate(), actual.getDate());
+        assertEquals(expected.getTransactionType(), actual.getTransactionType());
+        assertEquals(expected.getProductName(), actual.getProductName());
+        assertEquals(expected.getSkuId(), actual.getSkuId());
+        assertEquals(expected.getBuyerCountry(), actual.getBuyerCountry());
+        assertEquals(expected.getBuyerCurrency(), actual.getBuyerCurrency());
+        assertEquals(expected.getBuyerCurrencyCode(), actual.getBuyerCurrencyCode());
+        assertEquals(expected.getMerchantCurrency(), actual.getMerchantCurrency());
+        // equals compares scales as well
+        assertEquals(expected.getAmount(), actual.getAmount());
+        assertEquals(expected.getPayout(), actual.getPayout());
+        assertEquals(expected.getTaxAmount(), actual.getTaxAmount());
+        assertEquals(expected.getAmountConverted(), actual.getAmountConverted());
+        assertEquals(expected.getSpread(), actual.getSpread());
+        assertEquals(expected.getTaxAmountConverted(), actual.getTaxAmountConverted());
+        final MoneySum e = new MoneySum();
+        final MoneySum a = new MoneySum();
+        expected.addAmountTo(e);
+        actual.addAmountTo(a);
+        expected.addPayoutTo(e);
+        actual.addPayoutTo(a);
+        if (null != expected.getTaxAmount()) {
+            expected.addTaxAmountTo(e);
+            actual.addTaxAmountTo(a);
+        }
+        assertEquals(e.toBigDecimal(), a.toBigDecimal());
+    }
+}